@@ -0,0 +1,64 @@
+package org.processmining.benchmarks.rootcauseanalysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.rootcauseanalysis.algorithms.causality.GrangerTest;
+import org.processmining.rootcauseanalysis.models.GrangerTestResult;
+
+/**
+ * A single Granger test per lag versus the lag sweep over all lags 1..lag.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrangerTestBenchmark {
+
+	@Param({ "200", "1000", "5000" })
+	public int size;
+
+	@Param({ "1", "5", "20" })
+	public int lag;
+
+	private double[] y;
+	private double[] x;
+
+	@Setup
+	public void setup() {
+		double[][] pair = SyntheticData.causalPair(size, 42);
+		y = pair[0];
+		x = pair[1];
+	}
+
+	@Benchmark
+	public GrangerTestResult granger() {
+		return GrangerTest.granger(y, x, lag);
+	}
+
+	@Benchmark
+	public GrangerTestResult[] grangerAllLags() {
+		GrangerTestResult[] results = new GrangerTestResult[lag];
+		for (int l = 1; l <= lag; l++)
+			results[l - 1] = GrangerTest.granger(y, x, l);
+		return results;
+	}
+
+	@Benchmark
+	public GrangerTestResult[] grangerLagSweep() {
+		return GrangerTest.grangerLagSweep(y, x, lag);
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.processmining.benchmarks.rootcauseanalysis;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.rootcauseanalysis.models.graph.AncestryIndex;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+
+/**
+ * Edge lookups, ancestry checks and inclusion graph construction on large
+ * decomposition graphs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+	@Param({ "10", "50" })
+	public int parents;
+
+	@Param({ "20", "100" })
+	public int childrenPerParent;
+
+	private Graph graph;
+	private Node[] nodes;
+
+	@Setup
+	public void setup() {
+		graph = SyntheticData.forest(parents, childrenPerParent);
+		nodes = graph.getNodes().toArray(new Node[graph.getNodes().size()]);
+	}
+
+	@Benchmark
+	public int getEdges() {
+		int edges = 0;
+		for (Node node : nodes) {
+			Set<Edge> edgesForNode = graph.getEdges(node);
+			edges += edgesForNode.size();
+		}
+		return edges;
+	}
+
+	@Benchmark
+	public int ancestor() {
+		// One row of ancestry checks, as done per node when building the inclusion graph
+		int related = 0;
+		Node node = nodes[nodes.length / 2];
+		for (Node other : nodes)
+			if (graph.ancestor(node, other) || graph.ancestor(other, node))
+				related++;
+		return related;
+	}
+
+	@Benchmark
+	public AncestryIndex buildAncestryIndex() {
+		return new AncestryIndex(graph);
+	}
+
+	@Benchmark
+	public long inclusionGraph() {
+		final long[] pairs = new long[1];
+		new InclusionGraph(graph).forEachCandidatePair(new IntIntProcedure() {
+			public void value(int source, int target) {
+				pairs[0]++;
+			}
+		});
+		return pairs[0];
+	}
+
+}
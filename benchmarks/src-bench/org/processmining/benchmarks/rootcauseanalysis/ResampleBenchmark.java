@@ -0,0 +1,84 @@
+package org.processmining.benchmarks.rootcauseanalysis;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import org.jfree.data.time.Day;
+import org.jfree.data.time.FixedMillisecond;
+import org.jfree.data.time.TimeSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.rootcauseanalysis.models.timeseries.AggregationFunction;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
+import org.processmining.rootcauseanalysis.models.timeseries.ImputationStrategy;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.utils.TimeSeriesUtils;
+
+/**
+ * Resampling irregular measurements to daily buckets, from a JFreeChart series
+ * and from primitive arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResampleBenchmark {
+
+	@Param({ "10000", "1000000" })
+	public int measurements;
+
+	@Param({ "MEAN", "P95" })
+	public AggregationFunction aggregationFunction;
+
+	@Param({ "LOCF", "LINEAR" })
+	public ImputationStrategy imputationStrategy;
+
+	private long[] times;
+	private double[] values;
+	private TimeSeries series;
+	private EpochBucketing bucketing;
+
+	@Setup
+	public void setup() {
+		// About 100 measurements per day
+		times = SyntheticData.measurementTimes(measurements, SyntheticData.DAY / 100, 42);
+		values = SyntheticData.measurementValues(measurements, 43);
+
+		series = new TimeSeries("measurements");
+		series.setDescription("measurements");
+		for (int i = 0; i < measurements; i++)
+			series.add(new FixedMillisecond(times[i]), values[i], false);
+
+		// The days of the JFreeChart series resampling
+		bucketing = EpochBucketing.of(new Day(), ZoneId.systemDefault());
+	}
+
+	@Benchmark
+	public TimeSeries resampleTimeSeries() {
+		return TimeSeriesUtils.resampleTimeSeries(series, new Day());
+	}
+
+	@Benchmark
+	public RegularTimeSeries resampleSeries() {
+		return TimeSeriesUtils.resample(series, bucketing, aggregationFunction.createAggregator(),
+				imputationStrategy);
+	}
+
+	@Benchmark
+	public RegularTimeSeries resampleArrays() {
+		return TimeSeriesUtils.resample("measurements", times, values, measurements, bucketing,
+				aggregationFunction.createAggregator(), imputationStrategy);
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.processmining.benchmarks.rootcauseanalysis;
+
+import java.util.concurrent.TimeUnit;
+
+import org.deckfour.xes.model.XLog;
+import org.jfree.data.time.Day;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.processmining.rootcauseanalysis.algorithms.RootCauseAnalysisAlgorithm;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisOutput;
+import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
+
+/**
+ * End-to-end root cause analysis on synthetic event logs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.SingleShotTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RootCauseAnalysisBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int cases;
+
+	@Param({ "5" })
+	public int resources;
+
+	@Param({ "1", "4" })
+	public int numberOfThreads;
+
+	private XLog eventlog;
+	private RootCauseAnalysisParameters parameters;
+
+	@Setup
+	public void setup() {
+		eventlog = SyntheticData.eventLog(cases, 400, 4, resources, 42);
+		parameters = new RootCauseAnalysisParameters();
+		parameters.setTimePeriod(new Day());
+		parameters.setNumberOfThreads(numberOfThreads);
+	}
+
+	@Benchmark
+	public RootCauseAnalysisOutput apply() {
+		return Harness.apply(eventlog, parameters);
+	}
+
+	/**
+	 * Gives access to the algorithm without a plug-in context.
+	 */
+	private static class Harness extends RootCauseAnalysisAlgorithm {
+
+		public static RootCauseAnalysisOutput apply(XLog eventlog, RootCauseAnalysisParameters parameters) {
+			return RootCauseAnalysisAlgorithm.apply(null, eventlog, parameters);
+		}
+
+	}
+
+}
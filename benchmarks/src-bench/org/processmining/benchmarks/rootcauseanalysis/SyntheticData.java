@@ -0,0 +1,130 @@
+package org.processmining.benchmarks.rootcauseanalysis;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.deckfour.xes.extension.std.XConceptExtension;
+import org.deckfour.xes.extension.std.XLifecycleExtension;
+import org.deckfour.xes.extension.std.XOrganizationalExtension;
+import org.deckfour.xes.extension.std.XTimeExtension;
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+
+/**
+ * Deterministic (seeded) synthetic inputs for the benchmarks.
+ */
+public class SyntheticData {
+
+	public static final long DAY = 24L * 60 * 60 * 1000;
+	public static final long START = 1451606400000L; // 2016-01-01T00:00:00Z
+
+	/**
+	 * Returns a pair {y, x} of series of the specified length, where y depends
+	 * on x at lag 2, plus noise.
+	 */
+	public static double[][] causalPair(int length, long seed) {
+		Random random = new Random(seed);
+		double[] x = new double[length];
+		double[] y = new double[length];
+		for (int i = 0; i < length; i++) {
+			x[i] = 100 + 10 * random.nextGaussian();
+			y[i] = 50 + (i >= 2 ? 0.5 * x[i - 2] : 0) + 5 * random.nextGaussian();
+		}
+		return new double[][] { y, x };
+	}
+
+	/**
+	 * Returns the sorted measurement times of an irregular (Poisson-like)
+	 * measurement process with the specified mean inter-arrival time.
+	 */
+	public static long[] measurementTimes(int size, long meanInterArrival, long seed) {
+		Random random = new Random(seed);
+		long[] times = new long[size];
+		long time = START;
+		for (int i = 0; i < size; i++) {
+			time += (long) (-Math.log(1 - random.nextDouble()) * meanInterArrival);
+			times[i] = time;
+		}
+		return times;
+	}
+
+	public static double[] measurementValues(int size, long seed) {
+		Random random = new Random(seed);
+		double[] values = new double[size];
+		for (int i = 0; i < size; i++)
+			values[i] = Math.exp(10 + random.nextGaussian());
+		return values;
+	}
+
+	/**
+	 * Returns a decomposition-like forest of the specified number of parents,
+	 * each with the specified number of children.
+	 */
+	public static Graph forest(int parents, int childrenPerParent) {
+		Graph graph = new Graph();
+		for (int p = 0; p < parents; p++) {
+			Node parent = graph.addNode(new Node("kpi " + p));
+			for (int c = 0; c < childrenPerParent; c++) {
+				Node child = graph.addNode(new Node("kpi " + p + ", context value " + c));
+				graph.addEdge(new Edge(parent, child));
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Returns an event log with the specified number of cases spread over the
+	 * specified number of days. Each case executes a fixed sequence of
+	 * activities with start and complete events; activity durations depend on
+	 * the executing resource and on the recent workload, so the decomposed
+	 * series contain causal relations.
+	 */
+	public static XLog eventLog(int cases, int days, int activities, int resources, long seed) {
+		Random random = new Random(seed);
+		XFactory factory = XFactoryRegistry.instance().currentDefault();
+		XConceptExtension concept = XConceptExtension.instance();
+		XTimeExtension time = XTimeExtension.instance();
+		XOrganizationalExtension organizational = XOrganizationalExtension.instance();
+		XLifecycleExtension lifecycle = XLifecycleExtension.instance();
+
+		XLog log = factory.createLog();
+		for (int c = 0; c < cases; c++) {
+			XTrace trace = factory.createTrace();
+			concept.assignName(trace, "case " + c);
+
+			long timestamp = START + (long) ((double) c / cases * days * DAY);
+			double workload = 1 + Math.sin(2 * Math.PI * timestamp / (7.0 * DAY));
+			for (int a = 0; a < activities; a++) {
+				int resource = random.nextInt(resources);
+				long duration = (long) ((1 + resource) * workload * 60 * 60 * 1000 * (0.5 + random.nextDouble()));
+
+				trace.add(event(factory, "activity " + a, "resource " + resource, timestamp,
+						XLifecycleExtension.StandardModel.START, concept, time, organizational, lifecycle));
+				timestamp += duration;
+				trace.add(event(factory, "activity " + a, "resource " + resource, timestamp,
+						XLifecycleExtension.StandardModel.COMPLETE, concept, time, organizational, lifecycle));
+				timestamp += (long) (random.nextDouble() * 60 * 60 * 1000);
+			}
+			log.add(trace);
+		}
+		return log;
+	}
+
+	private static XEvent event(XFactory factory, String activity, String resource, long timestamp,
+			XLifecycleExtension.StandardModel transition, XConceptExtension concept, XTimeExtension time,
+			XOrganizationalExtension organizational, XLifecycleExtension lifecycle) {
+		XEvent event = factory.createEvent();
+		concept.assignName(event, activity);
+		organizational.assignResource(event, resource);
+		time.assignTimestamp(event, new Date(timestamp));
+		lifecycle.assignStandardTransition(event, transition);
+		return event;
+	}
+
+}
@@ -0,0 +1,433 @@
+package org.processmining.rootcauseanalysis.algorithms;
+
+import java.util.UUID;
+
+import org.deckfour.xes.model.XLog;
+import org.eclipse.collections.api.block.predicate.primitive.IntIntPredicate;
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
+import org.eclipse.collections.api.iterator.LongIterator;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesDataItem;
+import org.processmining.contextawareperformance.models.EventCollection;
+import org.processmining.contextawareperformance.models.preprocessors.xlog.event.remove.RemoveEventsWithoutTimestampXLogPreprocessor;
+import org.processmining.framework.plugin.PluginContext;
+import org.processmining.framework.plugin.Progress;
+import org.processmining.rootcauseanalysis.algorithms.causality.CausalityAlgorithm;
+import org.processmining.rootcauseanalysis.algorithms.causality.CausalityMethod;
+import org.processmining.rootcauseanalysis.algorithms.causality.GrangerCausalityAlgorithm;
+import org.processmining.rootcauseanalysis.algorithms.causality.GroupLassoGrangerAlgorithm;
+import org.processmining.rootcauseanalysis.algorithms.decomposition.DecompositionAlgorithm;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisMetrics;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisOutput;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.graph.UntestedPairs;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
+import org.processmining.rootcauseanalysis.models.timeseries.ImputationStrategy;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
+import org.processmining.rootcauseanalysis.utils.TimeSeriesUtils;
+
+/**
+ * Updates the output of a previous analysis with events that were appended to
+ * its event log, instead of analyzing the whole log again. The new events are
+ * expected to belong to new cases, so their measurements can be added to the
+ * existing series.
+ *
+ * Only the series that got new measurements are copied and resampled again,
+ * from the first changed bucket onwards. A pair X->Y is only tested again when
+ * Y changed, or when X changed within the part of it that is tested against Y
+ * (X is only used up to the end of Y); the results of all other pairs are
+ * taken from the previous output. Series are matched by their structural
+ * identity (see {@link Properties#KEY_SERIESKEY}). When the entities of the
+ * views belong to a single case (events, activity instances and cases), the
+ * result equals that of an analysis of the whole log with the same
+ * parameters. The previous output is not modified.
+ */
+public class IncrementalRootCauseAnalysisAlgorithm {
+
+	// Change markers: the series did not change, or changed from its start
+	private static final long UNCHANGED = Long.MAX_VALUE;
+	private static final long CHANGED = Long.MIN_VALUE;
+
+	// FIELDS
+
+	private RootCauseAnalysisParameters parameters;
+
+	// CONSTRUCTORS
+
+	public IncrementalRootCauseAnalysisAlgorithm(RootCauseAnalysisParameters parameters) {
+		setParameters(parameters);
+	}
+
+	// GETTERS AND SETTERS
+
+	public RootCauseAnalysisParameters getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(RootCauseAnalysisParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	// METHODS
+
+	/**
+	 * Updates the previous output with the new events.
+	 *
+	 * @param pluginContext
+	 *            The plugin context.
+	 * @param previous
+	 *            The output of the previous analysis, computed with the same
+	 *            parameters.
+	 * @param newEvents
+	 *            The event log with the appended cases.
+	 * @return The updated output, or null when the update was cancelled or
+	 *         the previous output holds no measurements.
+	 */
+	public RootCauseAnalysisOutput apply(PluginContext pluginContext, RootCauseAnalysisOutput previous,
+			XLog newEvents) {
+		RootCauseAnalysisMetrics metrics = new RootCauseAnalysisMetrics();
+
+		/******************************************************************************************
+		 *
+		 * PRE-PROCESS THE NEW EVENTS
+		 *
+		 ******************************************************************************************/
+
+		metrics.startStage("preprocessing");
+
+		RemoveEventsWithoutTimestampXLogPreprocessor removeEventsWithoutTimestampPreprocessor = new RemoveEventsWithoutTimestampXLogPreprocessor();
+		XLog eventlogout = removeEventsWithoutTimestampPreprocessor.preprocess(newEvents);
+		EventCollection eventCollection = new EventCollection(eventlogout);
+
+		/******************************************************************************************
+		 *
+		 * DECOMPOSE THE NEW EVENTS
+		 *
+		 * The new events are decomposed on their own, which gives the new
+		 * measurements per series (key).
+		 *
+		 ******************************************************************************************/
+
+		metrics.startStage("decomposition");
+
+		Graph deltaGraph = new DecompositionAlgorithm(parameters).computeDecompositionGraph(eventCollection);
+
+		return update(pluginContext, previous, deltaGraph, metrics);
+	}
+
+	/**
+	 * Updates the previous output with the decomposition graph of the new
+	 * events. Series of both graphs are matched by their series key (see
+	 * {@link Properties#KEY_SERIESKEY}), not by their label, since the label
+	 * of a child series names the entity that first had its context result.
+	 */
+	private RootCauseAnalysisOutput update(PluginContext pluginContext, RootCauseAnalysisOutput previous,
+			Graph deltaGraph, RootCauseAnalysisMetrics metrics) {
+		Progress progress = pluginContext == null ? null : pluginContext.getProgress();
+
+		/******************************************************************************************
+		 *
+		 * OUTPUT
+		 *
+		 ******************************************************************************************/
+
+		InclusionGraph inclusionGraph;
+		Graph causalityGraph;
+		RootCauseAnalysisOutput output = new RootCauseAnalysisOutput();
+
+		/******************************************************************************************
+		 *
+		 * MERGE THE DECOMPOSITION GRAPHS
+		 *
+		 * Series without new measurements are shared with the previous
+		 * output. Series with new measurements are copied (keeping their id)
+		 * and extended; new series are added. For every changed series, the
+		 * bucket of its first new measurement is recorded.
+		 *
+		 ******************************************************************************************/
+
+		metrics.startStage("merge");
+
+		// The series of a streamed output may have been aggregated per bucket, then there are no measurements to extend
+		for (Node node : previous.getDecompositionGraph().getNodes()) {
+			if (node.getProperty(Properties.KEY_TIMESERIES) == null) {
+				parameters.displayMessage("The previous output cannot be updated, since its measurements were"
+						+ " aggregated per bucket when the event log was streamed.");
+				return null;
+			}
+		}
+
+		// The previous series are extended, so they keep the rate they were resampled to
+		EpochBucketing bucketing = previous.getBucketing() != null ? previous.getBucketing()
+				: TimeSeriesUtils.getBucketing(parameters);
+		Graph previousGraph = previous.getDecompositionGraph();
+		Graph decompositionGraph = new Graph();
+
+		UnifiedMap<Object, Node> deltaNodes = new UnifiedMap<Object, Node>();
+		for (Node node : deltaGraph.getNodes())
+			deltaNodes.put(node.getProperty(Properties.KEY_SERIESKEY), node);
+
+		UnifiedMap<Node, Node> merged = new UnifiedMap<Node, Node>();
+		UnifiedMap<Object, Node> mergedByKey = new UnifiedMap<Object, Node>();
+		UnifiedMap<UUID, Long> firstChanged = new UnifiedMap<UUID, Long>();
+
+		for (Node node : previousGraph.getNodes()) {
+			Node deltaNode = deltaNodes.get(node.getProperty(Properties.KEY_SERIESKEY));
+			TimeSeries delta = deltaNode == null ? null
+					: (TimeSeries) deltaNode.getProperty(Properties.KEY_TIMESERIES);
+			Node mergedNode = node;
+			if (delta != null && delta.getItemCount() > 0) {
+				mergedNode = node.clone();
+				mergedNode.setId(node.getId());
+				mergedNode.setProperty(Properties.KEY_TIMESERIES,
+						extend((TimeSeries) node.getProperty(Properties.KEY_TIMESERIES), delta));
+				firstChanged.put(node.getId(), bucketing.getBucket(delta.getTimePeriod(0).getFirstMillisecond()));
+			}
+			if (deltaNode != null)
+				merged.put(deltaNode, mergedNode);
+			merged.put(node, mergedNode);
+			mergedByKey.put(mergedNode.getProperty(Properties.KEY_SERIESKEY), mergedNode);
+			decompositionGraph.addNode(mergedNode);
+		}
+
+		for (Node deltaNode : deltaGraph.getNodes()) {
+			if (mergedByKey.containsKey(deltaNode.getProperty(Properties.KEY_SERIESKEY)))
+				continue;
+			firstChanged.put(deltaNode.getId(), CHANGED);
+			merged.put(deltaNode, deltaNode);
+			mergedByKey.put(deltaNode.getProperty(Properties.KEY_SERIESKEY), deltaNode);
+			decompositionGraph.addNode(deltaNode);
+		}
+
+		for (Edge edge : previousGraph.getEdges())
+			addEdge(decompositionGraph, merged.get(edge.getSource()), merged.get(edge.getTarget()));
+		for (Edge edge : deltaGraph.getEdges())
+			addEdge(decompositionGraph, merged.get(edge.getSource()), merged.get(edge.getTarget()));
+
+		metrics.addSeries(decompositionGraph.getNodes().size());
+
+		if (decompositionGraph.getNodes().size() == 0) {
+			parameters.displayMessage("No time series (nodes), returning empty result.");
+			return null;
+		}
+
+		inclusionGraph = new InclusionGraph(decompositionGraph);
+		metrics.addCandidatePairs(inclusionGraph.getCandidatePairCount());
+
+		/******************************************************************************************
+		 *
+		 * RE-SAMPLE CHANGED TIME SERIES
+		 *
+		 * The resampled series of unchanged nodes are taken from the previous
+		 * output; changed series are resampled from their first changed
+		 * bucket. For every node, the first bucket at which its resampled
+		 * series differs from the previous one is recorded.
+		 *
+		 ******************************************************************************************/
+
+		metrics.startStage("resampling");
+
+		final InclusionGraph previousInclusionGraph = previous.getImplicitInclusionGraph();
+		UnifiedMap<UUID, RegularTimeSeries> previousSeries = new UnifiedMap<UUID, RegularTimeSeries>();
+		final ObjectIntHashMap<UUID> indices = new ObjectIntHashMap<UUID>(inclusionGraph.size());
+		for (int i = 0; i < previousInclusionGraph.size(); i++)
+			previousSeries.put(previousInclusionGraph.getDecompositionNode(i).getId(),
+					(RegularTimeSeries) previousInclusionGraph.getNode(i).getProperty(
+							Properties.KEY_REGULARTIMESERIES));
+
+		final long[] changedFrom = new long[inclusionGraph.size()];
+		final long[] ends = new long[inclusionGraph.size()];
+
+		for (int i = 0; i < inclusionGraph.size(); i++) {
+			Node node = inclusionGraph.getNode(i);
+			UUID id = inclusionGraph.getDecompositionNode(i).getId();
+			indices.put(id, i);
+
+			RegularTimeSeries previousResampled = previousSeries.get(id);
+			RegularTimeSeries resampled;
+			Long fromBucket = firstChanged.get(id);
+			if (fromBucket == null) {
+				resampled = previousResampled;
+				changedFrom[i] = UNCHANGED;
+			} else if (fromBucket == CHANGED) {
+				resampled = TimeSeriesUtils.resample((TimeSeries) node.getProperty(Properties.KEY_TIMESERIES),
+						bucketing, parameters.getAggregationFunction().createAggregator(),
+						parameters.getImputationStrategy());
+				changedFrom[i] = CHANGED;
+			} else {
+				resampled = TimeSeriesUtils.extend(previousResampled,
+						(TimeSeries) node.getProperty(Properties.KEY_TIMESERIES), fromBucket, bucketing,
+						parameters.getAggregationFunction().createAggregator(), parameters.getImputationStrategy());
+				// Interpolated values before the change depend on the measurements after them
+				boolean interpolated = parameters.getImputationStrategy() == ImputationStrategy.LINEAR
+						&& previousResampled != null && fromBucket <= previousResampled.getEnd();
+				changedFrom[i] = previousResampled == null || resampled == null || interpolated ? CHANGED
+						: Math.min(fromBucket, previousResampled.getEnd() + 1);
+			}
+			node.setProperty(Properties.KEY_REGULARTIMESERIES, resampled);
+			node.getProperties().remove(Properties.KEY_TIMESERIES);
+			ends[i] = resampled == null ? Long.MIN_VALUE : resampled.getEnd();
+
+			if (resampled == null)
+				metrics.addUnresampledSeries(1);
+			else
+				metrics.addResampledSeries(1);
+		}
+
+		if (metrics.getUnresampledSeries() > 0)
+			parameters.displayMessage(metrics.getUnresampledSeries()
+					+ " series cannot be resampled, since more values would have to be imputed than measured.");
+
+		/******************************************************************************************
+		 *
+		 * UPDATE CAUSALITY GRAPH
+		 *
+		 * X->Y only uses X up to the end of Y, so its result can only change
+		 * when Y changed or when X changed before the end of Y. These pairs
+		 * are tested, as are the pairs that the previous (partial) search did
+		 * not test; for the other pairs the previous result is reused. A group
+		 * lasso fits a target as a whole, so it finds all edges into a target
+		 * with an affected pair, and only the edges into the other targets are
+		 * reused. A hierarchical search only tests the pairs it visits: the
+		 * pairs that the previous search did not visit are tested as well, and
+		 * only the edges of the pairs that this search visits are reused.
+		 *
+		 ******************************************************************************************/
+
+		metrics.startStage("causality");
+
+		UnifiedMap<Node, UUID> previousIds = new UnifiedMap<Node, UUID>(previousInclusionGraph.size());
+		for (int i = 0; i < previousInclusionGraph.size(); i++)
+			previousIds.put(previousInclusionGraph.getNode(i), previousInclusionGraph.getDecompositionNode(i).getId());
+
+		// The pairs that the previous search did not test, mapped to the new inclusion graph
+		final LongHashSet untested = new LongHashSet();
+		if (previous.getUntestedPairs() != null) {
+			previous.getUntestedPairs().forEachUntestedPair(new IntIntProcedure() {
+				public void value(int source, int target) {
+					int newSource = indices.getIfAbsent(previousInclusionGraph.getDecompositionNode(source).getId(), -1);
+					int newTarget = indices.getIfAbsent(previousInclusionGraph.getDecompositionNode(target).getId(), -1);
+					if (newSource >= 0 && newTarget >= 0)
+						untested.add(UntestedPairs.encode(newSource, newTarget));
+				}
+			});
+		}
+
+		// The pairs that the previous hierarchical search visited, mapped to the new inclusion graph
+		final LongHashSet previousVisited = previous.getPrunedGraph() == null ? null : new LongHashSet();
+		if (previousVisited != null) {
+			LongIterator iterator = GrangerCausalityAlgorithm
+					.getVisitedPairs(previousInclusionGraph, previous.getPrunedGraph()).longIterator();
+			while (iterator.hasNext()) {
+				long pair = iterator.next();
+				int newSource = indices.getIfAbsent(
+						previousInclusionGraph.getDecompositionNode((int) (pair >>> 32)).getId(), -1);
+				int newTarget = indices.getIfAbsent(previousInclusionGraph.getDecompositionNode((int) pair).getId(),
+						-1);
+				if (newSource >= 0 && newTarget >= 0)
+					previousVisited.add(UntestedPairs.encode(newSource, newTarget));
+			}
+		}
+
+		IntIntPredicate affected = new IntIntPredicate() {
+			public boolean accept(int source, int target) {
+				long pair = UntestedPairs.encode(source, target);
+				return changedFrom[target] != UNCHANGED || changedFrom[source] <= ends[target]
+						|| untested.contains(pair) || previousVisited != null && !previousVisited.contains(pair);
+			}
+		};
+
+		CausalityAlgorithm causalityAlgorithm = parameters.getCausalityMethod()
+				.createAlgorithm(parameters.createCausalityParameters(), metrics);
+		causalityAlgorithm.setProgress(progress);
+		causalityGraph = causalityAlgorithm.computeCausalGraph(inclusionGraph, affected);
+		if (progress != null && progress.isCancelled() && causalityAlgorithm.getUntestedPairs() == null) {
+			parameters.displayMessage("The update was cancelled, returning no result.");
+			return null;
+		}
+
+		// The pairs that this hierarchical search visited; the edges of the other pairs are dropped
+		LongHashSet visited = causalityAlgorithm.getPrunedGraph() == null ? null
+				: GrangerCausalityAlgorithm.getVisitedPairs(inclusionGraph, causalityAlgorithm.getPrunedGraph());
+
+		// The targets whose edges were all found again
+		boolean[] fitted = new boolean[inclusionGraph.size()];
+		if (parameters.getCausalityMethod() == CausalityMethod.GROUP_LASSO)
+			for (int target = 0; target < inclusionGraph.size(); target++)
+				fitted[target] = GroupLassoGrangerAlgorithm.isFitted(inclusionGraph, affected, target);
+
+		// Reuse the previous causal pairs that were not tested again, mapped to the new inclusion graph
+		int reusedCausalPairs = 0;
+		for (Edge edge : previous.getCausalityGraph().getEdges()) {
+			int source = indices.getIfAbsent(previousIds.get(edge.getSource()), -1);
+			int target = indices.getIfAbsent(previousIds.get(edge.getTarget()), -1);
+			if (source >= 0 && target >= 0 && !affected.accept(source, target) && !fitted[target]
+					&& (visited == null || visited.contains(UntestedPairs.encode(source, target)))) {
+				causalityGraph.addNode(inclusionGraph.getNode(source));
+				causalityGraph.addNode(inclusionGraph.getNode(target));
+				causalityGraph.addEdge(new Edge(inclusionGraph.getNode(source), inclusionGraph.getNode(target)));
+				reusedCausalPairs++;
+			}
+		}
+		metrics.addCausalPairs(reusedCausalPairs);
+		metrics.addReusedPairs(metrics.getCandidatePairs() - metrics.getTestedPairs());
+		metrics.endStage();
+
+		parameters.displayMessage("We found " + causalityGraph.getEdges().size() + " causal relations, "
+				+ metrics.getReusedPairs() + " pairs were reused from the previous output.");
+
+		/******************************************************************************************
+		 *
+		 * RETURNING OUTPUT
+		 *
+		 ******************************************************************************************/
+
+		output.setDecompositionGraph(decompositionGraph);
+		output.setInclusionGraph(inclusionGraph);
+		output.setCausalityGraph(causalityGraph);
+		output.setPrunedGraph(causalityAlgorithm.getPrunedGraph());
+		output.setUntestedPairs(causalityAlgorithm.getUntestedPairs());
+		output.setMetrics(metrics);
+		output.setBucketing(bucketing);
+
+		return output;
+	}
+
+	/**
+	 * Returns a copy of the series with the new measurements added. Later
+	 * measurements overwrite earlier ones at the same moment, as in the
+	 * decomposition.
+	 */
+	private static TimeSeries extend(TimeSeries series, TimeSeries delta) {
+		if (series == null)
+			return delta;
+		TimeSeries extended;
+		try {
+			extended = (TimeSeries) series.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+		for (int i = 0; i < delta.getItemCount(); i++) {
+			TimeSeriesDataItem item = delta.getDataItem(i);
+			extended.addOrUpdate(item.getPeriod(), item.getValue());
+		}
+		return extended;
+	}
+
+	// Decomposition edges of both graphs can coincide after merging
+	private static void addEdge(Graph graph, Node source, Node target) {
+		for (Edge edge : graph.getOutgoingEdges(source))
+			if (edge.getTarget().equals(target))
+				return;
+		graph.addEdge(new Edge(source, target));
+	}
+
+}
@@ -1,28 +1,29 @@
 package org.processmining.rootcauseanalysis.algorithms;
 
-import java.util.Date;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.deckfour.xes.model.XLog;
-import org.eclipse.collections.impl.map.mutable.UnifiedMap;
-import org.jfree.data.time.FixedMillisecond;
 import org.jfree.data.time.RegularTimePeriod;
 import org.jfree.data.time.TimeSeries;
-import org.processmining.contextawareperformance.models.ContextResult;
 import org.processmining.contextawareperformance.models.EventCollection;
-import org.processmining.contextawareperformance.models.PerformanceMeasurement;
-import org.processmining.contextawareperformance.models.eventcollectionentities.EventCollectionEntity;
-import org.processmining.contextawareperformance.models.eventcollectionviews.EventCollectionViewType;
-import org.processmining.contextawareperformance.models.functions.context.Context;
-import org.processmining.contextawareperformance.models.functions.performance.Performance;
 //import org.processmining.contextawareperformance.models.preprocessors.xlog.activityinstance.assign.AssignActivityInstanceXLogPreprocessor;
 import org.processmining.contextawareperformance.models.preprocessors.xlog.event.remove.RemoveEventsWithoutTimestampXLogPreprocessor;
 import org.processmining.framework.plugin.PluginContext;
-import org.processmining.rootcauseanalysis.algorithms.causality.GrangerCausalityAlgorithm;
+import org.processmining.framework.plugin.Progress;
+import org.processmining.rootcauseanalysis.algorithms.causality.CausalityAlgorithm;
+import org.processmining.rootcauseanalysis.algorithms.decomposition.DecompositionAlgorithm;
+import org.processmining.rootcauseanalysis.io.TraceReader;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisMetrics;
 import org.processmining.rootcauseanalysis.models.RootCauseAnalysisOutput;
-import org.processmining.rootcauseanalysis.models.graph.Edge;
 import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
 import org.processmining.rootcauseanalysis.models.graph.Node;
 import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.parameters.GrangerCausalityParameters;
 import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
 import org.processmining.rootcauseanalysis.utils.TimeSeriesUtils;
 
@@ -37,10 +38,8 @@ public class RootCauseAnalysisAlgorithm {
 		 * 
 		 ******************************************************************************************/
 
-		Graph decompositionGraph = new Graph();
-		Graph inclusionGraph = new Graph();
-		Graph causalityGraph = new Graph();
-		RootCauseAnalysisOutput output = new RootCauseAnalysisOutput();
+		Graph decompositionGraph;
+		RootCauseAnalysisMetrics metrics = new RootCauseAnalysisMetrics();
 
 		/******************************************************************************************
 		 * 
@@ -60,6 +59,8 @@ public class RootCauseAnalysisAlgorithm {
 		 * 
 		 ******************************************************************************************/
 
+		metrics.startStage("preprocessing");
+
 		RemoveEventsWithoutTimestampXLogPreprocessor removeEventsWithoutTimestampPreprocessor = new RemoveEventsWithoutTimestampXLogPreprocessor();
 		eventlogout = removeEventsWithoutTimestampPreprocessor.preprocess(eventlog);
 
@@ -75,76 +76,66 @@ public class RootCauseAnalysisAlgorithm {
 		 * 
 		 * The decomposition graph is the graph where parent nodes represent the
 		 * base KPI time series and child nodes represent some decomposed
-		 * version of parent nodes.
+		 * version of parent nodes. Each view is decomposed in a single pass
+		 * over its entities.
 		 * 
 		 ******************************************************************************************/
 
-		// Create basic performance function time series objects and decomposition graph
-		for (EventCollectionViewType eventCollectionViewType : parameters.getEventCollectionViewTypesToUse()) {
-
-			performanceFunction: for (Performance<?> performanceFunction : parameters.getPerformanceFunctionsToUse()) {
-
-				if (!performanceFunction.getType().getApplicableViewTypes().contains(eventCollectionViewType))
-					continue performanceFunction;
-
-				String lblPerformance = performanceFunction.getType().getDescription();
-				Node performanceNode = new Node(lblPerformance);
-				TimeSeries tsPerformance = new TimeSeries(lblPerformance);
-				tsPerformance.setDescription(lblPerformance);
-				performanceNode.setProperty(Properties.KEY_TIMESERIES, tsPerformance);
-				decompositionGraph.addNode(performanceNode);
-
-				contextFunction: for (Context<?> contextFunction : parameters.getContextFunctionsToUse()) {
-
-					if (!contextFunction.getType().getApplicableViewTypes().contains(eventCollectionViewType))
-						continue contextFunction;
-
-					String lblPerformanceContext = lblPerformance + ", " + contextFunction.getType().getDescription();
-
-					UnifiedMap<String, Node> mapContextResultNode = new UnifiedMap<String, Node>();
+		metrics.startStage("decomposition");
 
-					for (EventCollectionEntity eventCollectionEntity : eventCollection.viewAs(eventCollectionViewType)
-							.keySet()) {
+		decompositionGraph = new DecompositionAlgorithm(parameters).computeDecompositionGraph(eventCollection);
 
-						PerformanceMeasurement<?> performanceMeasurement = performanceFunction
-								.mapToPerformance(eventCollectionEntity, eventCollection);
-
-						ContextResult<?> contextResult = contextFunction.mapToContext(eventCollectionEntity,
-								eventCollection);
-
-						Long result = Long.parseLong(performanceMeasurement.getResult().toString());
-						Date measurementDate = performanceMeasurement.getMeasurementDate();
-						RegularTimePeriod measurementTimePeriod = new FixedMillisecond(measurementDate);
-
-						if (!mapContextResultNode.containsKey(contextResult.getResult().toString())) {
-
-							String lblPerformanceContextContextResult = lblPerformanceContext + ", activity "
-									+ eventCollectionEntity.toString() + ", " + contextResult.getResult().toString();
-							Node performanceContextContextResultNode = new Node(lblPerformanceContextContextResult);
-							TimeSeries tsContextResult = new TimeSeries(lblPerformanceContextContextResult);
-							tsContextResult.setDescription(lblPerformanceContextContextResult);
-							performanceContextContextResultNode.setProperty(Properties.KEY_TIMESERIES, tsContextResult);
+		return analyze(decompositionGraph, parameters, metrics, getProgress(pluginContext));
+	}
 
-							mapContextResultNode.put(contextResult.getResult().toString(),
-									performanceContextContextResultNode);
+	/**
+	 * Variant of {@link #apply(PluginContext, XLog, RootCauseAnalysisParameters)}
+	 * that streams the event log from a reader instead of materializing it.
+	 * Events without a timestamp are dropped by the reader, and the traces are
+	 * decomposed in batches (see
+	 * {@link RootCauseAnalysisParameters#getStreamingBatchSize()}), so the
+	 * log is never held as a whole. With a bucketing that is known up front,
+	 * the measurements are aggregated per bucket as they are read; otherwise
+	 * all measurements are held (see
+	 * {@link DecompositionAlgorithm#computeDecompositionGraph(TraceReader, int)}).
+	 * Views whose entities span multiple cases are not decomposed.
+	 */
+	protected static RootCauseAnalysisOutput apply(PluginContext pluginContext, TraceReader reader,
+			RootCauseAnalysisParameters parameters) throws IOException {
+
+		RootCauseAnalysisMetrics metrics = new RootCauseAnalysisMetrics();
 
-							decompositionGraph.addNode(performanceContextContextResultNode);
-							decompositionGraph.addEdge(new Edge(performanceNode, performanceContextContextResultNode));
-						}
+		/******************************************************************************************
+		 * 
+		 * STREAM THE EVENT LOG INTO TIME SERIES AND DECOMPOSITION GRAPH
+		 * 
+		 * Traces are read, filtered and decomposed batch by batch; the series
+		 * of the batches are merged.
+		 * 
+		 ******************************************************************************************/
 
-						((TimeSeries) performanceNode.getProperty(Properties.KEY_TIMESERIES))
-								.addOrUpdate(measurementTimePeriod, result);
+		metrics.startStage("decomposition");
 
-						((TimeSeries) mapContextResultNode.get(contextResult.getResult().toString())
-								.getProperty(Properties.KEY_TIMESERIES)).addOrUpdate(measurementTimePeriod, result);
+		Graph decompositionGraph = new DecompositionAlgorithm(parameters).computeDecompositionGraph(reader,
+				parameters.getStreamingBatchSize());
+		parameters.displayMessage(reader.getRemovedEvents() + " events without a timestamp were removed.");
 
-					}
+		return analyze(decompositionGraph, parameters, metrics, getProgress(pluginContext));
+	}
 
-				}
+	/**
+	 * Builds the inclusion and causality graphs of the decomposition graph.
+	 * Returns null when there are no series, or when the causality search was
+	 * cancelled without an anytime search to mark the untested pairs.
+	 */
+	private static RootCauseAnalysisOutput analyze(Graph decompositionGraph, RootCauseAnalysisParameters parameters,
+			RootCauseAnalysisMetrics metrics, Progress progress) {
 
-			}
+		InclusionGraph inclusionGraph;
+		Graph causalityGraph = new Graph();
+		RootCauseAnalysisOutput output = new RootCauseAnalysisOutput();
 
-		}
+		metrics.addSeries(decompositionGraph.getNodes().size());
 
 		if (decompositionGraph.getNodes().size() == 0) {
 			parameters.displayMessage("No time series (nodes), returning empty result.");
@@ -157,43 +148,67 @@ public class RootCauseAnalysisAlgorithm {
 		 * 
 		 * The inclusion graph is the fully connected copy of the decomposition
 		 * graph where edges are removed between nodes if they have an ancestry
-		 * relationship.
+		 * relationship. It is kept implicit and only expanded on demand.
 		 * 
 		 ******************************************************************************************/
 
-		for (Node node : decompositionGraph.getNodes()) {
-			inclusionGraph.addNode(node.clone());
-		}
-
-		for (Node nodeA : inclusionGraph.getNodes()) {
-			for (Node nodeB : inclusionGraph.getNodes()) {
-				if (!(nodeA.equals(nodeB) || decompositionGraph.ancestor(nodeA, nodeB)
-						|| decompositionGraph.ancestor(nodeB, nodeA))) {
+		metrics.startStage("inclusion");
 
-					inclusionGraph.addEdge(new Edge(nodeA, nodeB));
-					inclusionGraph.addEdge(new Edge(nodeB, nodeA));
-
-				}
-			}
-		}
+		// The inclusion graph is implicit: candidate pairs are derived from the ancestry index
+		// of the decomposition graph when iterated, instead of materializing N^2 edges
+		inclusionGraph = new InclusionGraph(decompositionGraph);
+		metrics.addCandidatePairs(inclusionGraph.getCandidatePairCount());
+		parameters.displayMessage(
+				"The inclusion graph has " + inclusionGraph.getCandidatePairCount() + " candidate pairs.");
 
 		/******************************************************************************************
 		 * 
 		 * RE-SAMPLE TIME SERIES
 		 * 
 		 * All time series in the collection are resampled to the same regular
-		 * time period (sampling rate).
+		 * time period (sampling rate). From here on, the series are held as
+		 * primitive regular time series; JFreeChart series are only created
+		 * from them for visualization.
 		 * 
 		 ******************************************************************************************/
 
+		metrics.startStage("resampling");
+
+		EpochBucketing bucketing = TimeSeriesUtils.getBucketing(parameters);
+		if (parameters.isAutomaticTimePeriod() && parameters.getBucketWidth() <= 0) {
+			List<TimeSeries> series = new ArrayList<TimeSeries>();
+			for (Node node : inclusionGraph.getNodes())
+				series.add((TimeSeries) node.getProperty(Properties.KEY_TIMESERIES));
+			RegularTimePeriod selected = TimeSeriesUtils.getMCSR(series,
+					new GrangerCausalityParameters().getMinimumSampleSize(), parameters.getTimeZone());
+			if (selected != null)
+				bucketing = EpochBucketing.of(selected, parameters.getTimeZone());
+			parameters.displayMessage("The series are resampled by " + bucketing + ".");
+		}
+
 		for (Node node : inclusionGraph.getNodes()) {
 
+			// Streamed series may have been aggregated per bucket already, then they have no measurements
 			TimeSeries nodeSeries = (TimeSeries) node.getProperty(Properties.KEY_TIMESERIES);
-			nodeSeries = TimeSeriesUtils.resampleTimeSeries(nodeSeries, parameters.getTimePeriod());
-			node.setProperty(Properties.KEY_TIMESERIES, nodeSeries);
+			RegularTimeSeries resampled = nodeSeries == null
+					? (RegularTimeSeries) node.getProperty(Properties.KEY_REGULARTIMESERIES)
+					: TimeSeriesUtils.resample(nodeSeries, bucketing,
+							parameters.getAggregationFunction().createAggregator(),
+							parameters.getImputationStrategy());
+			node.setProperty(Properties.KEY_REGULARTIMESERIES, resampled);
+			node.getProperties().remove(Properties.KEY_TIMESERIES);
+
+			if (resampled == null)
+				metrics.addUnresampledSeries(1);
+			else
+				metrics.addResampledSeries(1);
 
 		}
 
+		if (metrics.getUnresampledSeries() > 0)
+			parameters.displayMessage(metrics.getUnresampledSeries()
+					+ " series cannot be resampled, since more values would have to be imputed than measured.");
+
 		/******************************************************************************************
 		 * 
 		 * CREATE CAUSALITY GRAPH
@@ -204,8 +219,23 @@ public class RootCauseAnalysisAlgorithm {
 		 * 
 		 ******************************************************************************************/
 
-		causalityGraph = new GrangerCausalityAlgorithm().computeCausalGraph(inclusionGraph);
-		parameters.displayMessage("We found " + causalityGraph.getEdges().size() + " causal relations.");
+		metrics.startStage("causality");
+
+		CausalityAlgorithm causalityAlgorithm = parameters.getCausalityMethod()
+				.createAlgorithm(parameters.createCausalityParameters(), metrics);
+		causalityAlgorithm.setProgress(progress);
+		causalityGraph = causalityAlgorithm.computeCausalGraph(inclusionGraph);
+		metrics.endStage();
+
+		if (progress != null && progress.isCancelled() && causalityAlgorithm.getUntestedPairs() == null) {
+			parameters.displayMessage("The analysis was cancelled, returning no result.");
+			return null;
+		}
+		if (causalityAlgorithm.getUntestedPairs() != null)
+			parameters.displayMessage("We found " + causalityGraph.getEdges().size() + " causal relations, "
+					+ causalityAlgorithm.getUntestedPairs().size() + " candidate pairs were not tested.");
+		else
+			parameters.displayMessage("We found " + causalityGraph.getEdges().size() + " causal relations.");
 
 		/******************************************************************************************
 		 * 
@@ -216,8 +246,17 @@ public class RootCauseAnalysisAlgorithm {
 		output.setDecompositionGraph(decompositionGraph);
 		output.setInclusionGraph(inclusionGraph);
 		output.setCausalityGraph(causalityGraph);
+		output.setPrunedGraph(causalityAlgorithm.getPrunedGraph());
+		output.setUntestedPairs(causalityAlgorithm.getUntestedPairs());
+		output.setMetrics(metrics);
+		output.setBucketing(bucketing);
 
 		return output;
 	}
 
+	// The progress of the plugin context, if any
+	private static Progress getProgress(PluginContext pluginContext) {
+		return pluginContext == null ? null : pluginContext.getProgress();
+	}
+
 }
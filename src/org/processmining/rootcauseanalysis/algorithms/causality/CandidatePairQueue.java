@@ -0,0 +1,340 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+
+/**
+ * Enumerates the candidate pairs of an inclusion graph in descending order of
+ * a cheap priority score, so a search that is stopped early has tested the
+ * most promising pairs. The priority of X->Y is
+ *
+ * v(X) v(Y) log(1 + overlap(X, Y)) / ((1 + depth(X)) (1 + depth(Y)))
+ *
+ * where v is the coefficient of variation of a series (capped at 1), the
+ * overlap is the number of buckets in which both series can be tested and the
+ * depth is the level of the node in the decomposition hierarchy. Constant
+ * series and pairs that do not overlap have priority 0, pairs of aggregated
+ * (top-level) series come before the pairs of their decompositions.
+ *
+ * Pairs are not materialized up front. The nodes are grouped in classes by
+ * the start and the end of their series, and sorted by weight, v / (1 +
+ * depth), per class. Since the overlap of two series is bounded by the span
+ * of a class, the priority of the pairs of a target with the sources of a
+ * class is bounded by the product of their weights and the log of the largest
+ * overlap of the target with the class. Every target has a row per class,
+ * whose bounds descend. The rows are merged in descending order of their next
+ * bound, and a pair is emitted once its priority is at least the bound of all
+ * pairs that were not enumerated yet.
+ *
+ * The memory needed is linear in the number of nodes times the number of
+ * classes, plus the number of held pairs: the pairs that were enumerated but
+ * not yet emitted, since their priority is below the bound of some row. The
+ * bound is close to the priority when the series in a class have similar
+ * spans, so typically few pairs are held. In the worst case, series whose
+ * overlap with the series of their class differs widely, up to all pairs are
+ * held before the first pair is emitted.
+ */
+class CandidatePairQueue {
+
+	// The number of classes of the starts, and of the ends, of the series
+	private static final int SPAN_CLASSES = 8;
+
+	// FIELDS
+
+	private final InclusionGraph inclusionGraph;
+	private final RegularTimeSeries[] series;
+	private final double[] weights;
+
+	// The nodes per class by descending weight, the class of every position and the positions of every class
+	private final int[] members;
+	private final int[] memberClasses;
+	private final int[] classOffsets;
+
+	// The first start, last end and largest length of the series of every class
+	private final long[] classStarts;
+	private final long[] classEnds;
+	private final long[] classLengths;
+
+	// The row of every target and class, by bound
+	private final PriorityQueue<Row> rows;
+	// The enumerated candidate pairs, by priority
+	private final PriorityQueue<Pair> prioritized;
+
+	// CONSTRUCTORS
+
+	public CandidatePairQueue(InclusionGraph inclusionGraph) {
+		this.inclusionGraph = inclusionGraph;
+		int n = inclusionGraph.size();
+		series = new RegularTimeSeries[n];
+		weights = new double[n];
+		int[] depths = getDepths(inclusionGraph);
+		for (int i = 0; i < n; i++) {
+			Node node = inclusionGraph.getNode(i);
+			series[i] = (RegularTimeSeries) node.getProperty(Properties.KEY_REGULARTIMESERIES);
+			if (series[i] != null)
+				weights[i] = getVariation(series[i]) / (1 + depths[i]);
+		}
+
+		// The nodes without weight form the last class, whose pairs have priority 0
+		int[] classes = getClasses();
+		int numberOfClasses = SPAN_CLASSES * SPAN_CLASSES + 1;
+		classOffsets = new int[numberOfClasses + 1];
+		for (int i = 0; i < n; i++)
+			classOffsets[classes[i] + 1]++;
+		for (int c = 0; c < numberOfClasses; c++)
+			classOffsets[c + 1] += classOffsets[c];
+		members = new int[n];
+		memberClasses = new int[n];
+		int[] positions = Arrays.copyOf(classOffsets, numberOfClasses);
+		for (int i : sort(weights)) {
+			members[positions[classes[i]]] = i;
+			memberClasses[positions[classes[i]]++] = classes[i];
+		}
+
+		classStarts = new long[numberOfClasses];
+		classEnds = new long[numberOfClasses];
+		classLengths = new long[numberOfClasses];
+		Arrays.fill(classStarts, Long.MAX_VALUE);
+		Arrays.fill(classEnds, Long.MIN_VALUE);
+		for (int i = 0; i < n; i++) {
+			if (weights[i] == 0)
+				continue;
+			classStarts[classes[i]] = Math.min(classStarts[classes[i]], series[i].getStart());
+			classEnds[classes[i]] = Math.max(classEnds[classes[i]], series[i].getEnd());
+			classLengths[classes[i]] = Math.max(classLengths[classes[i]], series[i].size());
+		}
+
+		rows = new PriorityQueue<Row>();
+		prioritized = new PriorityQueue<Pair>();
+		for (int target = 0; target < n; target++)
+			for (int c = 0; c < numberOfClasses; c++)
+				if (classOffsets[c] < classOffsets[c + 1])
+					addRow(target, classOffsets[c]);
+	}
+
+	// METHODS
+
+	/**
+	 * Checks whether there is a candidate pair that was not returned yet,
+	 * without returning it.
+	 */
+	public boolean hasNext() {
+		enumerate();
+		return !prioritized.isEmpty();
+	}
+
+	/**
+	 * Returns the next candidate pair, encoded as (source << 32) | target, or
+	 * -1 when all candidate pairs were returned.
+	 */
+	public long next() {
+		enumerate();
+		if (prioritized.isEmpty())
+			return -1;
+		Pair pair = prioritized.poll();
+		return ((long) pair.source << 32) | pair.target;
+	}
+
+	// Enumerates pairs until no pair that is not enumerated yet can have a higher priority than the next pair
+	private void enumerate() {
+		while (!rows.isEmpty() && (prioritized.isEmpty() || rows.peek().bound > prioritized.peek().priority)) {
+			Row row = rows.poll();
+			int source = members[row.position];
+			if (row.position + 1 < classOffsets[memberClasses[row.position] + 1])
+				addRow(row.target, row.position + 1);
+			if (inclusionGraph.isCandidate(source, row.target))
+				prioritized.add(new Pair(source, row.target, getPriority(source, row.target)));
+		}
+	}
+
+	/**
+	 * Returns the priority of the candidate pair (source, target).
+	 */
+	public double getPriority(int source, int target) {
+		RegularTimeSeries tsX = series[source];
+		RegularTimeSeries tsY = series[target];
+		if (tsX == null || tsY == null)
+			return 0;
+
+		// X is only used up to the end of Y, Y only from the start of X
+		long overlap = Math.min(tsX.getEnd(), tsY.getEnd()) - Math.max(tsX.getStart(), tsY.getStart()) + 1;
+		if (overlap <= 0)
+			return 0;
+		return weights[source] * weights[target] * Math.log1p(overlap);
+	}
+
+	// The class of every node by the quantiles of the starts and of the ends of the series
+	private int[] getClasses() {
+		int n = series.length;
+		long[] starts = new long[n];
+		long[] ends = new long[n];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			if (weights[i] == 0)
+				continue;
+			starts[size] = series[i].getStart();
+			ends[size++] = series[i].getEnd();
+		}
+		starts = Arrays.copyOf(starts, size);
+		ends = Arrays.copyOf(ends, size);
+		Arrays.sort(starts);
+		Arrays.sort(ends);
+
+		int[] classes = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (weights[i] == 0)
+				classes[i] = SPAN_CLASSES * SPAN_CLASSES;
+			else
+				classes[i] = getQuantile(starts, series[i].getStart()) * SPAN_CLASSES
+						+ getQuantile(ends, series[i].getEnd());
+		}
+		return classes;
+	}
+
+	// The quantile of the value among the sorted values
+	private static int getQuantile(long[] sorted, long value) {
+		int index = Arrays.binarySearch(sorted, value);
+		if (index < 0)
+			index = -index - 1;
+		return (int) ((long) index * SPAN_CLASSES / sorted.length);
+	}
+
+	// Adds the row of the target at the specified position, with the bound of the remaining sources of the class
+	private void addRow(int target, int position) {
+		int source = members[position];
+		int c = memberClasses[position];
+		double bound = 0;
+		if (weights[target] > 0 && weights[source] > 0) {
+			RegularTimeSeries tsY = series[target];
+			long overlap = Math.min(Math.min(tsY.getEnd(), classEnds[c]) - Math.max(tsY.getStart(), classStarts[c]) + 1,
+					Math.min(tsY.size(), classLengths[c]));
+			if (overlap > 0)
+				bound = weights[source] * weights[target] * Math.log1p(overlap);
+		}
+		rows.add(new Row(target, position, bound));
+	}
+
+	// The indices sorted by descending value, and then by ascending index
+	private static int[] sort(final double[] values) {
+		Integer[] sorted = new Integer[values.length];
+		for (int i = 0; i < values.length; i++)
+			sorted[i] = i;
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer i, Integer j) {
+				int result = Double.compare(values[j], values[i]);
+				return result == 0 ? Integer.compare(i, j) : result;
+			}
+		});
+		int[] indices = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			indices[i] = sorted[i];
+		return indices;
+	}
+
+	// The coefficient of variation of the valid values, capped at 1
+	private static double getVariation(RegularTimeSeries series) {
+		double sum = 0;
+		double squares = 0;
+		int count = 0;
+		for (int i = 0; i < series.size(); i++) {
+			if (!series.isValid(i))
+				continue;
+			double value = series.getValue(i);
+			sum += value;
+			squares += value * value;
+			count++;
+		}
+		if (count < 2)
+			return 0;
+		double mean = sum / count;
+		double sd = Math.sqrt(Math.max(squares / count - mean * mean, 0));
+		if (sd == 0)
+			return 0;
+		return mean == 0 ? 1 : Math.min(sd / Math.abs(mean), 1);
+	}
+
+	// The depth of every node in the decomposition hierarchy (0 when there is no hierarchy)
+	private static int[] getDepths(InclusionGraph inclusionGraph) {
+		int[] depths = new int[inclusionGraph.size()];
+		if (!inclusionGraph.isHierarchical())
+			return depths;
+		int[] level = inclusionGraph.getRoots();
+		for (int depth = 0; level.length > 0; depth++) {
+			int size = 0;
+			for (int node : level) {
+				depths[node] = depth;
+				size += inclusionGraph.getChildren(node).length;
+			}
+			int[] next = new int[size];
+			size = 0;
+			for (int node : level)
+				for (int child : inclusionGraph.getChildren(node))
+					next[size++] = child;
+			level = next;
+		}
+		return depths;
+	}
+
+	/**
+	 * A pair with its priority, ordered by descending priority and then by
+	 * ascending indices, so the order is deterministic.
+	 */
+	private static class Pair implements Comparable<Pair> {
+
+		private final int source;
+		private final int target;
+		private final double priority;
+
+		public Pair(int source, int target, double priority) {
+			this.source = source;
+			this.target = target;
+			this.priority = priority;
+		}
+
+		public int compareTo(Pair pair) {
+			int result = Double.compare(pair.priority, priority);
+			if (result == 0)
+				result = Integer.compare(source, pair.source);
+			if (result == 0)
+				result = Integer.compare(target, pair.target);
+			return result;
+		}
+
+	}
+
+	/**
+	 * The remaining sources of a class for a target: the sources from the
+	 * position in the members to the end of the class, with the bound of
+	 * their priorities. Ordered by descending bound and then by ascending
+	 * target and position, so the order is deterministic.
+	 */
+	private static class Row implements Comparable<Row> {
+
+		private final int target;
+		private final int position;
+		private final double bound;
+
+		public Row(int target, int position, double bound) {
+			this.target = target;
+			this.position = position;
+			this.bound = bound;
+		}
+
+		public int compareTo(Row row) {
+			int result = Double.compare(row.bound, bound);
+			if (result == 0)
+				result = Integer.compare(target, row.target);
+			if (result == 0)
+				result = Integer.compare(position, row.position);
+			return result;
+		}
+
+	}
+
+}
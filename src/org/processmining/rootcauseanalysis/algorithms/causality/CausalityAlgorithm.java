@@ -2,11 +2,18 @@ package org.processmining.rootcauseanalysis.algorithms.causality;
 
 import java.util.Objects;
 
+import org.processmining.framework.plugin.Progress;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.UntestedPairs;
+
 public abstract class CausalityAlgorithm implements ICausalityAlgorithm {
 
 	// FIELDS
 
 	private String description;
+	private Graph prunedGraph;
+	private UntestedPairs untestedPairs;
+	private Progress progress;
 
 	// CONSTRUCTORS
 
@@ -24,8 +31,78 @@ public abstract class CausalityAlgorithm implements ICausalityAlgorithm {
 		this.description = description;
 	}
 
+	/**
+	 * Returns the pairs of the last computed causality graph whose subtrees
+	 * were pruned, as edges between inclusion graph nodes: the pairs of their
+	 * descendants were not tested. Null when all candidate pairs were tested.
+	 */
+	public Graph getPrunedGraph() {
+		return prunedGraph;
+	}
+
+	protected void setPrunedGraph(Graph prunedGraph) {
+		this.prunedGraph = prunedGraph;
+	}
+
+	/**
+	 * Returns the candidate pairs that the last computed causality graph
+	 * leaves untested because the budget was exhausted or the search was
+	 * cancelled. Null when the search was not stopped early.
+	 */
+	public UntestedPairs getUntestedPairs() {
+		return untestedPairs;
+	}
+
+	protected void setUntestedPairs(UntestedPairs untestedPairs) {
+		this.untestedPairs = untestedPairs;
+	}
+
+	/**
+	 * The progress to which the search reports, and whose cancellation stops
+	 * the search, or null.
+	 */
+	public Progress getProgress() {
+		return progress;
+	}
+
+	public void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
 	// METHODS
 
+	protected boolean isCancelled() {
+		return progress != null && progress.isCancelled();
+	}
+
+	/**
+	 * Resets the progress (if any) for a search of the specified number of
+	 * steps.
+	 */
+	protected void startProgress(String caption, long steps) {
+		if (progress == null)
+			return;
+		progress.setCaption(caption);
+		progress.setIndeterminate(false);
+		progress.setMinimum(0);
+		progress.setMaximum((int) Math.min(steps, Integer.MAX_VALUE));
+		progress.setValue(0);
+	}
+
+	protected void setProgressValue(long step) {
+		if (progress != null)
+			progress.setValue((int) Math.min(step, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Advances the progress (if any) by one step; may be called by multiple
+	 * threads.
+	 */
+	protected void incrementProgress() {
+		if (progress != null)
+			progress.inc();
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (!(obj instanceof CausalityAlgorithm))
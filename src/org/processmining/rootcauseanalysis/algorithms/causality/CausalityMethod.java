@@ -0,0 +1,57 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisMetrics;
+import org.processmining.rootcauseanalysis.parameters.GrangerCausalityParameters;
+
+/**
+ * The methods that compute the causality graph from the inclusion graph.
+ */
+public enum CausalityMethod {
+
+	PAIRWISE("Granger test per candidate pair"),
+	HIERARCHICAL("Granger tests, top-down through the decomposition"),
+	ANYTIME("Granger tests by priority, within a time or test budget"),
+	GROUP_LASSO("Group lasso regression per target");
+
+	// FIELDS
+
+	private final String description;
+
+	// CONSTRUCTORS
+
+	private CausalityMethod(String description) {
+		this.description = description;
+	}
+
+	// GETTERS AND SETTERS
+
+	public String getDescription() {
+		return description;
+	}
+
+	// METHODS
+
+	public CausalityAlgorithm createAlgorithm(GrangerCausalityParameters parameters,
+			RootCauseAnalysisMetrics metrics) {
+		switch (this) {
+			case GROUP_LASSO :
+				GroupLassoGrangerAlgorithm lasso = new GroupLassoGrangerAlgorithm();
+				lasso.setParameters(parameters);
+				lasso.setMetrics(metrics);
+				return lasso;
+			case HIERARCHICAL :
+				parameters.setHierarchical(true);
+				break;
+			case ANYTIME :
+				parameters.setAnytime(true);
+				break;
+			default :
+				break;
+		}
+		GrangerCausalityAlgorithm granger = new GrangerCausalityAlgorithm();
+		granger.setParameters(parameters);
+		granger.setMetrics(metrics);
+		return granger;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+/**
+ * Cheap screening of a (shifted) pair of series before the Granger test. A
+ * pair passes when, for at least one lag 1..L, the correlation between the
+ * predictable variable and the lagged predictor is large enough. Correlations
+ * are compared on the Fisher z-scale, where they are approximately normal
+ * with a standard deviation of 1 / sqrt(n - 3).
+ *
+ * The threshold is chosen such that a lagged relation that is just
+ * significant at the level of the Granger test is still kept with a
+ * probability of at least 1 - falseNegativeRate. This bound only holds for
+ * relations that show in the (marginal) lagged correlation; relations that
+ * only appear after conditioning on the own lags of the predictable variable
+ * may be screened out, so the screening is a heuristic.
+ */
+public class CorrelationScreening {
+
+	// FIELDS
+
+	private final double zThreshold;
+
+	// CONSTRUCTORS
+
+	/**
+	 * @param significanceLevel
+	 *            - significance level of the Granger test
+	 * @param falseNegativeRate
+	 *            - tolerated probability of discarding a just significant
+	 *            relation; 0 disables the correlation screening.
+	 */
+	public CorrelationScreening(double significanceLevel, double falseNegativeRate) {
+		NormalDistribution normal = new NormalDistribution();
+		if (falseNegativeRate <= 0) {
+			zThreshold = 0;
+		} else {
+			double zSignificant = normal.inverseCumulativeProbability(1 - significanceLevel / 2);
+			double zKeep = normal.inverseCumulativeProbability(1 - Math.min(falseNegativeRate, 0.5));
+			zThreshold = Math.max(zSignificant - zKeep, 0);
+		}
+	}
+
+	// GETTERS AND SETTERS
+
+	/**
+	 * The threshold on the Fisher z-statistic of the lagged correlations.
+	 */
+	public double getZThreshold() {
+		return zThreshold;
+	}
+
+	// METHODS
+
+	/**
+	 * Checks whether the pair may be causal: whether any lagged correlation
+	 * between y[t] and x[t - l] (for l = 1..L) reaches the threshold. Missing
+	 * (NaN) values are skipped, so correlations are taken over the pairs of
+	 * which both values are known.
+	 *
+	 * @param y
+	 *            - array holding the predictable variable
+	 * @param yOffset
+	 *            - index of the first value of the predictable variable
+	 * @param x
+	 *            - array holding the predictor
+	 * @param xOffset
+	 *            - index of the first value of the predictor
+	 * @param length
+	 *            - number of values in both windows
+	 * @param L
+	 *            - largest lag
+	 * @return whether the pair passes the screening.
+	 */
+	public boolean passes(double[] y, int yOffset, double[] x, int xOffset, int length, int L) {
+		if (zThreshold <= 0)
+			return true;
+
+		for (int l = 1; l <= L; l++) {
+			if (length - l <= 3)
+				return true;
+
+			// Correlation of y[l..length) with x[0..length - l), shifted by the first values for precision
+			double y0 = Double.isNaN(y[yOffset + l]) ? 0 : y[yOffset + l];
+			double x0 = Double.isNaN(x[xOffset]) ? 0 : x[xOffset];
+			double sy = 0, sx = 0, syy = 0, sxx = 0, sxy = 0;
+			int n = 0;
+			for (int t = l; t < length; t++) {
+				double yt = y[yOffset + t] - y0;
+				double xt = x[xOffset + t - l] - x0;
+				if (Double.isNaN(yt) || Double.isNaN(xt))
+					continue;
+				n++;
+				sy += yt;
+				sx += xt;
+				syy += yt * yt;
+				sxx += xt * xt;
+				sxy += yt * xt;
+			}
+			if (n <= 3)
+				return true;
+			double vy = syy - sy * sy / n;
+			double vx = sxx - sx * sx / n;
+			if (vy <= 0 || vx <= 0)
+				continue;
+
+			double r = (sxy - sy * sx / n) / Math.sqrt(vy * vx);
+			r = Math.max(-0.999999, Math.min(0.999999, r));
+			double z = 0.5 * Math.log((1 + r) / (1 - r)) * Math.sqrt(n - 3);
+			if (Math.abs(z) >= zThreshold)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Checks whether a window has any variance. A constant predictable
+	 * variable or predictor can never give a significant Granger test.
+	 * Missing (NaN) values are skipped.
+	 */
+	public static boolean isConstant(double[] values, int offset, int length) {
+		int first = offset;
+		while (first < offset + length && Double.isNaN(values[first]))
+			first++;
+		for (int i = first + 1; i < offset + length; i++)
+			if (values[i] != values[first] && !Double.isNaN(values[i]))
+				return false;
+		return true;
+	}
+
+}
@@ -1,20 +1,34 @@
 package org.processmining.rootcauseanalysis.algorithms.causality;
 
-import org.apache.commons.math3.linear.SingularMatrixException;
-import org.jfree.data.time.RegularTimePeriod;
-import org.jfree.data.time.TimeSeries;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.eclipse.collections.api.block.predicate.primitive.IntIntPredicate;
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.processmining.rootcauseanalysis.models.GrangerTestResult;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisMetrics;
 import org.processmining.rootcauseanalysis.models.graph.Edge;
 import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
 import org.processmining.rootcauseanalysis.models.graph.Node;
 import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.graph.UntestedPairs;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
 import org.processmining.rootcauseanalysis.parameters.GrangerCausalityParameters;
-import org.processmining.rootcauseanalysis.utils.TimeSeriesUtils;
 
 public class GrangerCausalityAlgorithm extends CausalityAlgorithm {
 
 	public static final String DESCRIPTION;
 
+	// Significance level of the Granger tests
+	private static final double SIGNIFICANCE_LEVEL = 0.05d;
+
 	static {
 		DESCRIPTION = "Granger causality";
 	}
@@ -22,12 +36,16 @@ public class GrangerCausalityAlgorithm extends CausalityAlgorithm {
 	// FIELDS
 
 	private GrangerCausalityParameters parameters;
+	private RootCauseAnalysisMetrics metrics;
+	private CorrelationScreening screening;
+	private RestrictedFitCache restrictedFitCache;
 
 	// CONSTRUCTORS
 
 	public GrangerCausalityAlgorithm() {
 		super(DESCRIPTION);
 		setParameters(new GrangerCausalityParameters());
+		setMetrics(new RootCauseAnalysisMetrics());
 	}
 
 	// GETTERS AND SETTERS
@@ -40,183 +58,656 @@ public class GrangerCausalityAlgorithm extends CausalityAlgorithm {
 		this.parameters = parameters;
 	}
 
+	/**
+	 * The metrics to which the pair and test counters are added.
+	 */
+	public RootCauseAnalysisMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(RootCauseAnalysisMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	// METHODS
 
 	@Override
 	public Graph computeCausalGraph(Graph inclusionGraph) {
 		Graph causalityGraph = new Graph();
+		initialize();
 
 		// Add all nodes from the inclusion graph
 		for (Node node : inclusionGraph.getNodes())
 			causalityGraph.addNode(node);
 
 		// Add edge between causally related nodes
-		for (Edge edge : inclusionGraph.getEdges()) {
-			TimeSeries tsX = (TimeSeries) edge.getSource().getProperty(Properties.KEY_TIMESERIES);
-			TimeSeries tsY = (TimeSeries) edge.getTarget().getProperty(Properties.KEY_TIMESERIES);
-
-			if (performGrangerTest(tsX, tsY))
+		for (Edge edge : inclusionGraph.getEdges())
+			if (performGrangerTest(edge.getSource(), edge.getTarget()) < SIGNIFICANCE_LEVEL)
 				causalityGraph.addEdge(new Edge(edge.getSource(), edge.getTarget()));
-		}
 
-		// Remove unconnected nodes
-		for (Node node : inclusionGraph.getNodes())
-			if (causalityGraph.getEdges(node).isEmpty())
-				causalityGraph.getNodes().remove(node);
+		metrics.addCausalPairs(causalityGraph.getEdges().size());
+
+		removeUnconnectedNodes(causalityGraph, inclusionGraph.getNodes());
+		release();
 
 		return causalityGraph;
 	}
 
-	private boolean performGrangerTest(TimeSeries tsx, TimeSeries tsy) {
+	@Override
+	public Graph computeCausalGraph(InclusionGraph inclusionGraph) {
+		return computeCausalGraph(inclusionGraph, null);
+	}
+
+	/**
+	 * Computes the causality graph over the candidate pairs of the inclusion
+	 * graph that are accepted by the filter; the other pairs are not tested
+	 * and get no edge. Used to test only the pairs affected by a change. With
+	 * a hierarchical search, the other pairs are still tested when the search
+	 * needs their signal to descend.
+	 *
+	 * A cancelled search stops testing pairs. An anytime search then marks
+	 * the pairs it did not test (see {@link #getUntestedPairs()}); the result
+	 * of another search is incomplete.
+	 * 
+	 * @param inclusionGraph
+	 *            The inclusion graph.
+	 * @param filter
+	 *            Accepts the (source, target) node indices of the pairs to
+	 *            test, or null to test all candidate pairs.
+	 * @return The causality graph.
+	 */
+	@Override
+	public Graph computeCausalGraph(InclusionGraph inclusionGraph, IntIntPredicate filter) {
+		final Graph causalityGraph = new Graph();
+		initialize();
+
+		// Add all nodes from the inclusion graph
+		for (Node node : inclusionGraph.getNodes())
+			causalityGraph.addNode(node);
+
+		// Test all candidate pairs (or search them top-down), in parallel when configured
+		IntArrayList causalPairs;
+		ForkJoinPool pool = parameters.getNumberOfThreads() > 1 ? new ForkJoinPool(parameters.getNumberOfThreads(),
+				RootCauseAnalysisMetrics.getWorkerThreadFactory(), null, false) : null;
 		try {
-			TimeSeries tsX = tsx.createCopy(0, tsx.getItemCount() - 1);
-			TimeSeries tsY = tsy.createCopy(0, tsy.getItemCount() - 1);
-
-			RegularTimePeriod Xs = tsX.getDataItem(0).getPeriod();
-			RegularTimePeriod Ye = tsY.getDataItem(tsY.getItemCount() - 1).getPeriod();
-
-			/******************************************************************************************
-			 * 
-			 * TIMESERIES PRE-PROCESSING
-			 * 
-			 * We can only check Granger causality between time series X->Y when
-			 * Y doesn't end before X starts. Also, we cannot take the following
-			 * points into account: points of X that occur after Y has ended;
-			 * points of Y that occur before X has started.
-			 * 
-			 * Therefore, we modify the series in a pre-processing step. If the
-			 * pre-processed series do not satisfy the minimum sample size
-			 * requirements, then X->Y is considered not to be causal (we cannot
-			 * test).
-			 * 
-			 ******************************************************************************************/
-
-			if (TimeSeriesUtils.endsBefore(Ye, Xs))
-				return false;
-
-			if (TimeSeriesUtils.endsBefore(tsY, tsX))
-				tsX.delete(tsX.getIndex(Ye), tsX.getItemCount() - 1);
-
-			if (tsX.getItemCount() < parameters.getMinimumSampleSize())
-				return false;
-
-			if (TimeSeriesUtils.startsBefore(tsY, tsX))
-				tsY.delete(0, tsY.getIndex(Xs));
-
-			if (tsY.getItemCount() < parameters.getMinimumSampleSize())
-				return false;
-
-			/******************************************************************************************
-			 * 
-			 * RE-BASE TIME SERIES
-			 * 
-			 * H = max. shift. is defined as the number of time periods that X
-			 * is bigger than Y or Y is bigger than X.
-			 * 
-			 * We need two time series of the same size as input for the Granger
-			 * test. Therefore, we shift one of the time series with a certain h
-			 * value time units.
-			 * 
-			 * As soon as we find causality for any given value for h, we
-			 * return.
-			 * 
-			 ******************************************************************************************/
-
-			int H = tsX.getItemCount() - tsY.getItemCount();
-			int maxH = Math.min(parameters.getMaxH(), Math.abs(H));
-			//			System.out.println("Max. H: " + maxH);
-
-			if (H > 0) {
-				// |tsX| > |tsY|
-				// Loop through all possible shift values
-				h: for (int h = maxH; h >= 0; h--) {
-					// Modify tsX to have the same length of tsY, by shifting h periods and dropping the rest.					
-					try {
-						TimeSeries tsxMod = tsx.createCopy(h, h + tsy.getItemCount() - 1);
-						//					System.out.println("h: " + h);
-						if (performShiftedGrangerTest(tsy, tsxMod))
-							return true;
-					} catch (CloneNotSupportedException e) {
-						System.out.println("Could not compare pair for h=" + h + ". Error");
-						e.printStackTrace();
-						continue h;
+			if (parameters.isAnytime()) {
+				causalPairs = searchAnytime(inclusionGraph, filter, pool);
+			} else if (parameters.isHierarchical() && inclusionGraph.isHierarchical()) {
+				causalPairs = searchHierarchically(inclusionGraph, filter, pool);
+			} else {
+				startProgress("Testing candidate pairs", inclusionGraph.size());
+				PairEvaluationTask task = new PairEvaluationTask(inclusionGraph, filter, 0, inclusionGraph.size());
+				causalPairs = pool != null ? pool.invoke(task) : task.evaluate();
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+
+		// Add edge between causally related nodes, in (source, target) order
+		for (int i = 0; i < causalPairs.size(); i += 2)
+			causalityGraph.addEdge(new Edge(inclusionGraph.getNode(causalPairs.get(i)),
+					inclusionGraph.getNode(causalPairs.get(i + 1))));
+		metrics.addCausalPairs(causalPairs.size() / 2);
+
+		removeUnconnectedNodes(causalityGraph, inclusionGraph.getNodes());
+		release();
+
+		return causalityGraph;
+	}
+
+	private void initialize() {
+		setPrunedGraph(null);
+		setUntestedPairs(null);
+		screening = parameters.isScreening()
+				? new CorrelationScreening(SIGNIFICANCE_LEVEL, parameters.getScreeningFalseNegativeRate())
+				: null;
+		restrictedFitCache = parameters.getRestrictedFitCacheSize() > 0
+				? new RestrictedFitCache(parameters.getRestrictedFitCacheSize())
+				: null;
+	}
+
+	// Reports the cache statistics and drops the cached fits, which refer to the series of this run
+	private void release() {
+		if (restrictedFitCache != null) {
+			metrics.addRestrictedFitHits(restrictedFitCache.getStats().hitCount());
+			metrics.addRestrictedFitMisses(restrictedFitCache.getStats().missCount());
+			restrictedFitCache = null;
+		}
+	}
+
+	private static void removeUnconnectedNodes(Graph causalityGraph, Collection<Node> nodes) {
+		for (Node node : nodes)
+			if (causalityGraph.getDegree(node) == 0)
+				causalityGraph.removeNode(node);
+	}
+
+	/**
+	 * Tests whether X Granger-causes Y. Returns the smallest p-value of the
+	 * tested shifts and lags, where the tests stop at the first p-value below
+	 * the significance level; 1 when the pair cannot be tested.
+	 */
+	private double performGrangerTest(Node nodeX, Node nodeY) {
+		RegularTimeSeries tsX = (RegularTimeSeries) nodeX.getProperty(Properties.KEY_REGULARTIMESERIES);
+		RegularTimeSeries tsY = (RegularTimeSeries) nodeY.getProperty(Properties.KEY_REGULARTIMESERIES);
+
+		metrics.addTestedPairs(1);
+
+		// Series that could not be resampled cannot be tested
+		if (tsX == null || tsY == null) {
+			metrics.addPairsRejectedByOverlap(1);
+			return 1;
+		}
+
+		return performGrangerTest(tsX, tsY);
+	}
+
+	/**
+	 * Tests the candidate pairs of the inclusion graph whose source index lies
+	 * in [fromSource, toSource). Ranges larger than the chunk size are split
+	 * in two and forked, so idle workers can steal them. The result holds the
+	 * causal pairs as consecutive (source, target) indices, ordered as in a
+	 * sequential run.
+	 */
+	private class PairEvaluationTask extends RecursiveTask<IntArrayList> {
+
+		private static final long serialVersionUID = -2186548337281916520L;
+
+		private final InclusionGraph inclusionGraph;
+		private final IntIntPredicate filter;
+		private final int fromSource;
+		private final int toSource;
+
+		public PairEvaluationTask(InclusionGraph inclusionGraph, IntIntPredicate filter, int fromSource,
+				int toSource) {
+			this.inclusionGraph = inclusionGraph;
+			this.filter = filter;
+			this.fromSource = fromSource;
+			this.toSource = toSource;
+		}
+
+		@Override
+		protected IntArrayList compute() {
+			if (toSource - fromSource <= Math.max(1, parameters.getChunkSize()))
+				return evaluate();
+
+			int middle = (fromSource + toSource) >>> 1;
+			PairEvaluationTask left = new PairEvaluationTask(inclusionGraph, filter, fromSource, middle);
+			PairEvaluationTask right = new PairEvaluationTask(inclusionGraph, filter, middle, toSource);
+			left.fork();
+			IntArrayList rightPairs = right.compute();
+			IntArrayList pairs = left.join();
+			pairs.addAll(rightPairs);
+			return pairs;
+		}
+
+		public IntArrayList evaluate() {
+			final IntArrayList pairs = new IntArrayList();
+			for (int source = fromSource; source < toSource && !isCancelled(); source++) {
+				inclusionGraph.forEachCandidatePair(source, source + 1, new IntIntProcedure() {
+					public void value(int source, int target) {
+						if (filter != null && !filter.accept(source, target))
+							return;
+						if (performGrangerTest(inclusionGraph.getNode(source),
+								inclusionGraph.getNode(target)) < SIGNIFICANCE_LEVEL)
+							pairs.addAll(source, target);
 					}
+				});
+				incrementProgress();
+			}
+			return pairs;
+		}
+
+	}
+
+	/**
+	 * Searches the candidate pairs top-down through the hierarchy of the
+	 * decomposition graph. The search starts with the pairs of roots and the
+	 * pairs of siblings, which have no pair of parents to screen them. A pair
+	 * that shows a signal at the relaxed significance level is expanded to the
+	 * pairs in which the source, the target or both are replaced by one of
+	 * their children. Below the other pairs, the search does not descend; they
+	 * are recorded in the pruned graph. The pairs of a level are tested in
+	 * parallel when a pool is given.
+	 *
+	 * @return The causal pairs as consecutive (source, target) indices, in
+	 *         the order in which they were found.
+	 */
+	private IntArrayList searchHierarchically(InclusionGraph inclusionGraph, IntIntPredicate filter,
+			ForkJoinPool pool) {
+		double relaxedLevel = Math.max(parameters.getHierarchicalSignificanceLevel(), SIGNIFICANCE_LEVEL);
+		Graph prunedGraph = new Graph();
+		IntArrayList causalPairs = new IntArrayList();
+		LongHashSet visited = new LongHashSet();
+		LongArrayList frontier = new LongArrayList();
+
+		addStartPairs(inclusionGraph, visited, frontier);
+
+		long tested = 0;
+		startProgress("Searching candidate pairs top-down", inclusionGraph.getCandidatePairCount());
+		while (!frontier.isEmpty() && !isCancelled()) {
+			double[] pValues = new double[frontier.size()];
+			PairTestTask task = new PairTestTask(inclusionGraph, filter, frontier, pValues, 0, frontier.size());
+			if (pool != null)
+				pool.invoke(task);
+			else
+				task.compute();
+
+			LongArrayList next = new LongArrayList();
+			for (int i = 0; i < frontier.size(); i++) {
+				int source = (int) (frontier.get(i) >>> 32);
+				int target = (int) frontier.get(i);
+				if (pValues[i] < SIGNIFICANCE_LEVEL && (filter == null || filter.accept(source, target)))
+					causalPairs.addAll(source, target);
+
+				if (inclusionGraph.getChildren(source).length == 0 && inclusionGraph.getChildren(target).length == 0)
+					continue;
+
+				if (pValues[i] < relaxedLevel) {
+					addChildPairs(inclusionGraph, source, target, visited, next);
+				} else {
+					Node sourceNode = prunedGraph.addNode(inclusionGraph.getNode(source));
+					Node targetNode = prunedGraph.addNode(inclusionGraph.getNode(target));
+					prunedGraph.addEdge(new Edge(sourceNode, targetNode));
 				}
-			} else if (H < 0) {
-				// |tsY| > |tsX|
-				// Loop through all possible shift values
-				h: for (int h = maxH; h >= 0; h--) {
-					// Modify tsY to have the same length of tsx, by shifting h periods and dropping the rest.					
-					try {
-						TimeSeries tsyMod = tsy.createCopy(h, h + tsx.getItemCount() - 1);
-						//					System.out.println("h: " + h);
-						if (performShiftedGrangerTest(tsyMod, tsx))
-							return true;
-					} catch (CloneNotSupportedException e) {
-						System.out.println("Could not compare pair for h=" + h + ". Error");
-						e.printStackTrace();
-						continue h;
-					}
+			}
+			tested += frontier.size();
+			frontier = next;
+			// The pairs below the pruned pairs are skipped
+			setProgressValue(tested + inclusionGraph.getCandidatePairCount() - visited.size());
+		}
+
+		metrics.addPrunedPairs(inclusionGraph.getCandidatePairCount() - visited.size());
+		setPrunedGraph(prunedGraph);
+		return causalPairs;
+	}
+
+	/**
+	 * Tests the candidate pairs in descending order of priority (see
+	 * {@link CandidatePairQueue}) until all pairs are tested, the time or test
+	 * budget is exhausted or the search is cancelled. Pairs are tested in
+	 * batches of the chunk size per thread, in parallel when a pool is given;
+	 * the budgets and cancellation are checked between batches. When the
+	 * search stops early, the pairs that were not tested are recorded (see
+	 * {@link #getUntestedPairs()}).
+	 *
+	 * @return The causal pairs as consecutive (source, target) indices, in
+	 *         the order in which they were found.
+	 */
+	private IntArrayList searchAnytime(InclusionGraph inclusionGraph, IntIntPredicate filter, ForkJoinPool pool) {
+		long start = System.nanoTime();
+		long timeBudget = parameters.getTimeBudget() > 0 ? parameters.getTimeBudget() * 1000000L : Long.MAX_VALUE;
+		long testBudget = parameters.getTestBudget() > 0 ? parameters.getTestBudget() : Long.MAX_VALUE;
+		int batchSize = Math.max(1, parameters.getChunkSize()) * (pool != null ? pool.getParallelism() : 1);
+
+		CandidatePairQueue queue = new CandidatePairQueue(inclusionGraph);
+		LongHashSet tested = new LongHashSet();
+		IntArrayList causalPairs = new IntArrayList();
+		LongArrayList batch = new LongArrayList(batchSize);
+		long testedPairs = 0;
+		boolean complete = false;
+
+		startProgress("Testing candidate pairs by priority",
+				Math.min(inclusionGraph.getCandidatePairCount(), testBudget));
+		while (testedPairs < testBudget && System.nanoTime() - start < timeBudget && !isCancelled()) {
+			batch.clear();
+			while (batch.size() < Math.min(batchSize, testBudget - testedPairs)) {
+				long pair = queue.next();
+				if (pair < 0) {
+					complete = true;
+					break;
 				}
-			} else {
-				// |tsx| == |txy|
-				return performShiftedGrangerTest(tsY, tsX);
+				int source = (int) (pair >>> 32);
+				int target = (int) pair;
+				if (filter == null || filter.accept(source, target))
+					batch.add(pair);
+				else
+					// The results of the pairs that are not accepted are known
+					tested.add(pair);
 			}
 
-			// No causality
-			return false;
+			double[] pValues = new double[batch.size()];
+			PairTestTask task = new PairTestTask(inclusionGraph, null, batch, pValues, 0, batch.size());
+			if (pool != null)
+				pool.invoke(task);
+			else
+				task.compute();
+
+			for (int i = 0; i < batch.size(); i++) {
+				int source = (int) (batch.get(i) >>> 32);
+				int target = (int) batch.get(i);
+				tested.add(batch.get(i));
+				if (pValues[i] < SIGNIFICANCE_LEVEL)
+					causalPairs.addAll(source, target);
+			}
+			testedPairs += batch.size();
+			setProgressValue(testedPairs);
+
+			if (complete)
+				break;
+		}
+
+		// Also complete when the budget ran out exactly at the last pair
+		if (!complete && !queue.hasNext())
+			complete = true;
+		if (!complete) {
+			UntestedPairs untestedPairs = new UntestedPairs(inclusionGraph, tested);
+			metrics.addUntestedPairs(untestedPairs.size());
+			setUntestedPairs(untestedPairs);
+		}
+		return causalPairs;
+	}
+
+	/**
+	 * Returns the candidate pairs that a complete hierarchical search visited,
+	 * given the pairs it pruned: the search tested these pairs, and no
+	 * others. Since the search visits the same pairs whether or not they are
+	 * accepted by a filter, it is replayed from the start pairs by expanding
+	 * every visited pair that was not pruned.
+	 *
+	 * @param inclusionGraph
+	 *            The inclusion graph of the search.
+	 * @param prunedGraph
+	 *            The pruned graph of the search (see {@link #getPrunedGraph()}).
+	 * @return The visited pairs, encoded with
+	 *         {@link UntestedPairs#encode(int, int)}.
+	 */
+	public static LongHashSet getVisitedPairs(InclusionGraph inclusionGraph, Graph prunedGraph) {
+		ObjectIntHashMap<Node> indices = new ObjectIntHashMap<Node>(inclusionGraph.size());
+		for (int i = 0; i < inclusionGraph.size(); i++)
+			indices.put(inclusionGraph.getNode(i), i);
+		LongHashSet pruned = new LongHashSet();
+		for (Edge edge : prunedGraph.getEdges())
+			pruned.add(UntestedPairs.encode(indices.get(edge.getSource()), indices.get(edge.getTarget())));
+
+		LongHashSet visited = new LongHashSet();
+		LongArrayList frontier = new LongArrayList();
+		addStartPairs(inclusionGraph, visited, frontier);
+		while (!frontier.isEmpty()) {
+			LongArrayList next = new LongArrayList();
+			for (int i = 0; i < frontier.size(); i++)
+				if (!pruned.contains(frontier.get(i)))
+					addChildPairs(inclusionGraph, (int) (frontier.get(i) >>> 32), (int) frontier.get(i), visited,
+							next);
+			frontier = next;
+		}
+		return visited;
+	}
+
+	// The pairs of roots and the pairs of siblings, which have no pair of parents to screen them
+	private static void addStartPairs(InclusionGraph inclusionGraph, LongHashSet visited, LongArrayList pairs) {
+		addSiblingPairs(inclusionGraph, inclusionGraph.getRoots(), visited, pairs);
+		for (int i = 0; i < inclusionGraph.size(); i++)
+			addSiblingPairs(inclusionGraph, inclusionGraph.getChildren(i), visited, pairs);
+	}
+
+	// The pairs in which the source, the target or both are replaced by one of their children
+	private static void addChildPairs(InclusionGraph inclusionGraph, int source, int target, LongHashSet visited,
+			LongArrayList pairs) {
+		int[] sourceChildren = inclusionGraph.getChildren(source);
+		int[] targetChildren = inclusionGraph.getChildren(target);
+		for (int s = -1; s < sourceChildren.length; s++)
+			for (int t = -1; t < targetChildren.length; t++)
+				if (s >= 0 || t >= 0)
+					addPair(inclusionGraph, s < 0 ? source : sourceChildren[s], t < 0 ? target : targetChildren[t],
+							visited, pairs);
+	}
+
+	private static void addSiblingPairs(InclusionGraph inclusionGraph, int[] siblings, LongHashSet visited,
+			LongArrayList pairs) {
+		for (int source : siblings)
+			for (int target : siblings)
+				addPair(inclusionGraph, source, target, visited, pairs);
+	}
 
-		} catch (CloneNotSupportedException e) {
-			System.out.println("Could not compare pair. Error: ");
-			e.printStackTrace();
+	private static void addPair(InclusionGraph inclusionGraph, int source, int target, LongHashSet visited,
+			LongArrayList pairs) {
+		long pair = UntestedPairs.encode(source, target);
+		if (inclusionGraph.isCandidate(source, target) && visited.add(pair))
+			pairs.add(pair);
+	}
+
+	/**
+	 * Computes the p-values of the pairs [from, to) of a level of the
+	 * hierarchical search. Pairs that are not accepted by the filter are only
+	 * tested when the search may descend below them.
+	 */
+	private class PairTestTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 7379618824135503371L;
+
+		private final InclusionGraph inclusionGraph;
+		private final IntIntPredicate filter;
+		private final LongArrayList pairs;
+		private final double[] pValues;
+		private final int from;
+		private final int to;
+
+		public PairTestTask(InclusionGraph inclusionGraph, IntIntPredicate filter, LongArrayList pairs,
+				double[] pValues, int from, int to) {
+			this.inclusionGraph = inclusionGraph;
+			this.filter = filter;
+			this.pairs = pairs;
+			this.pValues = pValues;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > Math.max(1, parameters.getChunkSize())) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PairTestTask(inclusionGraph, filter, pairs, pValues, from, middle),
+						new PairTestTask(inclusionGraph, filter, pairs, pValues, middle, to));
+				return;
+			}
 
-			return false;
+			for (int i = from; i < to; i++) {
+				int source = (int) (pairs.get(i) >>> 32);
+				int target = (int) pairs.get(i);
+				if (filter != null && !filter.accept(source, target)
+						&& inclusionGraph.getChildren(source).length == 0
+						&& inclusionGraph.getChildren(target).length == 0)
+					pValues[i] = 1;
+				else
+					pValues[i] = performGrangerTest(inclusionGraph.getNode(source), inclusionGraph.getNode(target));
+			}
 		}
+
 	}
 
-	private boolean performShiftedGrangerTest(TimeSeries tsX, TimeSeries tsY) {
+	private double performGrangerTest(RegularTimeSeries tsX, RegularTimeSeries tsY) {
+		long Xs = tsX.getStart();
+		long Ye = tsY.getEnd();
+
 		/******************************************************************************************
 		 * 
-		 * PERFORM GRANGER TEST
+		 * TIMESERIES PRE-PROCESSING
 		 * 
-		 * Different lag values are tested. The max. lag is (|Y|-beta)) /
-		 * (2*beta+1). Beta is the factor of data points we should have more
-		 * than predictors.
+		 * We can only check Granger causality between time series X->Y when
+		 * Y doesn't end before X starts. Also, we cannot take the following
+		 * points into account: points of X that occur after Y has ended;
+		 * points of Y that occur before X has started.
+		 * 
+		 * Therefore, we restrict the series to index ranges in a
+		 * pre-processing step. If the restricted series do not satisfy the
+		 * minimum sample size requirements, then X->Y is considered not to be
+		 * causal (we cannot test).
 		 * 
 		 ******************************************************************************************/
 
-		int maxLAG = (tsX.getItemCount() - parameters.getBeta()) / (2 * parameters.getBeta() + 1);
+		if (Ye < Xs) {
+			metrics.addPairsRejectedByOverlap(1);
+			return 1;
+		}
 
-		// Loop through all possible lag values
-		for (int l = 1; l < maxLAG; l++) {
+		int xFrom = 0;
+		int xTo = tsX.size();
+		if (Ye < tsX.getEnd())
+			xTo = tsX.indexOf(Ye);
 
-			//			System.out.println("Granger-test " + tsx.getDescription() + " - " + tsy.getDescription() + " lag:" + l);
+		if (xTo - xFrom < parameters.getMinimumSampleSize()) {
+			metrics.addPairsRejectedBySampleSize(1);
+			return 1;
+		}
 
-			double[] x = getTimeSeriesDataAsDoubleArray(tsX);
-			double[] y = getTimeSeriesDataAsDoubleArray(tsY);
+		int yFrom = 0;
+		int yTo = tsY.size();
+		if (tsY.getStart() < Xs)
+			yFrom = tsY.indexOf(Xs) + 1;
 
-			try {
-				GrangerTestResult r = GrangerTest.granger(y, x, l);
-				//				grangerPValues.put(pair, r.getPValue());
+		if (yTo - yFrom < parameters.getMinimumSampleSize()) {
+			metrics.addPairsRejectedBySampleSize(1);
+			return 1;
+		}
 
-				if (r.getPValue() < 0.05d) {
-					//					System.out.println("CAUSALITY!");
-					return true;
-				}
+		/******************************************************************************************
+		 * 
+		 * RE-BASE TIME SERIES
+		 * 
+		 * H = max. shift. is defined as the number of time periods that X
+		 * is bigger than Y or Y is bigger than X.
+		 * 
+		 * We need two time series of the same size as input for the Granger
+		 * test. Therefore, we shift one of the time series with a certain h
+		 * value time units.
+		 * 
+		 * As soon as we find causality for any given value for h, we
+		 * return.
+		 * 
+		 ******************************************************************************************/
+
+		RegularTimeSeries windowX = tsX.window(xFrom, xTo);
+		RegularTimeSeries windowY = tsY.window(yFrom, yTo);
+
+		/******************************************************************************************
+		 * 
+		 * SCREENING
+		 * 
+		 * Optionally, pairs are screened before the (expensive) Granger tests.
+		 * Pairs that are too short to test any lag, or of which one of the
+		 * series is constant, can never be causal. Shifted pairs whose lagged
+		 * correlations are all too small are skipped.
+		 * 
+		 ******************************************************************************************/
 
-			} catch (SingularMatrixException ex) {
-				//				System.out.println("Could not invert matrix (singular), for pair: <" + tsX.getDescription() + ">-><"
-				//						+ tsY.getDescription() + ">, with lag: " + l);
+		if (screening != null) {
+			metrics.addScreenedPairs(1);
+			if (getMaxLag(Math.min(windowX.size(), windowY.size())) < 1
+					|| CorrelationScreening.isConstant(windowX.getBackingArray(), windowX.getOffset(), windowX.size())
+					|| CorrelationScreening.isConstant(windowY.getBackingArray(), windowY.getOffset(), windowY.size())) {
+				metrics.addPairsRejectedByScreening(1);
+				return 1;
 			}
 		}
 
+		int H = windowX.size() - windowY.size();
+		int maxH = Math.min(parameters.getMaxH(), Math.abs(H));
+		boolean screenedOut = screening != null;
+		double pValue = 1;
+
+		if (H > 0) {
+			// |tsX| > |tsY|
+			// Loop through all possible shift values
+			for (int h = maxH; h >= 0; h--) {
+				// Modify tsX to have the same length of tsY, by shifting h periods and dropping the rest.
+				if (!passesScreening(windowY, 0, windowX, h, windowY.size()))
+					continue;
+				screenedOut = false;
+				pValue = Math.min(pValue, performShiftedGrangerTest(windowY, 0, windowX, h, windowY.size()));
+				if (pValue < SIGNIFICANCE_LEVEL)
+					return pValue;
+			}
+		} else if (H < 0) {
+			// |tsY| > |tsX|
+			// Loop through all possible shift values
+			for (int h = maxH; h >= 0; h--) {
+				// Modify tsY to have the same length of tsX, by shifting h periods and dropping the rest.
+				if (!passesScreening(windowY, h, windowX, 0, windowX.size()))
+					continue;
+				screenedOut = false;
+				pValue = Math.min(pValue, performShiftedGrangerTest(windowY, h, windowX, 0, windowX.size()));
+				if (pValue < SIGNIFICANCE_LEVEL)
+					return pValue;
+			}
+		} else {
+			// |tsX| == |tsY|
+			if (passesScreening(windowY, 0, windowX, 0, windowX.size())) {
+				screenedOut = false;
+				pValue = performShiftedGrangerTest(windowY, 0, windowX, 0, windowX.size());
+			}
+		}
+
+		if (screenedOut)
+			metrics.addPairsRejectedByScreening(1);
+
+		// No causality
+		return pValue;
+	}
+
+	/**
+	 * Returns the largest lag that is tested for series of the specified
+	 * length. The max. lag is (|Y|-beta)) / (2*beta+1). Beta is the factor of
+	 * data points we should have more than predictors.
+	 */
+	private int getMaxLag(int length) {
+		return (length - parameters.getBeta()) / (2 * parameters.getBeta() + 1) - 1;
+	}
+
+	/**
+	 * Checks whether the shifted pair passes the correlation screening (see
+	 * {@link #performShiftedGrangerTest(RegularTimeSeries, int, RegularTimeSeries, int, int)}
+	 * for the arguments). Always passes when screening is disabled.
+	 */
+	private boolean passesScreening(RegularTimeSeries x, int xShift, RegularTimeSeries y, int yShift, int length) {
+		if (screening == null)
+			return true;
+		if (screening.passes(y.getBackingArray(), y.getOffset() + yShift, x.getBackingArray(),
+				x.getOffset() + xShift, length, getMaxLag(length)))
+			return true;
+		metrics.addTestsRejectedByScreening(1);
 		return false;
 	}
 
-	private static double[] getTimeSeriesDataAsDoubleArray(TimeSeries serie) {
-		double[] data = new double[serie.getItemCount()];
-		for (int i = 0; i < data.length; i++)
-			data[i] = serie.getDataItem(i).getValue().doubleValue();
-		return data;
+	/**
+	 * Tests the windows [xShift, xShift + length) of series x and [yShift,
+	 * yShift + length) of series y directly on their backing arrays, so
+	 * shifting allocates no copies. Returns the smallest p-value of the lags.
+	 */
+	private double performShiftedGrangerTest(RegularTimeSeries x, int xShift, RegularTimeSeries y, int yShift,
+			int length) {
+		/******************************************************************************************
+		 * 
+		 * PERFORM GRANGER TEST
+		 * 
+		 * Different lag values are tested. The max. lag is (|Y|-beta)) /
+		 * (2*beta+1). Beta is the factor of data points we should have more
+		 * than predictors.
+		 * 
+		 ******************************************************************************************/
+
+		// Test all possible lag values in one sweep; singular lags have no result
+		GrangerTestResult[] results;
+		if (x.isValid(xShift, xShift + length) && y.isValid(yShift, yShift + length))
+			results = GrangerTest.grangerLagSweep(y.getBackingArray(), y.getOffset() + yShift, x.getBackingArray(),
+					x.getOffset() + xShift, length, getMaxLag(length), restrictedFitCache);
+		else
+			// Series with missing values are tested on the complete observations
+			results = GrangerTest.grangerLagSweepComplete(y.getBackingArray(), y.getOffset() + yShift,
+					x.getBackingArray(), x.getOffset() + xShift, length, getMaxLag(length));
+		metrics.addGrangerTests(1);
+
+		int singular = 0;
+		double pValue = 1;
+		for (GrangerTestResult r : results) {
+			if (r == null)
+				singular++;
+			else if (r.getPValue() < pValue)
+				pValue = r.getPValue();
+		}
+
+		metrics.addTestedLags(results.length - singular);
+		metrics.addSingularLags(singular);
+		return pValue;
 	}
 }
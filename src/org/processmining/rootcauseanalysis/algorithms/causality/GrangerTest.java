@@ -18,7 +18,10 @@
  */
 package org.processmining.rootcauseanalysis.algorithms.causality;
 
+import java.util.Arrays;
+
 import org.apache.commons.math3.distribution.FDistribution;
+import org.apache.commons.math3.linear.SingularMatrixException;
 import org.apache.commons.math3.stat.StatUtils;
 import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
 import org.processmining.rootcauseanalysis.models.GrangerTestResult;
@@ -34,6 +37,9 @@ import org.processmining.rootcauseanalysis.models.GrangerTestResult;
  */
 public class GrangerTest {
 
+	// Relative pivot size below which a cross-product matrix is considered singular
+	private static final double SINGULARITY_THRESHOLD = 1e-12;
+
 	/**
 	 * Returns p-value for Granger causality test.
 	 *
@@ -44,26 +50,74 @@ public class GrangerTest {
 	 * @param L
 	 *            - lag, should be 1 or greater.
 	 * @return p-value of Granger causality
+	 * @throws SingularMatrixException
+	 *             when the regression of either model is singular.
 	 */
 	public static GrangerTestResult granger(double[] y, double[] x, int L) {
-		OLSMultipleLinearRegression h0 = new OLSMultipleLinearRegression();
+		return granger(y, 0, x, 0, y.length, L);
+	}
+
+	/**
+	 * Returns p-value for Granger causality test on windows of (possibly
+	 * larger) arrays, without copying the windows first.
+	 *
+	 * @param y
+	 *            - array holding the predictable variable
+	 * @param yOffset
+	 *            - index of the first value of the predictable variable
+	 * @param x
+	 *            - array holding the predictor
+	 * @param xOffset
+	 *            - index of the first value of the predictor
+	 * @param length
+	 *            - number of values in both windows
+	 * @param L
+	 *            - lag, should be 1 or greater.
+	 * @return p-value of Granger causality
+	 * @throws SingularMatrixException
+	 *             when the regression of either model is singular.
+	 */
+	public static GrangerTestResult granger(double[] y, int yOffset, double[] x, int xOffset, int length, int L) {
+		return granger(y, yOffset, x, xOffset, length, L, null);
+	}
+
+	/**
+	 * Variant of {@link #granger(double[], int, double[], int, int, int)} that
+	 * takes the restricted model (H0) from the specified cache, so it is only
+	 * fitted once per window of the predictable variable. The restricted model
+	 * is fitted as in the cache when there is none, so both give the same
+	 * result, and a singular restricted model throws in both cases.
+	 *
+	 * @param cache
+	 *            - cache of restricted fits, or null to fit H0 here
+	 * @return p-value of Granger causality
+	 * @throws SingularMatrixException
+	 *             when the regression of either model is singular.
+	 */
+	public static GrangerTestResult granger(double[] y, int yOffset, double[] x, int xOffset, int length, int L,
+			RestrictedFitCache cache) {
 		OLSMultipleLinearRegression h1 = new OLSMultipleLinearRegression();
 
-		double[][] laggedY = createLaggedSide(L, y);
+		// The lagged sides already contain the intercept column
+		h1.setNoIntercept(true);
+
+		double[][] laggedXY = createLaggedSide(L, length, new double[][] { x, y }, new int[] { xOffset, yOffset });
 
-		double[][] laggedXY = createLaggedSide(L, x, y);
+		int n = laggedXY.length;
 
-		int n = laggedY.length;
+		double[] strippedY = Arrays.copyOfRange(y, yOffset + L, yOffset + length);
 
-		h0.newSampleData(strip(L, y), laggedY);
-		h1.newSampleData(strip(L, y), laggedXY);
+		h1.newSampleData(strippedY, laggedXY);
 
-		double rs0[] = h0.estimateResiduals();
 		double rs1[] = h1.estimateResiduals();
 
-		double TSS1 = tss(strip(L, y));
+		double TSS1 = tss(strippedY);
 
-		double RSS0 = sqrSum(rs0);
+		// The restricted fit is the same with or without a cache, and marks a singular regression
+		RestrictedFit fit = cache != null ? cache.get(y, yOffset, length, L) : fitRestricted(y, yOffset, length, L);
+		double RSS0 = fit.getRSS(L);
+		if (Double.isNaN(RSS0))
+			throw new SingularMatrixException();
 		double RSS1 = sqrSum(rs1);
 
 		double ftest = ((RSS0 - RSS1) / L) / (RSS1 / (n - 2 * L - 1));
@@ -75,6 +129,352 @@ public class GrangerTest {
 
 	}
 
+	/**
+	 * Returns the Granger causality test results for all lags 1..L in one
+	 * pass. The cross-product matrix of the largest lag is computed once and
+	 * extended row by row for the smaller lags (which use more observations),
+	 * so each lag only costs a Cholesky solve of its own (small) submatrix
+	 * instead of building and decomposing a new design matrix. The results
+	 * equal those of {@link #granger(double[], double[], int)} for each lag.
+	 *
+	 * @param y
+	 *            - predictable variable
+	 * @param x
+	 *            - predictor
+	 * @param L
+	 *            - largest lag to test
+	 * @return the results, where index l - 1 holds the result for lag l, or
+	 *         null when the regression for that lag is singular.
+	 */
+	public static GrangerTestResult[] grangerLagSweep(double[] y, double[] x, int L) {
+		return grangerLagSweep(y, 0, x, 0, y.length, L);
+	}
+
+	/**
+	 * Variant of {@link #grangerLagSweep(double[], double[], int)} on windows
+	 * of (possibly larger) arrays, without copying the windows first.
+	 *
+	 * @param y
+	 *            - array holding the predictable variable
+	 * @param yOffset
+	 *            - index of the first value of the predictable variable
+	 * @param x
+	 *            - array holding the predictor
+	 * @param xOffset
+	 *            - index of the first value of the predictor
+	 * @param length
+	 *            - number of values in both windows
+	 * @param L
+	 *            - largest lag to test
+	 * @return the results, where index l - 1 holds the result for lag l, or
+	 *         null when the regression for that lag is singular.
+	 */
+	public static GrangerTestResult[] grangerLagSweep(double[] y, int yOffset, double[] x, int xOffset, int length,
+			int L) {
+		return grangerLagSweep(y, yOffset, x, xOffset, length, L, null);
+	}
+
+	/**
+	 * Variant of
+	 * {@link #grangerLagSweep(double[], int, double[], int, int, int)} that
+	 * takes the restricted models (H0) from the specified cache, so they are
+	 * only fitted once per window of the predictable variable. Only the
+	 * cross-products involving the predictor are then computed per call.
+	 *
+	 * @param cache
+	 *            - cache of restricted fits, or null to fit H0 here
+	 * @return the results, where index l - 1 holds the result for lag l, or
+	 *         null when the regression for that lag is singular.
+	 */
+	public static GrangerTestResult[] grangerLagSweep(double[] y, int yOffset, double[] x, int xOffset, int length,
+			int L, RestrictedFitCache cache) {
+		GrangerTestResult[] results = new GrangerTestResult[Math.max(L, 0)];
+		int N = length;
+		if (L < 1 || N - L < 1)
+			return results;
+
+		RestrictedFit fit = cache != null ? cache.get(y, yOffset, length, L) : fitRestricted(y, yOffset, length, L);
+
+		// Center the series; this does not change the fits (the intercept absorbs it) but improves conditioning
+		double avgY = fit.getMean();
+		double avgX = StatUtils.mean(x, xOffset, length);
+
+		// Columns: intercept, y lags 1..L, x lags 1..L, target y
+		int p = 2 * L + 2;
+		int target = p - 1;
+		double[][] gram = new double[p][p];
+		double[] row = new double[p];
+
+		// Rows of the largest lag; the block of the restricted columns comes from the fit
+		double[][] restricted = fit.getGram();
+		for (int i = 0; i < restricted.length; i++)
+			for (int j = i; j < restricted.length; j++)
+				gram[i == L + 1 ? target : i][j == L + 1 ? target : j] = restricted[i][j];
+		for (int t = L; t < N; t++)
+			addPredictorRow(gram, fillRow(row, y, yOffset, x, xOffset, avgY, avgX, t, L), L);
+
+		for (int l = L; l >= 1; l--) {
+			// Lag l uses the observations l..N-1; lag L's are already accumulated
+			if (l < L)
+				addRow(gram, fillRow(row, y, yOffset, x, xOffset, avgY, avgX, l, L));
+
+			int n = N - l;
+			if (n - 2 * l - 1 < 1)
+				continue;
+
+			int[] columns1 = new int[2 * l + 1];
+			for (int c = 0; c <= l; c++)
+				columns1[c] = c;
+			for (int c = 1; c <= l; c++)
+				columns1[l + c] = L + c;
+
+			double RSS0 = fit.getRSS(l);
+			double RSS1 = rss(gram, columns1, target);
+			if (Double.isNaN(RSS0) || Double.isNaN(RSS1))
+				continue;
+
+			double TSS1 = fit.getTSS(l);
+
+			double ftest = ((RSS0 - RSS1) / l) / (RSS1 / (n - 2 * l - 1));
+
+			FDistribution fDist = new FDistribution(l, n - 2 * l - 1);
+
+			double pValue = 1.0 - fDist.cumulativeProbability(ftest);
+			results[l - 1] = new GrangerTestResult(ftest, (1 - RSS1 / TSS1), pValue);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Variant of
+	 * {@link #grangerLagSweep(double[], int, double[], int, int, int)} for
+	 * windows with missing (NaN) values. For each lag, both models are fitted
+	 * on the observations of which the target and all lagged values are known
+	 * (complete cases), so the F-test still compares nested models on the same
+	 * observations. Since the complete cases differ per lag, the cross-product
+	 * matrix is built per lag, and the restricted models are not cached.
+	 *
+	 * @return the results, where index l - 1 holds the result for lag l, or
+	 *         null when the regression for that lag is singular or there are
+	 *         too few complete observations.
+	 */
+	public static GrangerTestResult[] grangerLagSweepComplete(double[] y, int yOffset, double[] x, int xOffset,
+			int length, int L) {
+		GrangerTestResult[] results = new GrangerTestResult[Math.max(L, 0)];
+		int N = length;
+		if (L < 1 || N - L < 1)
+			return results;
+
+		int[] knownY = knownRuns(y, yOffset, N);
+		int[] knownX = knownRuns(x, xOffset, N);
+		double avgY = knownMean(y, yOffset, N);
+		double avgX = knownMean(x, xOffset, N);
+
+		for (int l = 1; l <= L; l++) {
+			// Columns: intercept, y lags 1..l, x lags 1..l, target y
+			int p = 2 * l + 2;
+			int target = p - 1;
+			double[][] gram = new double[p][p];
+			double[] row = new double[p];
+
+			int n = 0;
+			for (int t = l; t < N; t++) {
+				// y[t - l..t] and x[t - l..t - 1] must be known
+				if (knownY[t] <= l || knownX[t - 1] < l)
+					continue;
+				addRow(gram, fillRow(row, y, yOffset, x, xOffset, avgY, avgX, t, l));
+				n++;
+			}
+			if (n - 2 * l - 1 < 1)
+				continue;
+
+			int[] columns0 = new int[l + 1];
+			for (int c = 0; c <= l; c++)
+				columns0[c] = c;
+			int[] columns1 = new int[2 * l + 1];
+			for (int c = 0; c <= 2 * l; c++)
+				columns1[c] = c;
+
+			double RSS0 = rss(gram, columns0, target);
+			double RSS1 = rss(gram, columns1, target);
+			if (Double.isNaN(RSS0) || Double.isNaN(RSS1))
+				continue;
+
+			double TSS1 = gram[target][target] - gram[0][target] * gram[0][target] / gram[0][0];
+
+			double ftest = ((RSS0 - RSS1) / l) / (RSS1 / (n - 2 * l - 1));
+
+			FDistribution fDist = new FDistribution(l, n - 2 * l - 1);
+
+			double pValue = 1.0 - fDist.cumulativeProbability(ftest);
+			results[l - 1] = new GrangerTestResult(ftest, (1 - RSS1 / TSS1), pValue);
+		}
+
+		return results;
+	}
+
+	// The number of consecutive known (non-NaN) values ending at each index of the window
+	private static int[] knownRuns(double[] values, int offset, int length) {
+		int[] runs = new int[length];
+		for (int i = 0; i < length; i++)
+			runs[i] = Double.isNaN(values[offset + i]) ? 0 : (i == 0 ? 1 : runs[i - 1] + 1);
+		return runs;
+	}
+
+	private static double knownMean(double[] values, int offset, int length) {
+		double sum = 0;
+		int n = 0;
+		for (int i = offset; i < offset + length; i++) {
+			if (!Double.isNaN(values[i])) {
+				sum += values[i];
+				n++;
+			}
+		}
+		return n == 0 ? 0 : sum / n;
+	}
+
+	/**
+	 * Fits the restricted models (H0) of the lag sweep for all lags 1..L: the
+	 * predictable variable regressed on its own lags.
+	 *
+	 * @param y
+	 *            - array holding the predictable variable
+	 * @param yOffset
+	 *            - index of the first value of the predictable variable
+	 * @param length
+	 *            - number of values in the window
+	 * @param L
+	 *            - largest lag
+	 * @return the restricted fit.
+	 */
+	public static RestrictedFit fitRestricted(double[] y, int yOffset, int length, int L) {
+		int N = length;
+		double avgY = StatUtils.mean(y, yOffset, length);
+
+		// Columns: intercept, y lags 1..L, target y
+		int k = L + 2;
+		int target = k - 1;
+		double[][] gram = new double[k][k];
+		double[] row = new double[k];
+
+		for (int t = L; t < N; t++)
+			addRow(gram, fillRestrictedRow(row, y, yOffset, avgY, t, L));
+
+		double[][] base = new double[k][];
+		for (int i = 0; i < k; i++)
+			base[i] = gram[i].clone();
+
+		double[] rss = new double[L];
+		double[] tss = new double[L];
+		for (int l = L; l >= 1; l--) {
+			if (l < L)
+				addRow(gram, fillRestrictedRow(row, y, yOffset, avgY, l, L));
+
+			int[] columns0 = new int[l + 1];
+			for (int c = 0; c <= l; c++)
+				columns0[c] = c;
+
+			rss[l - 1] = rss(gram, columns0, target);
+			tss[l - 1] = gram[target][target] - gram[0][target] * gram[0][target] / gram[0][0];
+		}
+
+		return new RestrictedFit(L, avgY, base, rss, tss);
+	}
+
+	private static double[] fillRestrictedRow(double[] row, double[] y, int yOffset, double avgY, int t, int L) {
+		row[0] = 1;
+		for (int l = 1; l <= L; l++)
+			row[l] = l <= t ? y[yOffset + t - l] - avgY : 0;
+		row[L + 1] = y[yOffset + t] - avgY;
+		return row;
+	}
+
+	private static double[] fillRow(double[] row, double[] y, int yOffset, double[] x, int xOffset, double avgY,
+			double avgX, int t, int L) {
+		row[0] = 1;
+		for (int l = 1; l <= L; l++) {
+			// Lags beyond t only occur in rows that are used for smaller lags, where these columns are not used
+			row[l] = l <= t ? y[yOffset + t - l] - avgY : 0;
+			row[L + l] = l <= t ? x[xOffset + t - l] - avgX : 0;
+		}
+		row[2 * L + 1] = y[yOffset + t] - avgY;
+		return row;
+	}
+
+	// Adds the outer product of the row to the (upper triangle of the) cross-product matrix.
+	private static void addRow(double[][] gram, double[] row) {
+		for (int i = 0; i < row.length; i++) {
+			double ri = row[i];
+			if (ri == 0)
+				continue;
+			double[] gi = gram[i];
+			for (int j = i; j < row.length; j++)
+				gi[j] += ri * row[j];
+		}
+	}
+
+	// Adds the entries of the outer product of the row that involve the predictor columns L+1..2L.
+	private static void addPredictorRow(double[][] gram, double[] row, int L) {
+		for (int i = 0; i <= L; i++) {
+			double ri = row[i];
+			if (ri == 0)
+				continue;
+			double[] gi = gram[i];
+			for (int j = L + 1; j <= 2 * L; j++)
+				gi[j] += ri * row[j];
+		}
+		for (int i = L + 1; i <= 2 * L; i++) {
+			double ri = row[i];
+			if (ri == 0)
+				continue;
+			double[] gi = gram[i];
+			for (int j = i; j < row.length; j++)
+				gi[j] += ri * row[j];
+		}
+	}
+
+	private static double entry(double[][] gram, int i, int j) {
+		return i <= j ? gram[i][j] : gram[j][i];
+	}
+
+	/**
+	 * Returns the residual sum of squares of regressing the target column on
+	 * the specified columns, using the Cholesky factor of their cross-product
+	 * submatrix. Returns NaN when the submatrix is (numerically) singular.
+	 */
+	static double rss(double[][] gram, int[] columns, int target) {
+		int k = columns.length;
+		double[][] chol = new double[k][k];
+		double[] z = new double[k];
+		double explained = 0;
+
+		for (int i = 0; i < k; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = entry(gram, columns[i], columns[j]);
+				for (int m = 0; m < j; m++)
+					sum -= chol[i][m] * chol[j][m];
+				if (i == j) {
+					double diagonal = entry(gram, columns[i], columns[i]);
+					if (sum <= SINGULARITY_THRESHOLD * diagonal || sum <= 0)
+						return Double.NaN;
+					chol[i][i] = Math.sqrt(sum);
+				} else {
+					chol[i][j] = sum / chol[j][j];
+				}
+			}
+
+			// Forward substitution for the projection of the target
+			double sum = entry(gram, columns[i], target);
+			for (int m = 0; m < i; m++)
+				sum -= chol[i][m] * z[m];
+			z[i] = sum / chol[i][i];
+			explained += z[i] * z[i];
+		}
+
+		return Math.max(gram[target][target] - explained, 0);
+	}
+
 	private static double tss(double[] y) {
 		double res = 0;
 		double avg = StatUtils.mean(y);
@@ -84,14 +484,15 @@ public class GrangerTest {
 		return res;
 	}
 
-	private static double[][] createLaggedSide(int L, double[]... a) {
-		int n = a[0].length - L;
+	private static double[][] createLaggedSide(int L, int length, double[][] a, int[] offsets) {
+		int n = length - L;
 		double[][] res = new double[n][L * a.length + 1];
 		for (int i = 0; i < a.length; i++) {
 			double[] ai = a[i];
+			int offset = offsets[i];
 			for (int l = 0; l < L; l++) {
 				for (int j = 0; j < n; j++) {
-					res[j][i * L + l] = ai[l + j];
+					res[j][i * L + l] = ai[offset + l + j];
 				}
 			}
 		}
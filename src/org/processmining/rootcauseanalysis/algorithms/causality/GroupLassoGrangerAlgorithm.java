@@ -0,0 +1,584 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.eclipse.collections.api.block.predicate.primitive.IntIntPredicate;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisMetrics;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.parameters.GrangerCausalityParameters;
+
+/**
+ * Granger causality with one sparse regression per target instead of one test
+ * per candidate pair. The target is regressed on its own lags and on the lags
+ * of all its candidate causes at once, with a group lasso penalty on the lag
+ * block of every cause. The regression is fitted by block coordinate descent
+ * along a path of decreasing penalties (each fit starts from the previous
+ * one), and the causes with nonzero coefficients at the penalty with the
+ * lowest BIC get an edge.
+ *
+ * Series are aligned on their buckets. Lags of a cause that fall outside the
+ * cause or are missing are set to the mean of the cause, so they do not
+ * contribute to the fit; rows in which the target or its own lags are missing
+ * are left out. The lag blocks are orthonormalized before fitting, which does
+ * not change which blocks are zero and makes every block update exact.
+ *
+ * Targets are fitted independently, in parallel when configured. Fitting N
+ * targets replaces the N^2 pairwise tests of {@link GrangerCausalityAlgorithm}
+ * and accounts for the other causes when a cause is selected.
+ */
+public class GroupLassoGrangerAlgorithm extends CausalityAlgorithm {
+
+	public static final String DESCRIPTION;
+
+	// Relative pivot size below which a lag block is considered singular
+	private static final double SINGULARITY_THRESHOLD = 1e-10;
+
+	// The maximum number of coordinate descent passes per penalty
+	private static final int MAX_PASSES = 1000;
+
+	static {
+		DESCRIPTION = "Group lasso Granger causality";
+	}
+
+	// FIELDS
+
+	private GrangerCausalityParameters parameters;
+	private RootCauseAnalysisMetrics metrics;
+
+	// CONSTRUCTORS
+
+	public GroupLassoGrangerAlgorithm() {
+		super(DESCRIPTION);
+		setParameters(new GrangerCausalityParameters());
+		setMetrics(new RootCauseAnalysisMetrics());
+	}
+
+	// GETTERS AND SETTERS
+
+	public GrangerCausalityParameters getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(GrangerCausalityParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	/**
+	 * The metrics to which the pair and model counters are added.
+	 */
+	public RootCauseAnalysisMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(RootCauseAnalysisMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	// METHODS
+
+	@Override
+	public Graph computeCausalGraph(Graph inclusionGraph) {
+		Graph causalityGraph = new Graph();
+
+		// Add all nodes from the inclusion graph
+		for (Node node : inclusionGraph.getNodes())
+			causalityGraph.addNode(node);
+
+		// The candidate causes of every target
+		UnifiedMap<Node, List<Node>> causes = new UnifiedMap<Node, List<Node>>();
+		for (Edge edge : inclusionGraph.getEdges()) {
+			List<Node> sources = causes.get(edge.getTarget());
+			if (sources == null) {
+				sources = new ArrayList<Node>();
+				causes.put(edge.getTarget(), sources);
+			}
+			sources.add(edge.getSource());
+		}
+
+		// Add edge between causally related nodes
+		for (Node target : inclusionGraph.getNodes()) {
+			List<Node> sources = causes.get(target);
+			if (sources == null)
+				continue;
+			RegularTimeSeries[] series = new RegularTimeSeries[sources.size()];
+			for (int i = 0; i < series.length; i++)
+				series[i] = getSeries(sources.get(i));
+			boolean[] selected = fit(getSeries(target), series);
+			for (int i = 0; i < selected.length; i++)
+				if (selected[i])
+					causalityGraph.addEdge(new Edge(sources.get(i), target));
+		}
+
+		metrics.addCausalPairs(causalityGraph.getEdges().size());
+
+		removeUnconnectedNodes(causalityGraph, inclusionGraph.getNodes());
+
+		return causalityGraph;
+	}
+
+	@Override
+	public Graph computeCausalGraph(InclusionGraph inclusionGraph) {
+		return computeCausalGraph(inclusionGraph, null);
+	}
+
+	/**
+	 * Computes the causality graph over the candidate pairs of the inclusion
+	 * graph. The filter selects the targets to fit (see
+	 * {@link #isFitted(InclusionGraph, IntIntPredicate, int)}). Every fit
+	 * includes all candidate causes of the target, and every selected cause
+	 * gets an edge, whether the filter accepts its pair or not: the other
+	 * causes change the fit. The edges into the targets that are not fitted
+	 * are left to the caller. A cancelled search stops fitting targets, so its
+	 * result is incomplete.
+	 *
+	 * @param inclusionGraph
+	 *            The inclusion graph.
+	 * @param filter
+	 *            Accepts the (source, target) node indices of the pairs to
+	 *            test, or null to test all candidate pairs.
+	 * @return The causality graph.
+	 */
+	@Override
+	public Graph computeCausalGraph(InclusionGraph inclusionGraph, IntIntPredicate filter) {
+		Graph causalityGraph = new Graph();
+
+		// Add all nodes from the inclusion graph
+		for (Node node : inclusionGraph.getNodes())
+			causalityGraph.addNode(node);
+
+		// Fit all targets, in parallel when configured
+		IntArrayList causalPairs;
+		startProgress("Fitting a model per target", inclusionGraph.size());
+		if (parameters.getNumberOfThreads() > 1) {
+			ForkJoinPool pool = new ForkJoinPool(parameters.getNumberOfThreads(),
+					RootCauseAnalysisMetrics.getWorkerThreadFactory(), null, false);
+			try {
+				causalPairs = pool.invoke(new TargetFitTask(inclusionGraph, filter, 0, inclusionGraph.size()));
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			causalPairs = new TargetFitTask(inclusionGraph, filter, 0, inclusionGraph.size()).fit();
+		}
+
+		// Add edge between causally related nodes, in target order
+		for (int i = 0; i < causalPairs.size(); i += 2)
+			causalityGraph.addEdge(new Edge(inclusionGraph.getNode(causalPairs.get(i)),
+					inclusionGraph.getNode(causalPairs.get(i + 1))));
+		metrics.addCausalPairs(causalPairs.size() / 2);
+
+		removeUnconnectedNodes(causalityGraph, inclusionGraph.getNodes());
+
+		return causalityGraph;
+	}
+
+	/**
+	 * Returns whether a search with the filter fits the target: when the
+	 * filter accepts one of the candidate pairs of the target, or when there
+	 * is no filter and the target has a candidate pair.
+	 *
+	 * @param inclusionGraph
+	 *            The inclusion graph.
+	 * @param filter
+	 *            Accepts the (source, target) node indices of the pairs to
+	 *            test, or null to test all candidate pairs.
+	 * @param target
+	 *            The node index of the target.
+	 * @return Whether the target is fitted.
+	 */
+	public static boolean isFitted(InclusionGraph inclusionGraph, IntIntPredicate filter, int target) {
+		for (int source = 0; source < inclusionGraph.size(); source++)
+			if (inclusionGraph.isCandidate(source, target) && (filter == null || filter.accept(source, target)))
+				return true;
+		return false;
+	}
+
+	private static RegularTimeSeries getSeries(Node node) {
+		return (RegularTimeSeries) node.getProperty(Properties.KEY_REGULARTIMESERIES);
+	}
+
+	private static void removeUnconnectedNodes(Graph causalityGraph, Collection<Node> nodes) {
+		for (Node node : nodes)
+			if (causalityGraph.getDegree(node) == 0)
+				causalityGraph.removeNode(node);
+	}
+
+	/**
+	 * Fits the targets whose index lies in [fromTarget, toTarget). Ranges
+	 * larger than the chunk size are split in two and forked, so idle workers
+	 * can steal them. The result holds the causal pairs as consecutive
+	 * (source, target) indices, ordered by target as in a sequential run.
+	 */
+	private class TargetFitTask extends RecursiveTask<IntArrayList> {
+
+		private static final long serialVersionUID = 4650207315364874527L;
+
+		private final InclusionGraph inclusionGraph;
+		private final IntIntPredicate filter;
+		private final int fromTarget;
+		private final int toTarget;
+
+		public TargetFitTask(InclusionGraph inclusionGraph, IntIntPredicate filter, int fromTarget, int toTarget) {
+			this.inclusionGraph = inclusionGraph;
+			this.filter = filter;
+			this.fromTarget = fromTarget;
+			this.toTarget = toTarget;
+		}
+
+		@Override
+		protected IntArrayList compute() {
+			if (toTarget - fromTarget <= Math.max(1, parameters.getChunkSize()))
+				return fit();
+
+			int middle = (fromTarget + toTarget) >>> 1;
+			TargetFitTask left = new TargetFitTask(inclusionGraph, filter, fromTarget, middle);
+			TargetFitTask right = new TargetFitTask(inclusionGraph, filter, middle, toTarget);
+			left.fork();
+			IntArrayList rightPairs = right.compute();
+			IntArrayList pairs = left.join();
+			pairs.addAll(rightPairs);
+			return pairs;
+		}
+
+		public IntArrayList fit() {
+			IntArrayList pairs = new IntArrayList();
+			IntArrayList sources = new IntArrayList();
+			for (int target = fromTarget; target < toTarget && !isCancelled(); target++) {
+				incrementProgress();
+				if (!isFitted(inclusionGraph, filter, target))
+					continue;
+				sources.clear();
+				for (int source = 0; source < inclusionGraph.size(); source++)
+					if (inclusionGraph.isCandidate(source, target))
+						sources.add(source);
+
+				RegularTimeSeries[] series = new RegularTimeSeries[sources.size()];
+				for (int i = 0; i < series.length; i++)
+					series[i] = getSeries(inclusionGraph.getNode(sources.get(i)));
+				boolean[] selected = GroupLassoGrangerAlgorithm.this.fit(getSeries(inclusionGraph.getNode(target)),
+						series);
+				for (int i = 0; i < selected.length; i++)
+					if (selected[i])
+						pairs.addAll(sources.get(i), target);
+			}
+			return pairs;
+		}
+
+	}
+
+	/**
+	 * Returns the largest lag that is tested for series of the specified
+	 * length, as in {@link GrangerCausalityAlgorithm}.
+	 */
+	private int getMaxLag(int length) {
+		return (length - parameters.getBeta()) / (2 * parameters.getBeta() + 1) - 1;
+	}
+
+	/**
+	 * Fits the sparse regression of the target on the candidate causes.
+	 *
+	 * @param target
+	 *            The series of the target, or null if it could not be
+	 *            resampled.
+	 * @param causes
+	 *            The series of the candidate causes (which may be null).
+	 * @return Whether each cause was selected.
+	 */
+	private boolean[] fit(RegularTimeSeries target, RegularTimeSeries[] causes) {
+		boolean[] selected = new boolean[causes.length];
+		metrics.addTestedPairs(causes.length);
+
+		/******************************************************************************************
+		 *
+		 * DESIGN
+		 *
+		 * The rows are the buckets of the target whose value and own lags are
+		 * known. Causes that do not overlap the target, or that have too few
+		 * known values in the rows, cannot be tested and are left out of the
+		 * fit, like pairs that do not satisfy the minimum sample size in the
+		 * pairwise tests.
+		 *
+		 ******************************************************************************************/
+
+		if (target == null) {
+			metrics.addPairsRejectedByOverlap(causes.length);
+			return selected;
+		}
+
+		int L = Math.min(parameters.getLassoLag(), getMaxLag(target.size()));
+		IntArrayList rows = new IntArrayList();
+		for (int t = Math.max(L, 0); t < target.size(); t++)
+			if (target.isValid(t - L, t + 1))
+				rows.add(t);
+		int n = rows.size();
+		if (L < 1 || n < parameters.getMinimumSampleSize()) {
+			metrics.addPairsRejectedBySampleSize(causes.length);
+			return selected;
+		}
+
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++)
+			y[i] = target.getValue(rows.get(i));
+		if (!standardize(y))
+			// A constant target has nothing to explain
+			return selected;
+
+		// The own lags of the target are not penalized
+		double[] own = createBlock(target, target.getStart(), rows, L);
+
+		List<double[]> blocks = new ArrayList<double[]>();
+		IntArrayList blockCauses = new IntArrayList();
+		for (int c = 0; c < causes.length; c++) {
+			RegularTimeSeries cause = causes[c];
+			if (cause == null || cause.getStart() > target.getEnd()) {
+				metrics.addPairsRejectedByOverlap(1);
+				continue;
+			}
+			if (countKnown(cause, target.getStart(), rows) < parameters.getMinimumSampleSize()) {
+				metrics.addPairsRejectedBySampleSize(1);
+				continue;
+			}
+			double[] block = createBlock(cause, target.getStart(), rows, L);
+			// Singular blocks (e.g. constant causes) cannot explain anything
+			if (orthonormalize(block, n, L)) {
+				blocks.add(block);
+				blockCauses.add(c);
+			}
+		}
+		boolean hasOwn = orthonormalize(own, n, L);
+		metrics.addFittedModels(1);
+		if (blocks.isEmpty())
+			return selected;
+
+		/******************************************************************************************
+		 *
+		 * REGULARIZATION PATH
+		 *
+		 * Block coordinate descent on the residuals. With orthonormal blocks,
+		 * the update of a block is its soft-thresholded correlation with the
+		 * partial residual. The path starts at the smallest penalty at which
+		 * all causes are excluded; every penalty starts from the coefficients
+		 * of the previous one.
+		 *
+		 ******************************************************************************************/
+
+		int k = blocks.size();
+		double[] residual = y.clone();
+		double[] ownBeta = new double[L];
+		double[][] beta = new double[k][L];
+		double[] z = new double[L];
+		double weight = Math.sqrt(L);
+
+		if (hasOwn)
+			updateBlock(own, ownBeta, residual, z, n, L, 0);
+
+		double lambdaMax = 0;
+		for (int g = 0; g < k; g++)
+			lambdaMax = Math.max(lambdaMax, norm(correlate(blocks.get(g), beta[g], residual, z, n, L)) / weight);
+		if (lambdaMax <= 0)
+			return selected;
+
+		int pathLength = Math.max(parameters.getLassoPathLength(), 1);
+		double bestCriterion = Double.POSITIVE_INFINITY;
+		boolean[] active = new boolean[k];
+		int passes = 0;
+		for (int step = 0; step < pathLength; step++) {
+			double lambda = pathLength == 1 ? lambdaMax * parameters.getLassoLambdaRatio()
+					: lambdaMax * Math.pow(parameters.getLassoLambdaRatio(), step / (double) (pathLength - 1));
+
+			for (int pass = 0; pass < MAX_PASSES; pass++) {
+				passes++;
+				double change = hasOwn ? updateBlock(own, ownBeta, residual, z, n, L, 0) : 0;
+				for (int g = 0; g < k; g++)
+					change = Math.max(change, updateBlock(blocks.get(g), beta[g], residual, z, n, L, lambda * weight));
+				if (change < parameters.getLassoTolerance())
+					break;
+			}
+
+			// Select the penalty with the lowest BIC
+			int nonzero = 0;
+			for (int g = 0; g < k; g++)
+				active[g] = norm(beta[g]) > 0;
+			for (int g = 0; g < k; g++)
+				if (active[g])
+					nonzero++;
+			int df = (nonzero + (hasOwn ? 1 : 0)) * L;
+			if (df >= n)
+				break;
+			double rss = Math.max(dot(residual, residual, n), Double.MIN_NORMAL);
+			double criterion = n * Math.log(rss / n) + df * Math.log(n);
+			if (criterion < bestCriterion) {
+				bestCriterion = criterion;
+				for (int g = 0; g < k; g++)
+					selected[blockCauses.get(g)] = active[g];
+			}
+		}
+		metrics.addLassoPasses(passes);
+
+		return selected;
+	}
+
+	/**
+	 * Updates the coefficients of a block to their minimizer given the other
+	 * blocks, and the residuals accordingly.
+	 *
+	 * @return The norm of the change of the coefficients.
+	 */
+	private static double updateBlock(double[] block, double[] beta, double[] residual, double[] z, int n, int L,
+			double penalty) {
+		correlate(block, beta, residual, z, n, L);
+		double norm = norm(z);
+		double shrinkage = norm > penalty ? 1 - penalty / norm : 0;
+
+		double change = 0;
+		for (int l = 0; l < L; l++) {
+			double delta = shrinkage * z[l] - beta[l];
+			if (delta == 0)
+				continue;
+			change += delta * delta;
+			beta[l] += delta;
+			for (int i = 0, j = l * n; i < n; i++, j++)
+				residual[i] -= delta * block[j];
+		}
+		return Math.sqrt(change);
+	}
+
+	// The correlation of the (orthonormal) block with the partial residual that excludes the block
+	private static double[] correlate(double[] block, double[] beta, double[] residual, double[] z, int n, int L) {
+		for (int l = 0; l < L; l++)
+			z[l] = dot(block, l * n, residual, n) / n + beta[l];
+		return z;
+	}
+
+	/**
+	 * Creates the column-major n x L block of the lags 1..L of a series in the
+	 * rows, centered on the mean of the known values. Unknown lags are 0.
+	 *
+	 * @param series
+	 *            The lagged series.
+	 * @param start
+	 *            The bucket of row index 0.
+	 * @param rows
+	 *            The row indices, relative to the start bucket.
+	 * @param L
+	 *            The number of lags.
+	 */
+	private static double[] createBlock(RegularTimeSeries series, long start, IntArrayList rows, int L) {
+		int n = rows.size();
+		double[] block = new double[n * L];
+		for (int l = 1; l <= L; l++) {
+			int column = (l - 1) * n;
+			double sum = 0;
+			int known = 0;
+			for (int i = 0; i < n; i++) {
+				int index = series.indexOf(start + rows.get(i) - l);
+				if (index >= 0 && index < series.size() && series.isValid(index)) {
+					block[column + i] = series.getValue(index);
+					sum += block[column + i];
+					known++;
+				} else {
+					block[column + i] = Double.NaN;
+				}
+			}
+			double mean = known == 0 ? 0 : sum / known;
+			for (int i = 0; i < n; i++)
+				block[column + i] = Double.isNaN(block[column + i]) ? 0 : block[column + i] - mean;
+		}
+		return block;
+	}
+
+	// The number of rows in which the first lag of the series is known
+	private static int countKnown(RegularTimeSeries series, long start, IntArrayList rows) {
+		int known = 0;
+		for (int i = 0; i < rows.size(); i++) {
+			int index = series.indexOf(start + rows.get(i) - 1);
+			if (index >= 0 && index < series.size() && series.isValid(index))
+				known++;
+		}
+		return known;
+	}
+
+	/**
+	 * Replaces the columns of the block X by Q = X R^-1, where R'R = X'X/n is
+	 * the Cholesky decomposition, so Q'Q/n = I. Returns false (leaving the
+	 * block unusable) when X'X is (numerically) singular.
+	 */
+	private static boolean orthonormalize(double[] block, int n, int L) {
+		double[][] chol = new double[L][L];
+		for (int i = 0; i < L; i++) {
+			for (int j = 0; j <= i; j++) {
+				double gram = dot(block, i * n, block, j * n, n) / n;
+				double sum = gram;
+				for (int m = 0; m < j; m++)
+					sum -= chol[i][m] * chol[j][m];
+				if (i == j) {
+					if (sum <= SINGULARITY_THRESHOLD * gram || sum <= 0)
+						return false;
+					chol[i][i] = Math.sqrt(sum);
+				} else {
+					chol[i][j] = sum / chol[j][j];
+				}
+			}
+		}
+
+		// Forward substitution in every row
+		for (int r = 0; r < n; r++) {
+			for (int i = 0; i < L; i++) {
+				double sum = block[i * n + r];
+				for (int m = 0; m < i; m++)
+					sum -= chol[i][m] * block[m * n + r];
+				block[i * n + r] = sum / chol[i][i];
+			}
+		}
+		return true;
+	}
+
+	// Centers the values and scales them to unit variance; returns false for constant values
+	private static boolean standardize(double[] values) {
+		double mean = 0;
+		for (double value : values)
+			mean += value;
+		mean /= values.length;
+		double variance = 0;
+		for (double value : values)
+			variance += (value - mean) * (value - mean);
+		variance /= values.length;
+		if (!(variance > 0))
+			return false;
+		double sd = Math.sqrt(variance);
+		for (int i = 0; i < values.length; i++)
+			values[i] = (values[i] - mean) / sd;
+		return true;
+	}
+
+	private static double norm(double[] values) {
+		return Math.sqrt(dot(values, values, values.length));
+	}
+
+	private static double dot(double[] a, double[] b, int length) {
+		return dot(a, 0, b, 0, length);
+	}
+
+	private static double dot(double[] a, int aOffset, double[] b, int length) {
+		return dot(a, aOffset, b, 0, length);
+	}
+
+	private static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+		double sum = 0;
+		for (int i = 0; i < length; i++)
+			sum += a[aOffset + i] * b[bOffset + i];
+		return sum;
+	}
+
+}
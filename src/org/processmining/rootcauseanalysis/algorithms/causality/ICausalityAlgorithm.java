@@ -1,9 +1,20 @@
 package org.processmining.rootcauseanalysis.algorithms.causality;
 
+import org.eclipse.collections.api.block.predicate.primitive.IntIntPredicate;
 import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
 
 public interface ICausalityAlgorithm {
 
 	Graph computeCausalGraph(Graph inclusionGraph);
 
+	Graph computeCausalGraph(InclusionGraph inclusionGraph);
+
+	/**
+	 * Computes the causality graph over the candidate pairs of the inclusion
+	 * graph that are accepted by the filter (or all pairs if the filter is
+	 * null); the other pairs get no edge.
+	 */
+	Graph computeCausalGraph(InclusionGraph inclusionGraph, IntIntPredicate filter);
+
 }
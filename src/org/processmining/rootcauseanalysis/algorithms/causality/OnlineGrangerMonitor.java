@@ -0,0 +1,273 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.distribution.FDistribution;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.processmining.rootcauseanalysis.models.GrangerTestResult;
+import org.processmining.rootcauseanalysis.parameters.GrangerCausalityParameters;
+
+/**
+ * Online variant of the Granger test for live monitoring: causality between
+ * monitored pairs of series is re-evaluated whenever a bucket closes, over a
+ * sliding window of the most recent buckets.
+ *
+ * The monitor keeps the cross-product matrices (X'X and X'y) of the
+ * regressions over the window: one per monitored pair for the unrestricted
+ * model (H1) and one per target for the restricted model (H0), which is shared
+ * by all pairs with that target (and dropped with the last of them). Every
+ * closed bucket adds the row of the new observation to these matrices and
+ * subtracts the row that leaves the window, which takes O(p^2) per matrix for
+ * p regressors. Results are computed from
+ * the matrices on demand, without refitting from the values. Once per window,
+ * the matrices are rebuilt from the buffered values, so rounding errors of
+ * the updates do not accumulate.
+ *
+ * The test uses a single lag L. A window of N buckets holds N - L
+ * observations, so the results equal those of
+ * {@link GrangerTest#granger(double[], double[], int)} on the last N values of
+ * both series. Series are identified by their index; values must be known
+ * (imputed) for every bucket. The monitor is not thread-safe.
+ */
+public class OnlineGrangerMonitor {
+
+	// FIELDS
+
+	private final int windowLength;
+	private final int lag;
+
+	// The last windowLength + 1 values per series, as ring buffers, and their reference (center) values
+	private final double[][] values;
+	private final double[] references;
+	private int head;
+	private long buckets;
+	private int rowsSinceRebuild;
+
+	private final IntObjectHashMap<Statistics> targets;
+	private final LongObjectHashMap<Statistics> pairs;
+
+	// The number of monitored pairs per target
+	private final IntIntHashMap pairsPerTarget;
+
+	// CONSTRUCTORS
+
+	/**
+	 * @param numberOfSeries
+	 *            - the number of series, indexed 0..numberOfSeries-1
+	 * @param windowLength
+	 *            - the number of buckets in the window
+	 * @param lag
+	 *            - the lag L, should be 1 or greater
+	 */
+	public OnlineGrangerMonitor(int numberOfSeries, int windowLength, int lag) {
+		if (lag < 1 || windowLength <= lag)
+			throw new IllegalArgumentException("The window must be longer than the lag, and the lag at least 1.");
+		this.windowLength = windowLength;
+		this.lag = lag;
+		values = new double[numberOfSeries][windowLength + 1];
+		references = new double[numberOfSeries];
+		targets = new IntObjectHashMap<Statistics>();
+		pairs = new LongObjectHashMap<Statistics>();
+		pairsPerTarget = new IntIntHashMap();
+	}
+
+	/**
+	 * Creates a monitor with the window length of the parameters and the
+	 * largest lag that the batch algorithm tests for series of that length.
+	 */
+	public OnlineGrangerMonitor(int numberOfSeries, GrangerCausalityParameters parameters) {
+		this(numberOfSeries, parameters.getWindowLength(), Math.max(1,
+				(parameters.getWindowLength() - parameters.getBeta()) / (2 * parameters.getBeta() + 1) - 1));
+	}
+
+	// GETTERS AND SETTERS
+
+	public int getWindowLength() {
+		return windowLength;
+	}
+
+	public int getLag() {
+		return lag;
+	}
+
+	/**
+	 * The number of observations (regression rows) currently in the window.
+	 */
+	public int getObservations() {
+		return (int) Math.max(0, Math.min(buckets, windowLength) - lag);
+	}
+
+	// METHODS
+
+	/**
+	 * Starts monitoring whether the source series Granger-causes the target
+	 * series. The statistics of the pair are built from the buffered values,
+	 * so pairs can be added at any time.
+	 */
+	public void monitor(int source, int target) {
+		long key = key(source, target);
+		if (pairs.containsKey(key))
+			return;
+		if (!targets.containsKey(target))
+			targets.put(target, rebuild(new Statistics(-1, target, lag + 2)));
+		pairs.put(key, rebuild(new Statistics(source, target, 2 * lag + 2)));
+		pairsPerTarget.addToValue(target, 1);
+	}
+
+	/**
+	 * Stops monitoring the pair. The statistics of the target are dropped
+	 * when no other pair with that target is monitored.
+	 */
+	public void unmonitor(int source, int target) {
+		if (pairs.remove(key(source, target)) == null)
+			return;
+		if (pairsPerTarget.addToValue(target, -1) == 0) {
+			pairsPerTarget.remove(target);
+			targets.remove(target);
+		}
+	}
+
+	/**
+	 * Adds the values of a closed bucket and updates the statistics of all
+	 * monitored pairs.
+	 *
+	 * @param bucketValues
+	 *            - the value of every series in the bucket
+	 */
+	public void add(double[] bucketValues) {
+		head = (head + 1) % (windowLength + 1);
+		for (int s = 0; s < values.length; s++)
+			values[s][head] = bucketValues[s];
+		buckets++;
+
+		if (buckets <= lag)
+			return;
+
+		if (buckets == lag + 1 || ++rowsSinceRebuild >= windowLength - lag) {
+			// Re-center on the current window and recompute, which bounds the accumulated rounding errors
+			rebuildAll();
+			return;
+		}
+
+		boolean full = buckets > windowLength;
+		for (Statistics statistics : targets) {
+			statistics.update(0, 1);
+			if (full)
+				statistics.update(windowLength - lag, -1);
+		}
+		for (Statistics statistics : pairs) {
+			statistics.update(0, 1);
+			if (full)
+				statistics.update(windowLength - lag, -1);
+		}
+	}
+
+	/**
+	 * Returns the current result of the Granger test for the pair, or null
+	 * when the pair is not monitored, the window does not hold enough
+	 * observations yet, or the regression is singular.
+	 */
+	public GrangerTestResult getResult(int source, int target) {
+		Statistics unrestricted = pairs.get(key(source, target));
+		int n = getObservations();
+		if (unrestricted == null || n - 2 * lag - 1 < 1)
+			return null;
+		Statistics restricted = targets.get(target);
+
+		double RSS0 = GrangerTest.rss(restricted.gram, columns(lag + 1), lag + 1);
+		double RSS1 = GrangerTest.rss(unrestricted.gram, columns(2 * lag + 1), 2 * lag + 1);
+		if (Double.isNaN(RSS0) || Double.isNaN(RSS1))
+			return null;
+
+		double[][] gram = restricted.gram;
+		double TSS1 = gram[lag + 1][lag + 1] - gram[0][lag + 1] * gram[0][lag + 1] / gram[0][0];
+
+		double ftest = ((RSS0 - RSS1) / lag) / (RSS1 / (n - 2 * lag - 1));
+
+		FDistribution fDist = new FDistribution(lag, n - 2 * lag - 1);
+
+		double pValue = 1.0 - fDist.cumulativeProbability(ftest);
+		return new GrangerTestResult(ftest, (1 - RSS1 / TSS1), pValue);
+	}
+
+	private void rebuildAll() {
+		int size = (int) Math.min(buckets, windowLength);
+		for (int s = 0; s < values.length; s++) {
+			double sum = 0;
+			for (int age = 0; age < size; age++)
+				sum += value(s, age);
+			references[s] += sum / size;
+		}
+		for (Statistics statistics : targets)
+			rebuild(statistics);
+		for (Statistics statistics : pairs)
+			rebuild(statistics);
+		rowsSinceRebuild = 0;
+	}
+
+	private Statistics rebuild(Statistics statistics) {
+		for (double[] row : statistics.gram)
+			Arrays.fill(row, 0);
+		for (int age = getObservations() - 1; age >= 0; age--)
+			statistics.update(age, 1);
+		return statistics;
+	}
+
+	// The value of series s, age buckets before the last closed bucket, relative to its reference
+	private double value(int s, int age) {
+		return values[s][(head - age + windowLength + 1) % (windowLength + 1)] - references[s];
+	}
+
+	private static long key(int source, int target) {
+		return ((long) source << 32) | (target & 0xFFFFFFFFL);
+	}
+
+	private static int[] columns(int k) {
+		int[] columns = new int[k];
+		for (int c = 0; c < k; c++)
+			columns[c] = c;
+		return columns;
+	}
+
+	/**
+	 * The cross-product matrix of the regression of the target on an
+	 * intercept, its own lags and (for pairs) the lags of the source. Columns:
+	 * intercept, target lags 1..L, source lags 1..L (if any), target.
+	 */
+	private class Statistics {
+
+		private final int source;
+		private final int target;
+		private final double[][] gram;
+		private final double[] row;
+
+		public Statistics(int source, int target, int size) {
+			this.source = source;
+			this.target = target;
+			gram = new double[size][size];
+			row = new double[size];
+		}
+
+		// Adds (sign 1) or subtracts (sign -1) the observation of the bucket of the specified age
+		public void update(int age, double sign) {
+			row[0] = 1;
+			for (int l = 1; l <= lag; l++)
+				row[l] = value(target, age + l);
+			if (source >= 0)
+				for (int l = 1; l <= lag; l++)
+					row[lag + l] = value(source, age + l);
+			row[row.length - 1] = value(target, age);
+
+			for (int i = 0; i < row.length; i++) {
+				double ri = sign * row[i];
+				double[] gi = gram[i];
+				for (int j = i; j < row.length; j++)
+					gi[j] += ri * row[j];
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+/**
+ * The restricted model (H0) of the Granger test for all lags 1..L of one
+ * window of the predictable variable: the variable regressed on its own lags.
+ * It only depends on the window and the largest lag, not on the predictor, so
+ * it can be shared by all predictors tested against the same window (see
+ * {@link RestrictedFitCache}).
+ *
+ * Next to the residual and total sums of squares per lag, the fit holds the
+ * cross-product matrix of the intercept, the lags and the (centered) variable
+ * itself over the observations of lag L, from which the unrestricted models
+ * are extended.
+ */
+public class RestrictedFit {
+
+	// FIELDS
+
+	private final int lag;
+	private final double mean;
+	private final double[][] gram;
+	private final double[] rss;
+	private final double[] tss;
+
+	// CONSTRUCTORS
+
+	public RestrictedFit(int lag, double mean, double[][] gram, double[] rss, double[] tss) {
+		this.lag = lag;
+		this.mean = mean;
+		this.gram = gram;
+		this.rss = rss;
+		this.tss = tss;
+	}
+
+	// GETTERS AND SETTERS
+
+	/**
+	 * The largest lag L of the fit.
+	 */
+	public int getLag() {
+		return lag;
+	}
+
+	/**
+	 * The mean of the window, by which the variable is centered.
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * The (upper triangle of the) cross-product matrix of the columns
+	 * intercept, lags 1..L and the variable, over the observations L..N-1.
+	 * Shared; must not be modified.
+	 */
+	public double[][] getGram() {
+		return gram;
+	}
+
+	/**
+	 * Returns the residual sum of squares of the restricted model of the
+	 * specified lag, or NaN when its regression is singular.
+	 */
+	public double getRSS(int l) {
+		return rss[l - 1];
+	}
+
+	/**
+	 * Returns the total sum of squares of the variable over the observations
+	 * of the specified lag.
+	 */
+	public double getTSS(int l) {
+		return tss[l - 1];
+	}
+
+	/**
+	 * The approximate size of the fit in bytes, used to bound caches.
+	 */
+	public int getWeight() {
+		return 8 * (gram.length * gram.length + rss.length + tss.length) + 64;
+	}
+
+}
@@ -0,0 +1,96 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import java.util.Objects;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+
+/**
+ * Memoizes the restricted (H0) fits of the Granger test per window of the
+ * predictable variable and largest lag, so the fit is computed once instead of
+ * once per candidate predictor. Windows are identified by their backing array
+ * (by identity), offset and length; the arrays must not be modified while
+ * they are cached.
+ *
+ * The cache is bounded by the approximate size of the fits and can be used
+ * concurrently; concurrent requests for the same fit compute it once.
+ */
+public class RestrictedFitCache {
+
+	// FIELDS
+
+	private final LoadingCache<Key, RestrictedFit> cache;
+
+	// CONSTRUCTORS
+
+	/**
+	 * @param maximumSize
+	 *            - the maximum size of the cached fits in bytes
+	 */
+	public RestrictedFitCache(long maximumSize) {
+		cache = CacheBuilder.newBuilder().maximumWeight(maximumSize).weigher(new Weigher<Key, RestrictedFit>() {
+			public int weigh(Key key, RestrictedFit fit) {
+				return fit.getWeight();
+			}
+		}).recordStats().build(new CacheLoader<Key, RestrictedFit>() {
+			public RestrictedFit load(Key key) {
+				return GrangerTest.fitRestricted(key.array, key.offset, key.length, key.lag);
+			}
+		});
+	}
+
+	// GETTERS AND SETTERS
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	// METHODS
+
+	/**
+	 * Returns the restricted fit of the window [offset, offset + length) of
+	 * the array for the largest lag L, computing it when it is not cached.
+	 */
+	public RestrictedFit get(double[] array, int offset, int length, int L) {
+		return cache.getUnchecked(new Key(array, offset, length, L));
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	private static class Key {
+
+		private final double[] array;
+		private final int offset;
+		private final int length;
+		private final int lag;
+
+		public Key(double[] array, int offset, int length, int lag) {
+			this.array = array;
+			this.offset = offset;
+			this.length = length;
+			this.lag = lag;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+
+			Key key = (Key) obj;
+
+			return array == key.array && offset == key.offset && length == key.length && lag == key.lag;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(System.identityHashCode(array), offset, length, lag);
+		}
+
+	}
+
+}
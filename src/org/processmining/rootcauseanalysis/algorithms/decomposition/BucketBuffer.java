@@ -0,0 +1,100 @@
+package org.processmining.rootcauseanalysis.algorithms.decomposition;
+
+import java.util.BitSet;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.processmining.rootcauseanalysis.models.timeseries.AggregationFunction;
+import org.processmining.rootcauseanalysis.models.timeseries.Aggregator;
+import org.processmining.rootcauseanalysis.models.timeseries.ImputationStrategy;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.models.timeseries.TimeBucketing;
+import org.processmining.rootcauseanalysis.utils.TimeSeriesUtils;
+
+/**
+ * The measurements of one series, aggregated per bucket of a bucketing that
+ * is known before the series are: every measurement is added to the
+ * aggregator of its bucket and then dropped, so the memory needed is linear
+ * in the number of measured buckets instead of the number of measurements.
+ *
+ * Measurements are added in the order in which they arrive. An aggregator
+ * whose value depends on that order (a quantile) may therefore differ from
+ * one that sees the measurements of a bucket in time order, and all
+ * measurements are aggregated, also when several share a moment.
+ */
+class BucketBuffer {
+
+	// FIELDS
+
+	private final TimeBucketing bucketing;
+	private final AggregationFunction aggregationFunction;
+	private final LongObjectHashMap<Aggregator> aggregators;
+	private long measurements;
+	private long first;
+	private long last;
+
+	// CONSTRUCTORS
+
+	public BucketBuffer(TimeBucketing bucketing, AggregationFunction aggregationFunction) {
+		this.bucketing = bucketing;
+		this.aggregationFunction = aggregationFunction;
+		aggregators = new LongObjectHashMap<Aggregator>();
+		first = Long.MAX_VALUE;
+		last = Long.MIN_VALUE;
+	}
+
+	// GETTERS AND SETTERS
+
+	/**
+	 * The number of measurements that were added.
+	 */
+	public long getMeasurements() {
+		return measurements;
+	}
+
+	// METHODS
+
+	public void add(long time, double value) {
+		long bucket = bucketing.getBucket(time);
+		Aggregator aggregator = aggregators.get(bucket);
+		if (aggregator == null) {
+			aggregator = aggregationFunction.createAggregator();
+			aggregators.put(bucket, aggregator);
+		}
+		aggregator.add(value);
+		measurements++;
+		first = Math.min(first, bucket);
+		last = Math.max(last, bucket);
+	}
+
+	/**
+	 * Returns the aggregated buckets as a regular series, in which the
+	 * buckets without measurements are imputed, as
+	 * {@link TimeSeriesUtils#resample(String, long[], double[], int, TimeBucketing, Aggregator, ImputationStrategy)}
+	 * does.
+	 *
+	 * @param description
+	 *            The description of the measured series.
+	 * @param imputation
+	 *            The imputation of buckets without measurements.
+	 * @return The resampled series, or null when more values would have to be
+	 *         imputed than there are measurements.
+	 */
+	public RegularTimeSeries toRegularTimeSeries(String description, ImputationStrategy imputation) {
+		if (measurements == 0 || last - first + 1 - aggregators.size() >= measurements)
+			return null;
+
+		double[] resampled = new double[(int) (last - first + 1)];
+		BitSet validity = new BitSet(resampled.length);
+		for (int i = 0; i < resampled.length; i++) {
+			Aggregator aggregator = aggregators.get(first + i);
+			if (aggregator != null) {
+				resampled[i] = aggregator.getValue();
+				validity.set(i);
+			}
+		}
+
+		return new RegularTimeSeries(description + " (resampled)", bucketing, first, resampled,
+				imputation.impute(resampled, validity));
+	}
+
+}
@@ -0,0 +1,520 @@
+package org.processmining.rootcauseanalysis.algorithms.decomposition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.jfree.data.time.TimeSeries;
+import org.processmining.contextawareperformance.models.ContextResult;
+import org.processmining.contextawareperformance.models.EventCollection;
+import org.processmining.contextawareperformance.models.PerformanceMeasurement;
+import org.processmining.contextawareperformance.models.eventcollectionentities.EventCollectionEntity;
+import org.processmining.contextawareperformance.models.eventcollectionviews.EventCollectionViewType;
+import org.processmining.contextawareperformance.models.functions.context.Context;
+import org.processmining.contextawareperformance.models.functions.performance.Performance;
+import org.processmining.rootcauseanalysis.io.TraceReader;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisMetrics;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.timeseries.AggregationFunction;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
+import org.processmining.rootcauseanalysis.models.timeseries.ImputationStrategy;
+import org.processmining.rootcauseanalysis.models.timeseries.TimeBucketing;
+import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
+import org.processmining.rootcauseanalysis.utils.TimeSeriesUtils;
+
+/**
+ * Creates the time series and the decomposition graph. Parent nodes represent
+ * the base KPI (performance function) time series and child nodes represent
+ * the KPI decomposed by the values of a context function.
+ * 
+ * The entities of each view are traversed once. For every entity, each
+ * performance measurement and each context result is computed once and then
+ * fanned out to the parent series and to the child series of all context
+ * functions. With more than one thread, the entities are partitioned, the
+ * partitions are decomposed in parallel and the partial series are merged in
+ * partition order, which gives the same series as a sequential run.
+ * 
+ * Measurements are collected in primitive buffers in traversal order and each
+ * buffer is sorted once, when the time series of the graph are created.
+ */
+public class DecompositionAlgorithm {
+
+	// Separates the parts of a series key, which do not contain it (except the last)
+	private static final String SERIESKEY_SEPARATOR = "|";
+
+	/**
+	 * The view types whose entities belong to a single case, so a set of
+	 * cases can be decomposed on its own.
+	 */
+	public static final Set<EventCollectionViewType> CASE_VIEW_TYPES = Collections.unmodifiableSet(
+			EnumSet.of(EventCollectionViewType.ACTIVITYINSTANCE, EventCollectionViewType.CASE));
+
+	// FIELDS
+
+	private RootCauseAnalysisParameters parameters;
+
+	// CONSTRUCTORS
+
+	public DecompositionAlgorithm(RootCauseAnalysisParameters parameters) {
+		setParameters(parameters);
+	}
+
+	// GETTERS AND SETTERS
+
+	public RootCauseAnalysisParameters getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(RootCauseAnalysisParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	// METHODS
+
+	public Graph computeDecompositionGraph(EventCollection eventCollection) {
+		Graph decompositionGraph = new Graph();
+
+		for (EventCollectionViewType eventCollectionViewType : parameters.getEventCollectionViewTypesToUse()) {
+			View view = createView(eventCollection, eventCollectionViewType);
+			if (view != null)
+				addToGraph(decompositionGraph, view, decompose(view));
+		}
+
+		return decompositionGraph;
+	}
+
+	/**
+	 * Creates the time series and the decomposition graph of an event log that
+	 * is read trace by trace, so the log is never materialized as a whole.
+	 * The traces are decomposed in batches of the specified number of traces.
+	 * 
+	 * When the bucketing is known up front (a bucket width or a time period
+	 * that is not selected automatically), the measurements of every batch
+	 * are aggregated per bucket (see {@link BucketBuffer}) and the nodes get
+	 * their resampled series (see {@link Properties#KEY_REGULARTIMESERIES})
+	 * instead of their measurements, so the memory needed is linear in the
+	 * number of measured buckets of all series plus one batch. Otherwise, the
+	 * bucketing is selected from the measurements, so the measurements of the
+	 * batches are merged as partitions are and all of them are held: the
+	 * memory needed is linear in the number of measurements.
+	 * 
+	 * Only views whose entities belong to a single case (see
+	 * {@link #CASE_VIEW_TYPES}) are decomposed, since the entities of other
+	 * views would be split over the batches and their measurements would
+	 * depend on the batch size. The other views are skipped with a message.
+	 * 
+	 * @param reader
+	 *            The reader of the traces.
+	 * @param batchSize
+	 *            The number of traces per batch.
+	 * @return The decomposition graph.
+	 * @throws IOException
+	 *             when the traces cannot be read.
+	 */
+	public Graph computeDecompositionGraph(TraceReader reader, int batchSize) throws IOException {
+		XFactory factory = XFactoryRegistry.instance().currentDefault();
+		List<EventCollectionViewType> viewTypes = new ArrayList<EventCollectionViewType>();
+		for (EventCollectionViewType viewType : parameters.getEventCollectionViewTypesToUse()) {
+			if (CASE_VIEW_TYPES.contains(viewType))
+				viewTypes.add(viewType);
+			else
+				parameters.displayMessage("The " + viewType + " view is not decomposed when streaming, since its"
+						+ " entities span multiple cases.");
+		}
+		View[] views = new View[viewTypes.size()];
+		DecomposedSeries[] series = new DecomposedSeries[viewTypes.size()];
+		AggregatedSeries[] aggregatedSeries = new AggregatedSeries[viewTypes.size()];
+		EpochBucketing bucketing = parameters.isAutomaticTimePeriod() && parameters.getBucketWidth() <= 0 ? null
+				: TimeSeriesUtils.getBucketing(parameters);
+
+		boolean more = true;
+		while (more) {
+			XLog batch = factory.createLog();
+			XTrace trace = null;
+			while (batch.size() < Math.max(1, batchSize) && (trace = reader.read()) != null)
+				batch.add(trace);
+			more = trace != null;
+			if (batch.isEmpty())
+				break;
+
+			EventCollection eventCollection = new EventCollection(batch);
+			for (int v = 0; v < viewTypes.size(); v++) {
+				View view = createView(eventCollection, viewTypes.get(v));
+				if (view == null)
+					continue;
+				views[v] = view;
+				if (bucketing == null) {
+					series[v] = series[v] == null ? decompose(view) : series[v].merge(decompose(view));
+				} else {
+					if (aggregatedSeries[v] == null)
+						aggregatedSeries[v] = new AggregatedSeries(view, bucketing, parameters.getAggregationFunction());
+					aggregatedSeries[v].add(decompose(view));
+				}
+			}
+		}
+
+		Graph decompositionGraph = new Graph();
+		for (int v = 0; v < viewTypes.size(); v++) {
+			if (series[v] != null)
+				addToGraph(decompositionGraph, views[v], series[v]);
+			else if (aggregatedSeries[v] != null)
+				addToGraph(decompositionGraph, views[v], aggregatedSeries[v], parameters.getImputationStrategy());
+		}
+
+		return decompositionGraph;
+	}
+
+	// Returns the functions and entities of the view, or null when no performance function applies to it
+	private View createView(EventCollection eventCollection, EventCollectionViewType eventCollectionViewType) {
+		List<Performance<?>> performanceFunctions = new ArrayList<Performance<?>>();
+		for (Performance<?> performanceFunction : parameters.getPerformanceFunctionsToUse())
+			if (performanceFunction.getType().getApplicableViewTypes().contains(eventCollectionViewType))
+				performanceFunctions.add(performanceFunction);
+
+		if (performanceFunctions.isEmpty())
+			return null;
+
+		List<Context<?>> contextFunctions = new ArrayList<Context<?>>();
+		for (Context<?> contextFunction : parameters.getContextFunctionsToUse())
+			if (contextFunction.getType().getApplicableViewTypes().contains(eventCollectionViewType))
+				contextFunctions.add(contextFunction);
+
+		List<EventCollectionEntity> entities = new ArrayList<EventCollectionEntity>(
+				eventCollection.viewAs(eventCollectionViewType).keySet());
+
+		return new View(eventCollection, eventCollectionViewType, performanceFunctions, contextFunctions, entities);
+	}
+
+	private DecomposedSeries decompose(View view) {
+		int size = view.entities.size();
+		if (parameters.getNumberOfThreads() > 1 && size > 1) {
+			int partitionSize = Math.max(1, size / (4 * parameters.getNumberOfThreads()));
+			ForkJoinPool pool = new ForkJoinPool(parameters.getNumberOfThreads(),
+					RootCauseAnalysisMetrics.getWorkerThreadFactory(), null, false);
+			try {
+				return pool.invoke(new DecompositionTask(view, 0, size, partitionSize));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return view.decompose(0, size);
+	}
+
+	private static void addToGraph(Graph decompositionGraph, View view, DecomposedSeries series) {
+		for (int p = 0; p < view.performanceFunctions.size(); p++) {
+			TimeSeries tsPerformance = series.parents[p].toTimeSeries(view.lblPerformance[p]);
+			tsPerformance.setDescription(view.lblPerformance[p]);
+
+			Node performanceNode = addPerformanceNode(decompositionGraph, view, p);
+			performanceNode.setProperty(Properties.KEY_TIMESERIES, tsPerformance);
+
+			for (int c = 0; c < view.contextFunctions.size(); c++) {
+				for (int id = 0; id < series.children[p][c].size(); id++) {
+					SeriesLabel label = new SeriesLabel(view.lblPerformanceContext[p][c],
+							series.dictionary.getEntity(c, id), series.dictionary.getValue(c, id));
+					TimeSeries tsContextResult = series.children[p][c].get(id).toTimeSeries(label);
+
+					Node performanceContextContextResultNode = addPerformanceContextNode(decompositionGraph, view,
+							performanceNode, p, c, label, series.dictionary.getValue(c, id));
+					performanceContextContextResultNode.setProperty(Properties.KEY_TIMESERIES, tsContextResult);
+				}
+			}
+		}
+	}
+
+	// Adds the nodes with their resampled series, described as the resampled measurement series would be
+	private static void addToGraph(Graph decompositionGraph, View view, AggregatedSeries series,
+			ImputationStrategy imputation) {
+		for (int p = 0; p < view.performanceFunctions.size(); p++) {
+			Node performanceNode = addPerformanceNode(decompositionGraph, view, p);
+			performanceNode.setProperty(Properties.KEY_REGULARTIMESERIES,
+					series.parents[p].toRegularTimeSeries(view.lblPerformance[p], imputation));
+
+			for (int c = 0; c < view.contextFunctions.size(); c++) {
+				for (int id = 0; id < series.children[p][c].size(); id++) {
+					SeriesLabel label = new SeriesLabel(view.lblPerformanceContext[p][c],
+							series.dictionary.getEntity(c, id), series.dictionary.getValue(c, id));
+
+					Node performanceContextContextResultNode = addPerformanceContextNode(decompositionGraph, view,
+							performanceNode, p, c, label, series.dictionary.getValue(c, id));
+					performanceContextContextResultNode.setProperty(Properties.KEY_REGULARTIMESERIES,
+							series.children[p][c].get(id).toRegularTimeSeries(label.toString(), imputation));
+				}
+			}
+		}
+	}
+
+	private static Node addPerformanceNode(Graph decompositionGraph, View view, int p) {
+		Node performanceNode = new Node(view.lblPerformance[p]);
+		performanceNode.setProperty(Properties.KEY_SERIESKEY, view.keyPerformance[p]);
+		return decompositionGraph.addNode(performanceNode);
+	}
+
+	private static Node addPerformanceContextNode(Graph decompositionGraph, View view, Node performanceNode, int p,
+			int c, SeriesLabel label, String contextResult) {
+		// The label is kept lazy, it is only built when the node is displayed
+		Node performanceContextContextResultNode = new Node();
+		performanceContextContextResultNode.setProperty(Properties.KEY_LABEL, label);
+		performanceContextContextResultNode.setProperty(Properties.KEY_SERIESKEY,
+				view.keyPerformanceContext[p][c] + SERIESKEY_SEPARATOR + contextResult);
+		decompositionGraph.addNode(performanceContextContextResultNode);
+		decompositionGraph.addEdge(new Edge(performanceNode, performanceContextContextResultNode));
+		return performanceContextContextResultNode;
+	}
+
+	/**
+	 * The functions and entities of one view, with the labels and the series
+	 * keys (see {@link Properties#KEY_SERIESKEY}) of their series. Functions
+	 * are identified by their class in the keys, as in the fingerprint of the
+	 * parameters; the context result is the last part of a child key, so the
+	 * separator cannot make keys ambiguous.
+	 */
+	private static class View {
+
+		private final EventCollection eventCollection;
+		private final List<Performance<?>> performanceFunctions;
+		private final List<Context<?>> contextFunctions;
+		private final List<EventCollectionEntity> entities;
+		private final String[] lblPerformance;
+		private final String[][] lblPerformanceContext;
+		private final String[] keyPerformance;
+		private final String[][] keyPerformanceContext;
+
+		public View(EventCollection eventCollection, EventCollectionViewType viewType,
+				List<Performance<?>> performanceFunctions, List<Context<?>> contextFunctions,
+				List<EventCollectionEntity> entities) {
+			this.eventCollection = eventCollection;
+			this.performanceFunctions = performanceFunctions;
+			this.contextFunctions = contextFunctions;
+			this.entities = entities;
+
+			lblPerformance = new String[performanceFunctions.size()];
+			lblPerformanceContext = new String[performanceFunctions.size()][contextFunctions.size()];
+			keyPerformance = new String[performanceFunctions.size()];
+			keyPerformanceContext = new String[performanceFunctions.size()][contextFunctions.size()];
+			for (int p = 0; p < performanceFunctions.size(); p++) {
+				lblPerformance[p] = performanceFunctions.get(p).getType().getDescription();
+				keyPerformance[p] = viewType.name() + SERIESKEY_SEPARATOR
+						+ performanceFunctions.get(p).getClass().getName();
+				for (int c = 0; c < contextFunctions.size(); c++) {
+					lblPerformanceContext[p][c] = lblPerformance[p] + ", "
+							+ contextFunctions.get(c).getType().getDescription();
+					keyPerformanceContext[p][c] = keyPerformance[p] + SERIESKEY_SEPARATOR
+							+ contextFunctions.get(c).getClass().getName();
+				}
+			}
+		}
+
+		/**
+		 * Decomposes the entities with indices [from, to) in a single pass.
+		 */
+		public DecomposedSeries decompose(int from, int to) {
+			DecomposedSeries series = new DecomposedSeries(this);
+			int[] contextResultIds = new int[contextFunctions.size()];
+
+			for (int e = from; e < to; e++) {
+				EventCollectionEntity eventCollectionEntity = entities.get(e);
+
+				// Context results do not depend on the performance function, compute and intern them once
+				for (int c = 0; c < contextFunctions.size(); c++) {
+					ContextResult<?> contextResult = contextFunctions.get(c).mapToContext(eventCollectionEntity,
+							eventCollection);
+					contextResultIds[c] = series.dictionary.intern(c, contextResult.getResult().toString(),
+							eventCollectionEntity);
+				}
+
+				for (int p = 0; p < performanceFunctions.size(); p++) {
+					PerformanceMeasurement<?> performanceMeasurement = performanceFunctions.get(p)
+							.mapToPerformance(eventCollectionEntity, eventCollection);
+
+					double result = toValue(performanceMeasurement.getResult());
+					long measurementTime = performanceMeasurement.getMeasurementDate().getTime();
+
+					series.parents[p].add(measurementTime, result);
+
+					for (int c = 0; c < contextFunctions.size(); c++)
+						series.getChild(p, c, contextResultIds[c]).add(measurementTime, result);
+				}
+			}
+
+			return series;
+		}
+
+		// Numeric results are taken as is, other results are parsed from their text
+		private static double toValue(Object result) {
+			if (result instanceof Number)
+				return ((Number) result).doubleValue();
+			return Double.parseDouble(result.toString());
+		}
+
+	}
+
+	/**
+	 * The (partial) measurements of the parent and child series of one view.
+	 * Child series are addressed by the ids of their context results in the
+	 * dictionary.
+	 */
+	private static class DecomposedSeries {
+
+		private final View view;
+		private final SeriesDictionary dictionary;
+		private final MeasurementBuffer[] parents;
+		private final List<MeasurementBuffer>[][] children;
+
+		public DecomposedSeries(View view) {
+			this.view = view;
+			dictionary = new SeriesDictionary(view.contextFunctions.size());
+			parents = new MeasurementBuffer[view.performanceFunctions.size()];
+			children = newListArray(view.performanceFunctions.size(), view.contextFunctions.size());
+			for (int p = 0; p < parents.length; p++) {
+				parents[p] = new MeasurementBuffer();
+				for (int c = 0; c < view.contextFunctions.size(); c++)
+					children[p][c] = new ArrayList<MeasurementBuffer>();
+			}
+		}
+
+		/**
+		 * Returns the child series of the performance function, context
+		 * function and context result id, creating it when it is new. Ids are
+		 * assigned consecutively, so a new id is always the next index.
+		 */
+		public MeasurementBuffer getChild(int p, int c, int id) {
+			List<MeasurementBuffer> buffers = children[p][c];
+			if (id < buffers.size())
+				return buffers.get(id);
+			MeasurementBuffer child = new MeasurementBuffer();
+			buffers.add(child);
+			return child;
+		}
+
+		/**
+		 * Merges the series of a later partition into these series by
+		 * appending its measurements. Later measurements overwrite earlier
+		 * ones at the same moment, and series keep the label of the partition
+		 * that created them first, as in a sequential run. The ids of the later
+		 * partition are mapped once per context result.
+		 */
+		public DecomposedSeries merge(DecomposedSeries later) {
+			for (int p = 0; p < parents.length; p++)
+				parents[p].addAll(later.parents[p]);
+			for (int c = 0; c < view.contextFunctions.size(); c++) {
+				for (int laterId = 0; laterId < later.dictionary.size(c); laterId++) {
+					int id = dictionary.intern(c, later.dictionary.getValue(c, laterId),
+							later.dictionary.getEntity(c, laterId));
+					for (int p = 0; p < parents.length; p++) {
+						MeasurementBuffer laterBuffer = later.children[p][c].get(laterId);
+						if (id < children[p][c].size())
+							children[p][c].get(id).addAll(laterBuffer);
+						else
+							children[p][c].add(laterBuffer);
+					}
+				}
+			}
+			return this;
+		}
+
+	}
+
+	/**
+	 * The measurements of the parent and child series of one view, aggregated
+	 * per bucket. Child series are addressed by the ids of their context
+	 * results in the dictionary, as in {@link DecomposedSeries}.
+	 */
+	private static class AggregatedSeries {
+
+		private final TimeBucketing bucketing;
+		private final AggregationFunction aggregationFunction;
+		private final SeriesDictionary dictionary;
+		private final BucketBuffer[] parents;
+		private final List<BucketBuffer>[][] children;
+
+		public AggregatedSeries(View view, TimeBucketing bucketing, AggregationFunction aggregationFunction) {
+			this.bucketing = bucketing;
+			this.aggregationFunction = aggregationFunction;
+			dictionary = new SeriesDictionary(view.contextFunctions.size());
+			parents = new BucketBuffer[view.performanceFunctions.size()];
+			children = newListArray(view.performanceFunctions.size(), view.contextFunctions.size());
+			for (int p = 0; p < parents.length; p++) {
+				parents[p] = new BucketBuffer(bucketing, aggregationFunction);
+				for (int c = 0; c < view.contextFunctions.size(); c++)
+					children[p][c] = new ArrayList<BucketBuffer>();
+			}
+		}
+
+		/**
+		 * Aggregates the series of the next batch, whose buffers are then no
+		 * longer needed. The ids of the batch are mapped as in
+		 * {@link DecomposedSeries#merge(DecomposedSeries)}.
+		 */
+		public void add(DecomposedSeries batch) {
+			for (int p = 0; p < parents.length; p++)
+				batch.parents[p].addTo(parents[p]);
+			for (int c = 0; c < batch.view.contextFunctions.size(); c++) {
+				for (int batchId = 0; batchId < batch.dictionary.size(c); batchId++) {
+					int id = dictionary.intern(c, batch.dictionary.getValue(c, batchId),
+							batch.dictionary.getEntity(c, batchId));
+					for (int p = 0; p < parents.length; p++) {
+						if (id == children[p][c].size())
+							children[p][c].add(new BucketBuffer(bucketing, aggregationFunction));
+						batch.children[p][c].get(batchId).addTo(children[p][c].get(id));
+					}
+				}
+			}
+		}
+
+	}
+
+	// Arrays of a generic type cannot be created directly
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <T> List<T>[][] newListArray(int rows, int columns) {
+		return new List[rows][columns];
+	}
+
+	/**
+	 * Decomposes the entities with indices [from, to), splitting the range
+	 * until it fits the partition size, and merges the partial series.
+	 */
+	private static class DecompositionTask extends RecursiveTask<DecomposedSeries> {
+
+		private static final long serialVersionUID = 4706364880925373871L;
+
+		private final View view;
+		private final int from;
+		private final int to;
+		private final int partitionSize;
+
+		public DecompositionTask(View view, int from, int to, int partitionSize) {
+			this.view = view;
+			this.from = from;
+			this.to = to;
+			this.partitionSize = partitionSize;
+		}
+
+		@Override
+		protected DecomposedSeries compute() {
+			if (to - from <= partitionSize)
+				return view.decompose(from, to);
+
+			int middle = (from + to) >>> 1;
+			DecompositionTask left = new DecompositionTask(view, from, middle, partitionSize);
+			DecompositionTask right = new DecompositionTask(view, middle, to, partitionSize);
+			left.fork();
+			DecomposedSeries rightSeries = right.compute();
+			return left.join().merge(rightSeries);
+		}
+
+	}
+
+}
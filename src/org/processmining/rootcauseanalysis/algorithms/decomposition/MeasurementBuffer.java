@@ -0,0 +1,168 @@
+package org.processmining.rootcauseanalysis.algorithms.decomposition;
+
+import java.util.Arrays;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.jfree.data.time.FixedMillisecond;
+import org.jfree.data.time.TimeSeries;
+
+/**
+ * Append-only buffer of the measurements of one series, as epoch millis and
+ * values in primitive arrays. Measurements are appended in the order in which
+ * the entities are traversed, which is not time order; the buffer is sorted
+ * once, when it is converted to a time series.
+ *
+ * Sorting merges the ascending runs of the buffer and is stable, so when
+ * several measurements share a moment, the last appended one is kept, as with
+ * {@link TimeSeries#addOrUpdate}. Appending the buffer of a later partition
+ * therefore keeps the semantics of a sequential run.
+ */
+class MeasurementBuffer {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	// FIELDS
+
+	private long[] times;
+	private double[] values;
+	private int size;
+
+	// CONSTRUCTORS
+
+	public MeasurementBuffer() {
+		times = new long[INITIAL_CAPACITY];
+		values = new double[INITIAL_CAPACITY];
+	}
+
+	// GETTERS AND SETTERS
+
+	public int size() {
+		return size;
+	}
+
+	// METHODS
+
+	public void add(long time, double value) {
+		if (size == times.length)
+			grow(size + 1);
+		times[size] = time;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * Appends the measurements of the buffer of a later partition.
+	 */
+	public void addAll(MeasurementBuffer later) {
+		if (size + later.size > times.length)
+			grow(size + later.size);
+		System.arraycopy(later.times, 0, times, size, later.size);
+		System.arraycopy(later.values, 0, values, size, later.size);
+		size += later.size;
+	}
+
+	/**
+	 * Sorts the measurements and returns them as a time series of
+	 * millisecond periods.
+	 */
+	public TimeSeries toTimeSeries(Comparable<?> key) {
+		sort();
+		TimeSeries series = new TimeSeries(key);
+		// The periods are ascending, so every item is appended at the end of the series
+		for (int i = 0; i < size; i++)
+			series.add(new FixedMillisecond(times[i]), values[i], false);
+		return series;
+	}
+
+	/**
+	 * Sorts the measurements and adds them to the aggregates of their
+	 * buckets, in time order.
+	 */
+	public void addTo(BucketBuffer buckets) {
+		sort();
+		for (int i = 0; i < size; i++)
+			buckets.add(times[i], values[i]);
+	}
+
+	private void grow(int minimumCapacity) {
+		int capacity = Math.max(minimumCapacity, times.length * 2);
+		times = Arrays.copyOf(times, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	// Sorts by time (merging the ascending runs) and keeps the last measurement of every moment
+	private void sort() {
+		IntArrayList runs = new IntArrayList();
+		runs.add(0);
+		for (int i = 1; i < size; i++)
+			if (times[i] < times[i - 1])
+				runs.add(i);
+		runs.add(size);
+
+		if (runs.size() > 2) {
+			long[] sourceTimes = times;
+			double[] sourceValues = values;
+			long[] targetTimes = new long[times.length];
+			double[] targetValues = new double[values.length];
+			while (runs.size() > 2) {
+				IntArrayList merged = new IntArrayList();
+				int r = 0;
+				for (; r + 2 < runs.size(); r += 2) {
+					merge(sourceTimes, sourceValues, runs.get(r), runs.get(r + 1), runs.get(r + 2), targetTimes,
+							targetValues);
+					merged.add(runs.get(r));
+				}
+				if (r + 1 < runs.size()) {
+					// An odd run is copied as is
+					int from = runs.get(r);
+					int to = runs.get(r + 1);
+					System.arraycopy(sourceTimes, from, targetTimes, from, to - from);
+					System.arraycopy(sourceValues, from, targetValues, from, to - from);
+					merged.add(from);
+				}
+				merged.add(size);
+				runs = merged;
+
+				long[] swapTimes = sourceTimes;
+				sourceTimes = targetTimes;
+				targetTimes = swapTimes;
+				double[] swapValues = sourceValues;
+				sourceValues = targetValues;
+				targetValues = swapValues;
+			}
+			times = sourceTimes;
+			values = sourceValues;
+		}
+
+		int last = -1;
+		for (int i = 0; i < size; i++) {
+			if (last >= 0 && times[last] == times[i]) {
+				values[last] = values[i];
+			} else {
+				last++;
+				times[last] = times[i];
+				values[last] = values[i];
+			}
+		}
+		size = last + 1;
+	}
+
+	// Merges the ascending ranges [from, middle) and [middle, to), taking from the first range on ties
+	private static void merge(long[] times, double[] values, int from, int middle, int to, long[] targetTimes,
+			double[] targetValues) {
+		int i = from;
+		int j = middle;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < middle && times[i] <= times[j])) {
+				targetTimes[k] = times[i];
+				targetValues[k] = values[i];
+				i++;
+			} else {
+				targetTimes[k] = times[j];
+				targetValues[k] = values[j];
+				j++;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.processmining.rootcauseanalysis.algorithms.decomposition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.processmining.contextawareperformance.models.eventcollectionentities.EventCollectionEntity;
+
+/**
+ * Interns the context results of the context functions of one view to dense
+ * int ids (per context function), so the child series of a (performance
+ * function, context function, context result) are addressed by array index
+ * instead of by their label. For every id, the entity that first had the
+ * context result is recorded (as text, so the entity itself is not retained),
+ * since the label of the series refers to it.
+ */
+class SeriesDictionary {
+
+	// FIELDS
+
+	// Per context function
+	private final List<ObjectIntHashMap<String>> ids;
+	private final List<List<String>> values;
+	private final List<List<String>> entities;
+
+	// CONSTRUCTORS
+
+	public SeriesDictionary(int numberOfContexts) {
+		ids = new ArrayList<ObjectIntHashMap<String>>(numberOfContexts);
+		values = new ArrayList<List<String>>(numberOfContexts);
+		entities = new ArrayList<List<String>>(numberOfContexts);
+		for (int c = 0; c < numberOfContexts; c++) {
+			ids.add(new ObjectIntHashMap<String>());
+			values.add(new ArrayList<String>());
+			entities.add(new ArrayList<String>());
+		}
+	}
+
+	// GETTERS AND SETTERS
+
+	/**
+	 * Returns the number of ids of the context function.
+	 */
+	public int size(int context) {
+		return values.get(context).size();
+	}
+
+	public String getValue(int context, int id) {
+		return values.get(context).get(id);
+	}
+
+	public String getEntity(int context, int id) {
+		return entities.get(context).get(id);
+	}
+
+	// METHODS
+
+	/**
+	 * Returns the id of the context result of the context function, assigning
+	 * the next id (and recording the entity) when it is new.
+	 */
+	public int intern(int context, String value, EventCollectionEntity entity) {
+		int id = ids.get(context).getIfAbsent(value, -1);
+		return id >= 0 ? id : add(context, value, entity.toString());
+	}
+
+	/**
+	 * Variant of {@link #intern(int, String, EventCollectionEntity)} for an
+	 * entity that is given as text, used when dictionaries are merged.
+	 */
+	public int intern(int context, String value, String entity) {
+		int id = ids.get(context).getIfAbsent(value, -1);
+		return id >= 0 ? id : add(context, value, entity);
+	}
+
+	private int add(int context, String value, String entity) {
+		int id = values.get(context).size();
+		ids.get(context).put(value, id);
+		values.get(context).add(value);
+		entities.get(context).add(entity);
+		return id;
+	}
+
+}
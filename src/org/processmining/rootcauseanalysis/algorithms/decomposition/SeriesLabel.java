@@ -0,0 +1,57 @@
+package org.processmining.rootcauseanalysis.algorithms.decomposition;
+
+import java.util.Objects;
+
+/**
+ * The label of a decomposed (child) series: the performance and context
+ * function, the entity that first had the context result, and the context
+ * result. The label text is only built when it is first needed (e.g. when the
+ * series is resampled or displayed), not while the series are decomposed.
+ */
+public class SeriesLabel implements Comparable<SeriesLabel> {
+
+	// FIELDS
+
+	private final String prefix;
+	private final String entity;
+	private final String value;
+	private String text;
+
+	// CONSTRUCTORS
+
+	public SeriesLabel(String prefix, String entity, String value) {
+		this.prefix = prefix;
+		this.entity = entity;
+		this.value = value;
+	}
+
+	// METHODS
+
+	@Override
+	public String toString() {
+		if (text == null)
+			text = prefix + ", activity " + entity + ", " + value;
+		return text;
+	}
+
+	public int compareTo(SeriesLabel label) {
+		return toString().compareTo(label.toString());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SeriesLabel))
+			return false;
+
+		SeriesLabel label = (SeriesLabel) obj;
+
+		return Objects.equals(prefix, label.prefix) && Objects.equals(entity, label.entity)
+				&& Objects.equals(value, label.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(prefix, entity, value);
+	}
+
+}
@@ -0,0 +1,448 @@
+package org.processmining.rootcauseanalysis.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.UUID;
+
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import org.jfree.data.time.FixedMillisecond;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesDataItem;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisOutput;
+import org.processmining.rootcauseanalysis.models.graph.AncestryIndex;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
+import org.processmining.rootcauseanalysis.utils.FingerprintUtils;
+
+/**
+ * Persistent cache of analysis outputs, so results survive ProM restarts. Every
+ * output is stored in its own binary file in the cache directory, named after
+ * the fingerprint of the event log and the fingerprint of the parameters (see
+ * {@link FingerprintUtils}); a lookup is a single file access. Files are
+ * written sequentially and read through memory-mapped segments of up to a
+ * gigabyte, so outputs of any size can be cached.
+ *
+ * A file holds the bucketing the series were resampled to, the decomposition
+ * graph (node ids, labels, series keys and measurement series), the resampled
+ * series of the inclusion graph nodes and the edges of the causality graph
+ * and of the pruned graph. Other node properties and the metrics of the run
+ * are not stored.
+ */
+public class ResultCache {
+
+	private static final int MAGIC = 0x52434131; // RCA1
+	private static final int VERSION = 5;
+	private static final String EXTENSION = ".rca";
+
+	// The size of the mapped segments; a single buffer can map at most 2 GB
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	// FIELDS
+
+	private File directory;
+
+	// CONSTRUCTORS
+
+	public ResultCache(File directory) {
+		this.directory = directory;
+	}
+
+	// GETTERS AND SETTERS
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the file that holds (or would hold) the output for the event log
+	 * with the specified fingerprint and the parameters.
+	 */
+	public File getFile(String logFingerprint, RootCauseAnalysisParameters parameters) {
+		return new File(directory, logFingerprint + "-" + FingerprintUtils.fingerprint(parameters) + EXTENSION);
+	}
+
+	// METHODS
+
+	/**
+	 * Loads the output for the event log with the specified fingerprint and
+	 * the parameters, or returns null when it is not cached.
+	 *
+	 * @throws IOException
+	 *             when the cached file cannot be read or is corrupt.
+	 */
+	public RootCauseAnalysisOutput load(String logFingerprint, RootCauseAnalysisParameters parameters)
+			throws IOException {
+		File file = getFile(logFingerprint, parameters);
+		if (!file.isFile())
+			return null;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return read(new MappedInput(channel, SEGMENT_SIZE));
+		} catch (RuntimeException e) {
+			// Buffer underflows and invalid indices of truncated or corrupt files
+			throw new IOException("Corrupt cache file " + file, e);
+		}
+	}
+
+	/**
+	 * Stores the output for the event log with the specified fingerprint and
+	 * the parameters. The file is written next to its final location and then
+	 * moved, so readers never see a partially written file.
+	 */
+	public void store(String logFingerprint, RootCauseAnalysisParameters parameters, RootCauseAnalysisOutput output)
+			throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create cache directory " + directory);
+
+		File file = getFile(logFingerprint, parameters);
+		File temporary = File.createTempFile(logFingerprint, ".tmp", directory);
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+				write(out, output);
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	/*
+	 * Writing. Nodes of the decomposition graph are written in the order of its
+	 * ancestry index, which is also the order of the inclusion graph nodes, so
+	 * both graphs can refer to nodes by the same index.
+	 */
+
+	private static void write(DataOutputStream out, RootCauseAnalysisOutput output) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		EpochBucketing bucketing = output.getBucketing();
+		writeString(out, bucketing.getZone().getId());
+		out.writeLong(bucketing.getWidth());
+		writeString(out, bucketing.getUnit() == null ? null : bucketing.getUnit().name());
+
+		Graph decompositionGraph = output.getDecompositionGraph();
+		AncestryIndex index = decompositionGraph.getAncestryIndex();
+		out.writeInt(index.size());
+		for (int i = 0; i < index.size(); i++) {
+			Node node = index.getNode(i);
+			out.writeLong(node.getId().getMostSignificantBits());
+			out.writeLong(node.getId().getLeastSignificantBits());
+			writeString(out, node.getLabel());
+			writeString(out, (String) node.getProperty(Properties.KEY_SERIESKEY));
+			writeTimeSeries(out, (TimeSeries) node.getProperty(Properties.KEY_TIMESERIES));
+		}
+
+		out.writeInt(decompositionGraph.getEdges().size());
+		for (Edge edge : decompositionGraph.getEdges()) {
+			out.writeInt(index.indexOf(edge.getSource()));
+			out.writeInt(index.indexOf(edge.getTarget()));
+		}
+
+		InclusionGraph inclusionGraph = output.getImplicitInclusionGraph();
+		ObjectIntHashMap<Node> inclusionIndices = new ObjectIntHashMap<Node>(inclusionGraph.size());
+		for (int i = 0; i < inclusionGraph.size(); i++) {
+			Node node = inclusionGraph.getNode(i);
+			inclusionIndices.put(node, i);
+			writeRegularTimeSeries(out, (RegularTimeSeries) node.getProperty(Properties.KEY_REGULARTIMESERIES));
+		}
+
+		Graph causalityGraph = output.getCausalityGraph();
+		out.writeInt(causalityGraph.getEdges().size());
+		for (Edge edge : causalityGraph.getEdges()) {
+			out.writeInt(inclusionIndices.getIfAbsent(edge.getSource(), -1));
+			out.writeInt(inclusionIndices.getIfAbsent(edge.getTarget(), -1));
+		}
+
+		// -1 when all candidate pairs were tested
+		Graph prunedGraph = output.getPrunedGraph();
+		out.writeInt(prunedGraph == null ? -1 : prunedGraph.getEdges().size());
+		if (prunedGraph != null) {
+			for (Edge edge : prunedGraph.getEdges()) {
+				out.writeInt(inclusionIndices.getIfAbsent(edge.getSource(), -1));
+				out.writeInt(inclusionIndices.getIfAbsent(edge.getTarget(), -1));
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeTimeSeries(DataOutputStream out, TimeSeries series) throws IOException {
+		if (series == null) {
+			out.writeInt(-1);
+			return;
+		}
+		int n = series.getItemCount();
+		out.writeInt(n);
+		writeString(out, series.getKey().toString());
+		writeString(out, series.getDescription());
+		for (int i = 0; i < n; i++)
+			out.writeLong(series.getTimePeriod(i).getFirstMillisecond());
+		for (int i = 0; i < n; i++) {
+			Number value = series.getValue(i);
+			out.writeDouble(value == null ? Double.NaN : value.doubleValue());
+		}
+	}
+
+	private static void writeRegularTimeSeries(DataOutputStream out, RegularTimeSeries series) throws IOException {
+		if (series == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(series.size());
+		writeString(out, series.getDescription());
+		out.writeLong(series.getStart());
+		double[] values = series.getBackingArray();
+		for (int i = series.getOffset(); i < series.getOffset() + series.size(); i++)
+			out.writeDouble(values[i]);
+
+		BitSet validity = series.getValidity();
+		long[] words = validity == null ? null
+				: validity.get(series.getOffset(), series.getOffset() + series.size()).toLongArray();
+		out.writeInt(words == null ? -1 : words.length);
+		if (words != null)
+			for (long word : words)
+				out.writeLong(word);
+	}
+
+	/*
+	 * Reading.
+	 */
+
+	private static RootCauseAnalysisOutput read(MappedInput in) throws IOException {
+		if (in.getInt() != MAGIC || in.getInt() != VERSION)
+			throw new IOException("Unknown cache file format");
+
+		EpochBucketing bucketing = readBucketing(in);
+
+		Graph decompositionGraph = new Graph();
+		Node[] nodes = new Node[in.getInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			UUID id = new UUID(in.getLong(), in.getLong());
+			Node node = new Node(readString(in));
+			node.setId(id);
+			String key = readString(in);
+			if (key != null)
+				node.setProperty(Properties.KEY_SERIESKEY, key);
+			TimeSeries series = readTimeSeries(in);
+			if (series != null)
+				node.setProperty(Properties.KEY_TIMESERIES, series);
+			nodes[i] = decompositionGraph.addNode(node);
+		}
+
+		int edges = in.getInt();
+		for (int e = 0; e < edges; e++)
+			decompositionGraph.addEdge(new Edge(nodes[in.getInt()], nodes[in.getInt()]));
+
+		// The restored inclusion graph may order its nodes differently; map them by their origin
+		InclusionGraph inclusionGraph = new InclusionGraph(decompositionGraph);
+		AncestryIndex index = decompositionGraph.getAncestryIndex();
+		Node[] inclusionNodes = new Node[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			inclusionNodes[i] = inclusionGraph.getNode(index.indexOf(nodes[i]));
+			inclusionNodes[i].getProperties().remove(Properties.KEY_TIMESERIES);
+			inclusionNodes[i].setProperty(Properties.KEY_REGULARTIMESERIES, readRegularTimeSeries(in, bucketing));
+		}
+
+		Graph causalityGraph = new Graph();
+		int causalEdges = in.getInt();
+		for (int e = 0; e < causalEdges; e++) {
+			Node source = inclusionNodes[in.getInt()];
+			Node target = inclusionNodes[in.getInt()];
+			causalityGraph.addNode(source);
+			causalityGraph.addNode(target);
+			causalityGraph.addEdge(new Edge(source, target));
+		}
+
+		Graph prunedGraph = null;
+		int prunedEdges = in.getInt();
+		if (prunedEdges >= 0) {
+			prunedGraph = new Graph();
+			for (int e = 0; e < prunedEdges; e++) {
+				Node source = inclusionNodes[in.getInt()];
+				Node target = inclusionNodes[in.getInt()];
+				prunedGraph.addNode(source);
+				prunedGraph.addNode(target);
+				prunedGraph.addEdge(new Edge(source, target));
+			}
+		}
+
+		RootCauseAnalysisOutput output = new RootCauseAnalysisOutput();
+		output.setDecompositionGraph(decompositionGraph);
+		output.setInclusionGraph(inclusionGraph);
+		output.setCausalityGraph(causalityGraph);
+		output.setPrunedGraph(prunedGraph);
+		output.setBucketing(bucketing);
+		return output;
+	}
+
+	private static EpochBucketing readBucketing(MappedInput in) throws IOException {
+		String zone = readString(in);
+		long width = in.getLong();
+		String unit = readString(in);
+		try {
+			if (unit == null)
+				return EpochBucketing.ofWidth(width, ZoneId.of(zone));
+			return EpochBucketing.of(ChronoUnit.valueOf(unit), ZoneId.of(zone));
+		} catch (DateTimeException | IllegalArgumentException e) {
+			throw new IOException("Unknown bucketing " + unit + " " + width + " in " + zone, e);
+		}
+	}
+
+	private static String readString(MappedInput in) throws IOException {
+		int length = in.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static TimeSeries readTimeSeries(MappedInput in) throws IOException {
+		int n = in.getInt();
+		if (n < 0)
+			return null;
+		TimeSeries series = new TimeSeries(readString(in));
+		series.setDescription(readString(in));
+
+		long[] times = new long[n];
+		double[] values = new double[n];
+		in.get(times);
+		in.get(values);
+
+		// Items are stored in order, so each is appended without searching
+		for (int i = 0; i < n; i++)
+			series.add(new TimeSeriesDataItem(new FixedMillisecond(times[i]), values[i]), false);
+		return series;
+	}
+
+	private static RegularTimeSeries readRegularTimeSeries(MappedInput in, EpochBucketing bucketing)
+			throws IOException {
+		int n = in.getInt();
+		if (n < 0)
+			return null;
+		String description = readString(in);
+		long start = in.getLong();
+
+		double[] values = new double[n];
+		in.get(values);
+
+		int words = in.getInt();
+		BitSet validity = null;
+		if (words >= 0) {
+			long[] bits = new long[words];
+			in.get(bits);
+			validity = BitSet.valueOf(bits);
+		}
+
+		return new RegularTimeSeries(description, bucketing, start, values, validity);
+	}
+
+	/**
+	 * Reads a file through memory-mapped segments. The next segment is mapped
+	 * from the current position when the current one has fewer bytes left
+	 * than a read needs; arrays are read across segments. Reads beyond the end
+	 * of the file throw a {@link BufferUnderflowException}.
+	 */
+	private static class MappedInput {
+
+		private final FileChannel channel;
+		private final long size;
+		private final int segmentSize;
+
+		// The mapped segment and the file position at which it starts
+		private MappedByteBuffer buffer;
+		private long start;
+
+		public MappedInput(FileChannel channel, int segmentSize) throws IOException {
+			this.channel = channel;
+			this.segmentSize = segmentSize;
+			size = channel.size();
+			map(0);
+		}
+
+		public int getInt() throws IOException {
+			require(4);
+			return buffer.getInt();
+		}
+
+		public long getLong() throws IOException {
+			require(8);
+			return buffer.getLong();
+		}
+
+		public void get(byte[] bytes) throws IOException {
+			for (int i = 0; i < bytes.length;) {
+				require(1);
+				int n = Math.min(bytes.length - i, buffer.remaining());
+				buffer.get(bytes, i, n);
+				i += n;
+			}
+		}
+
+		public void get(long[] values) throws IOException {
+			for (int i = 0; i < values.length;) {
+				require(8);
+				int n = Math.min(values.length - i, buffer.remaining() / 8);
+				buffer.asLongBuffer().get(values, i, n);
+				buffer.position(buffer.position() + 8 * n);
+				i += n;
+			}
+		}
+
+		public void get(double[] values) throws IOException {
+			for (int i = 0; i < values.length;) {
+				require(8);
+				int n = Math.min(values.length - i, buffer.remaining() / 8);
+				buffer.asDoubleBuffer().get(values, i, n);
+				buffer.position(buffer.position() + 8 * n);
+				i += n;
+			}
+		}
+
+		// Maps the next segment when the current one holds fewer than the specified number of bytes
+		private void require(int bytes) throws IOException {
+			if (buffer.remaining() >= bytes)
+				return;
+			long position = start + buffer.position();
+			if (size - position < bytes)
+				throw new BufferUnderflowException();
+			map(position);
+		}
+
+		private void map(long position) throws IOException {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+			start = position;
+		}
+
+	}
+
+}
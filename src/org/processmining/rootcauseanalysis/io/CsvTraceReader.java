@@ -0,0 +1,176 @@
+package org.processmining.rootcauseanalysis.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XTrace;
+
+/**
+ * Reads the traces of an event log stored as CSV, one event per row. The first
+ * row holds the column names, which are used as attribute keys: the case id
+ * column is "case:concept:name" and the timestamp column is "time:timestamp",
+ * as in XES. Other columns starting with "case:" become trace attributes
+ * (without the prefix); all other columns become event attributes.
+ *
+ * The rows of a case must be consecutive, so only the case that is being read
+ * is held in memory. Timestamps are parsed as xs:dateTime (ISO 8601) values;
+ * rows without a valid timestamp are dropped. Values may be quoted with double
+ * quotes, but cannot contain line breaks.
+ */
+public class CsvTraceReader implements TraceReader {
+
+	public static final String COLUMN_CASE = "case:concept:name";
+	public static final String COLUMN_TIMESTAMP = "time:timestamp";
+
+	private static final String PREFIX_CASE = "case:";
+
+	// FIELDS
+
+	private final BufferedReader reader;
+	private final char separator;
+	private final XFactory factory;
+	private final String[] columns;
+	private final int caseColumn;
+	private final int timestampColumn;
+	private long removedEvents;
+
+	// The first row of the next case, read ahead
+	private String[] pending;
+
+	// CONSTRUCTORS
+
+	public CsvTraceReader(InputStream input, char separator) throws IOException {
+		this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+		this.separator = separator;
+		factory = XFactoryRegistry.instance().currentDefault();
+
+		String header = reader.readLine();
+		if (header == null)
+			throw new IOException("The CSV file is empty");
+		columns = split(header);
+		caseColumn = indexOf(columns, COLUMN_CASE);
+		timestampColumn = indexOf(columns, COLUMN_TIMESTAMP);
+		if (caseColumn < 0 || timestampColumn < 0)
+			throw new IOException("The CSV file needs the columns " + COLUMN_CASE + " and " + COLUMN_TIMESTAMP);
+		pending = readRow();
+	}
+
+	// GETTERS AND SETTERS
+
+	@Override
+	public long getRemovedEvents() {
+		return removedEvents;
+	}
+
+	// METHODS
+
+	@Override
+	public XTrace read() throws IOException {
+		if (pending == null)
+			return null;
+
+		String caseId = pending[caseColumn];
+		XTrace trace = factory.createTrace();
+		trace.getAttributes().put("concept:name", factory.createAttributeLiteral("concept:name", caseId, null));
+
+		String[] row = pending;
+		while (row != null && row[caseColumn].equals(caseId)) {
+			addEvent(trace, row);
+			row = readRow();
+		}
+
+		// The first row of the next case, or null at the end of the file
+		pending = row;
+		return trace;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private void addEvent(XTrace trace, String[] row) {
+		XEvent event = factory.createEvent();
+		try {
+			event.getAttributes().put(COLUMN_TIMESTAMP, factory.createAttributeTimestamp(COLUMN_TIMESTAMP,
+					XesTraceReader.parseDate(row[timestampColumn]), null));
+		} catch (DateTimeParseException e) {
+			// Drop rows without a (valid) timestamp here, instead of filtering a copy of the log
+			removedEvents++;
+			return;
+		}
+
+		for (int c = 0; c < columns.length; c++) {
+			if (c == caseColumn || c == timestampColumn || row[c].isEmpty())
+				continue;
+			if (columns[c].startsWith(PREFIX_CASE)) {
+				String key = columns[c].substring(PREFIX_CASE.length());
+				trace.getAttributes().put(key, factory.createAttributeLiteral(key, row[c], null));
+			} else {
+				event.getAttributes().put(columns[c], factory.createAttributeLiteral(columns[c], row[c], null));
+			}
+		}
+		trace.add(event);
+	}
+
+	// Reads the next (non-empty) row, padded to the number of columns
+	private String[] readRow() throws IOException {
+		String line;
+		do {
+			line = reader.readLine();
+			if (line == null)
+				return null;
+		} while (line.isEmpty());
+
+		String[] values = split(line);
+		String[] row = new String[columns.length];
+		for (int c = 0; c < row.length; c++)
+			row[c] = c < values.length ? values[c] : "";
+		return row;
+	}
+
+	private String[] split(String line) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					value.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == separator) {
+				values.add(value.toString().trim());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		values.add(value.toString().trim());
+		return values.toArray(new String[values.size()]);
+	}
+
+	private static int indexOf(String[] columns, String column) {
+		for (int c = 0; c < columns.length; c++)
+			if (columns[c].equals(column))
+				return c;
+		return -1;
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.processmining.rootcauseanalysis.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.deckfour.xes.model.XTrace;
+
+/**
+ * Reads the traces of an event log one at a time, so a log can be processed
+ * without materializing it as a whole. Events without a timestamp are dropped
+ * while reading.
+ */
+public interface TraceReader extends Closeable {
+
+	/**
+	 * Returns the next trace, or null when all traces have been read.
+	 *
+	 * @throws IOException
+	 *             when the log cannot be read or is malformed.
+	 */
+	XTrace read() throws IOException;
+
+	/**
+	 * Returns the number of events dropped so far because they have no
+	 * timestamp.
+	 */
+	long getRemovedEvents();
+
+}
@@ -0,0 +1,44 @@
+package org.processmining.rootcauseanalysis.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens trace readers for event log files.
+ */
+public class TraceReaders {
+
+	/**
+	 * Opens a trace reader for the file, by its extension: XES (.xes) or CSV
+	 * (.csv, comma separated), optionally gzipped (.gz).
+	 *
+	 * @throws IOException
+	 *             when the file cannot be opened or has an unknown format.
+	 */
+	public static TraceReader open(File file) throws IOException {
+		String name = file.getName().toLowerCase();
+		boolean gzipped = name.endsWith(".gz");
+		if (gzipped)
+			name = name.substring(0, name.length() - ".gz".length());
+
+		if (!name.endsWith(".xes") && !name.endsWith(".csv"))
+			throw new IOException("Unknown event log format: " + file.getName());
+
+		InputStream input = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		try {
+			if (gzipped)
+				input = new GZIPInputStream(input, 1 << 16);
+			if (name.endsWith(".xes"))
+				return new XesTraceReader(input);
+			return new CsvTraceReader(input, ',');
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+package org.processmining.rootcauseanalysis.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.model.XAttributable;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XTrace;
+
+/**
+ * Reads the traces of an XES document with a streaming (StAX) parser. Only the
+ * trace that is being read is held in memory.
+ *
+ * Trace and event attributes of the basic types (string, date, int, float,
+ * boolean, id) are read; ids are read as strings. Log attributes, globals,
+ * extensions, classifiers, meta-attributes and list or container attributes
+ * are skipped, since the analysis does not use them.
+ */
+public class XesTraceReader implements TraceReader {
+
+	private static final String KEY_TIMESTAMP = "time:timestamp";
+
+	// FIELDS
+
+	private final InputStream input;
+	private final XMLStreamReader reader;
+	private final XFactory factory;
+	private long removedEvents;
+
+	// CONSTRUCTORS
+
+	public XesTraceReader(InputStream input) throws IOException {
+		this.input = input;
+		factory = XFactoryRegistry.instance().currentDefault();
+		try {
+			XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+			inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			reader = inputFactory.createXMLStreamReader(input);
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot read the XES document", e);
+		}
+	}
+
+	// GETTERS AND SETTERS
+
+	@Override
+	public long getRemovedEvents() {
+		return removedEvents;
+	}
+
+	// METHODS
+
+	@Override
+	public XTrace read() throws IOException {
+		try {
+			while (reader.hasNext()) {
+				int type = reader.next();
+				if (type != XMLStreamConstants.START_ELEMENT)
+					continue;
+				String name = reader.getLocalName();
+				if (name.equals("trace"))
+					return readTrace();
+				// Everything on the log level except traces is skipped, including nested attributes
+				if (!name.equals("log"))
+					skipElement();
+			}
+			return null;
+		} catch (XMLStreamException e) {
+			throw new IOException("Malformed XES document", e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			input.close();
+		}
+	}
+
+	private XTrace readTrace() throws XMLStreamException {
+		XTrace trace = factory.createTrace();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (reader.getLocalName().equals("event")) {
+				XEvent event = factory.createEvent();
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+					readAttribute(event);
+				// Drop events without a timestamp here, instead of filtering a copy of the log
+				if (event.getAttributes().get(KEY_TIMESTAMP) != null)
+					trace.add(event);
+				else
+					removedEvents++;
+			} else {
+				readAttribute(trace);
+			}
+		}
+		return trace;
+	}
+
+	// Reads the attribute at the current start element, up to and including its end element
+	private void readAttribute(XAttributable attributable) throws XMLStreamException {
+		String type = reader.getLocalName();
+		String key = reader.getAttributeValue(null, "key");
+		String value = reader.getAttributeValue(null, "value");
+		skipElement();
+
+		if (key == null || value == null)
+			return;
+
+		XAttribute attribute;
+		try {
+			if (type.equals("string") || type.equals("id"))
+				attribute = factory.createAttributeLiteral(key, value, null);
+			else if (type.equals("date"))
+				attribute = factory.createAttributeTimestamp(key, parseDate(value), null);
+			else if (type.equals("int"))
+				attribute = factory.createAttributeDiscrete(key, Long.parseLong(value.trim()), null);
+			else if (type.equals("float"))
+				attribute = factory.createAttributeContinuous(key, Double.parseDouble(value.trim()), null);
+			else if (type.equals("boolean"))
+				attribute = factory.createAttributeBoolean(key, Boolean.parseBoolean(value.trim()), null);
+			else
+				return;
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			// Malformed values are skipped, like events without a (valid) timestamp
+			return;
+		}
+		attributable.getAttributes().put(key, attribute);
+	}
+
+	// Skips the current start element, its content and its end element
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int type = reader.next();
+			if (type == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (type == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	/**
+	 * Parses an xs:dateTime value; values without a time zone are taken as
+	 * UTC.
+	 */
+	static Date parseDate(String value) {
+		String trimmed = value.trim();
+		try {
+			return Date.from(OffsetDateTime.parse(trimmed).toInstant());
+		} catch (DateTimeParseException e) {
+			return Date.from(LocalDateTime.parse(trimmed).toInstant(ZoneOffset.UTC));
+		}
+	}
+
+}
@@ -0,0 +1,575 @@
+package org.processmining.rootcauseanalysis.models;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters of a single root cause analysis run. The run is split
+ * in consecutive stages (pre-processing, decomposition, ...); for each stage
+ * the wall-clock duration, the heap usage at its end, the garbage collections
+ * during the stage and (where the JVM supports it) the bytes allocated by all
+ * threads are recorded. The counters may be updated concurrently by the worker
+ * threads of the causality algorithms.
+ *
+ * The allocated bytes are summed over the live threads of the JVM, so they
+ * include other activity in the JVM during the stage. Worker threads that
+ * terminate during a stage are only counted when they were created by
+ * {@link #getWorkerThreadFactory()}, which all thread pools of the analysis
+ * use.
+ *
+ * The metrics can be exported as JSON with {@link #toJSON()} to compare runs.
+ */
+public class RootCauseAnalysisMetrics {
+
+	// The bytes allocated by worker threads that terminated
+	private static final AtomicLong terminatedWorkerAllocatedBytes = new AtomicLong();
+
+	private static final ForkJoinWorkerThreadFactory WORKER_THREAD_FACTORY = new ForkJoinWorkerThreadFactory() {
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			return new WorkerThread(pool);
+		}
+	};
+
+	// FIELDS
+
+	private List<Stage> stages;
+	private Stage currentStage;
+
+	// Series
+	private final AtomicLong series = new AtomicLong();
+	private final AtomicLong resampledSeries = new AtomicLong();
+	private final AtomicLong unresampledSeries = new AtomicLong();
+
+	// Candidate pairs
+	private final AtomicLong candidatePairs = new AtomicLong();
+	private final AtomicLong testedPairs = new AtomicLong();
+	private final AtomicLong pairsRejectedByOverlap = new AtomicLong();
+	private final AtomicLong pairsRejectedBySampleSize = new AtomicLong();
+	private final AtomicLong causalPairs = new AtomicLong();
+	private final AtomicLong reusedPairs = new AtomicLong();
+	private final AtomicLong prunedPairs = new AtomicLong();
+	private final AtomicLong untestedPairs = new AtomicLong();
+
+	// Screening
+	private final AtomicLong screenedPairs = new AtomicLong();
+	private final AtomicLong pairsRejectedByScreening = new AtomicLong();
+	private final AtomicLong testsRejectedByScreening = new AtomicLong();
+
+	// Granger tests
+	private final AtomicLong grangerTests = new AtomicLong();
+	private final AtomicLong testedLags = new AtomicLong();
+	private final AtomicLong singularLags = new AtomicLong();
+	private final AtomicLong restrictedFitHits = new AtomicLong();
+	private final AtomicLong restrictedFitMisses = new AtomicLong();
+
+	// Sparse regressions
+	private final AtomicLong fittedModels = new AtomicLong();
+	private final AtomicLong lassoPasses = new AtomicLong();
+
+	// CONSTRUCTORS
+
+	public RootCauseAnalysisMetrics() {
+		stages = new ArrayList<Stage>();
+	}
+
+	// GETTERS AND SETTERS
+
+	public List<Stage> getStages() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	/**
+	 * The total duration of all (ended) stages, in milliseconds.
+	 */
+	public long getDuration() {
+		long duration = 0;
+		for (Stage stage : stages)
+			duration += stage.getDuration();
+		return duration;
+	}
+
+	/**
+	 * The number of time series (nodes) in the decomposition graph.
+	 */
+	public long getSeries() {
+		return series.get();
+	}
+
+	public void addSeries(long delta) {
+		series.addAndGet(delta);
+	}
+
+	public long getResampledSeries() {
+		return resampledSeries.get();
+	}
+
+	public void addResampledSeries(long delta) {
+		resampledSeries.addAndGet(delta);
+	}
+
+	/**
+	 * The number of series that could not be resampled (too sparse), and
+	 * therefore are never tested.
+	 */
+	public long getUnresampledSeries() {
+		return unresampledSeries.get();
+	}
+
+	public void addUnresampledSeries(long delta) {
+		unresampledSeries.addAndGet(delta);
+	}
+
+	/**
+	 * The number of candidate pairs in the inclusion graph.
+	 */
+	public long getCandidatePairs() {
+		return candidatePairs.get();
+	}
+
+	public void addCandidatePairs(long delta) {
+		candidatePairs.addAndGet(delta);
+	}
+
+	/**
+	 * The number of candidate pairs evaluated by a causality algorithm,
+	 * including the pairs that were rejected before testing.
+	 */
+	public long getTestedPairs() {
+		return testedPairs.get();
+	}
+
+	public void addTestedPairs(long delta) {
+		testedPairs.addAndGet(delta);
+	}
+
+	/**
+	 * The number of pairs rejected because the series do not overlap in time
+	 * (or could not be resampled).
+	 */
+	public long getPairsRejectedByOverlap() {
+		return pairsRejectedByOverlap.get();
+	}
+
+	public void addPairsRejectedByOverlap(long delta) {
+		pairsRejectedByOverlap.addAndGet(delta);
+	}
+
+	/**
+	 * The number of pairs rejected because their overlapping parts are shorter
+	 * than the minimum sample size.
+	 */
+	public long getPairsRejectedBySampleSize() {
+		return pairsRejectedBySampleSize.get();
+	}
+
+	public void addPairsRejectedBySampleSize(long delta) {
+		pairsRejectedBySampleSize.addAndGet(delta);
+	}
+
+	/**
+	 * The number of pairs found to be causally related.
+	 */
+	public long getCausalPairs() {
+		return causalPairs.get();
+	}
+
+	public void addCausalPairs(long delta) {
+		causalPairs.addAndGet(delta);
+	}
+
+	/**
+	 * The number of pairs of which the result of a previous analysis was
+	 * reused instead of testing them again (incremental analysis only).
+	 */
+	public long getReusedPairs() {
+		return reusedPairs.get();
+	}
+
+	public void addReusedPairs(long delta) {
+		reusedPairs.addAndGet(delta);
+	}
+
+	/**
+	 * The number of candidate pairs that were not tested because the
+	 * hierarchical search did not descend to them.
+	 */
+	public long getPrunedPairs() {
+		return prunedPairs.get();
+	}
+
+	public void addPrunedPairs(long delta) {
+		prunedPairs.addAndGet(delta);
+	}
+
+	/**
+	 * The number of candidate pairs that were not tested because the anytime
+	 * search ran out of budget or was cancelled.
+	 */
+	public long getUntestedPairs() {
+		return untestedPairs.get();
+	}
+
+	public void addUntestedPairs(long delta) {
+		untestedPairs.addAndGet(delta);
+	}
+
+	/**
+	 * The number of pairs that went through the screening.
+	 */
+	public long getScreenedPairs() {
+		return screenedPairs.get();
+	}
+
+	public void addScreenedPairs(long delta) {
+		screenedPairs.addAndGet(delta);
+	}
+
+	/**
+	 * The number of screened pairs for which no Granger test was executed.
+	 */
+	public long getPairsRejectedByScreening() {
+		return pairsRejectedByScreening.get();
+	}
+
+	public void addPairsRejectedByScreening(long delta) {
+		pairsRejectedByScreening.addAndGet(delta);
+	}
+
+	/**
+	 * The number of (shifted) Granger tests skipped by the screening.
+	 */
+	public long getTestsRejectedByScreening() {
+		return testsRejectedByScreening.get();
+	}
+
+	public void addTestsRejectedByScreening(long delta) {
+		testsRejectedByScreening.addAndGet(delta);
+	}
+
+	/**
+	 * The number of Granger tests executed, where a test covers all lags of
+	 * one (shifted) pair of series.
+	 */
+	public long getGrangerTests() {
+		return grangerTests.get();
+	}
+
+	public void addGrangerTests(long delta) {
+		grangerTests.addAndGet(delta);
+	}
+
+	/**
+	 * The number of lags for which a test result was evaluated.
+	 */
+	public long getTestedLags() {
+		return testedLags.get();
+	}
+
+	public void addTestedLags(long delta) {
+		testedLags.addAndGet(delta);
+	}
+
+	/**
+	 * The number of lags skipped because the regression was singular.
+	 */
+	public long getSingularLags() {
+		return singularLags.get();
+	}
+
+	public void addSingularLags(long delta) {
+		singularLags.addAndGet(delta);
+	}
+
+	/**
+	 * The number of Granger tests that reused a cached restricted model fit.
+	 */
+	public long getRestrictedFitHits() {
+		return restrictedFitHits.get();
+	}
+
+	public void addRestrictedFitHits(long delta) {
+		restrictedFitHits.addAndGet(delta);
+	}
+
+	/**
+	 * The number of restricted model fits computed for the cache.
+	 */
+	public long getRestrictedFitMisses() {
+		return restrictedFitMisses.get();
+	}
+
+	public void addRestrictedFitMisses(long delta) {
+		restrictedFitMisses.addAndGet(delta);
+	}
+
+	/**
+	 * The number of targets for which a sparse regression on all candidate
+	 * causes was fitted.
+	 */
+	public long getFittedModels() {
+		return fittedModels.get();
+	}
+
+	public void addFittedModels(long delta) {
+		fittedModels.addAndGet(delta);
+	}
+
+	/**
+	 * The number of coordinate descent passes over the causes of a target,
+	 * summed over the regularization paths.
+	 */
+	public long getLassoPasses() {
+		return lassoPasses.get();
+	}
+
+	public void addLassoPasses(long delta) {
+		lassoPasses.addAndGet(delta);
+	}
+
+	// METHODS
+
+	/**
+	 * Ends the current stage (if any) and starts a new stage with the
+	 * specified name.
+	 */
+	public void startStage(String name) {
+		endStage();
+		currentStage = new Stage(name);
+		currentStage.start();
+	}
+
+	/**
+	 * Ends the current stage, if any.
+	 */
+	public void endStage() {
+		if (currentStage == null)
+			return;
+		currentStage.end();
+		stages.add(currentStage);
+		currentStage = null;
+	}
+
+	/**
+	 * Returns the factory for the worker threads of the thread pools of the
+	 * analysis, so their allocations are still counted after they terminate.
+	 */
+	public static ForkJoinWorkerThreadFactory getWorkerThreadFactory() {
+		return WORKER_THREAD_FACTORY;
+	}
+
+	// The bytes allocated by the thread, or -1 when the JVM cannot measure them
+	private static long getThreadAllocatedBytes(long id) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled())
+				return sunThreads.getThreadAllocatedBytes(id);
+		}
+		return -1;
+	}
+
+	public String toJSON() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"duration\": ").append(getDuration()).append(",\n");
+		json.append("  \"stages\": [");
+		for (int i = 0; i < stages.size(); i++) {
+			Stage stage = stages.get(i);
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    {\"name\": ").append(quote(stage.getName()));
+			json.append(", \"duration\": ").append(stage.getDuration());
+			json.append(", \"heapUsed\": ").append(stage.getHeapUsed());
+			json.append(", \"heapCommitted\": ").append(stage.getHeapCommitted());
+			json.append(", \"allocatedBytes\": ").append(stage.getAllocatedBytes());
+			json.append(", \"gcCount\": ").append(stage.getGcCount());
+			json.append(", \"gcTime\": ").append(stage.getGcTime()).append("}");
+		}
+		json.append(stages.isEmpty() ? "],\n" : "\n  ],\n");
+		json.append("  \"counters\": {\n");
+		json.append("    \"series\": ").append(getSeries()).append(",\n");
+		json.append("    \"resampledSeries\": ").append(getResampledSeries()).append(",\n");
+		json.append("    \"unresampledSeries\": ").append(getUnresampledSeries()).append(",\n");
+		json.append("    \"candidatePairs\": ").append(getCandidatePairs()).append(",\n");
+		json.append("    \"testedPairs\": ").append(getTestedPairs()).append(",\n");
+		json.append("    \"pairsRejectedByOverlap\": ").append(getPairsRejectedByOverlap()).append(",\n");
+		json.append("    \"pairsRejectedBySampleSize\": ").append(getPairsRejectedBySampleSize()).append(",\n");
+		json.append("    \"causalPairs\": ").append(getCausalPairs()).append(",\n");
+		json.append("    \"reusedPairs\": ").append(getReusedPairs()).append(",\n");
+		json.append("    \"prunedPairs\": ").append(getPrunedPairs()).append(",\n");
+		json.append("    \"untestedPairs\": ").append(getUntestedPairs()).append(",\n");
+		json.append("    \"screenedPairs\": ").append(getScreenedPairs()).append(",\n");
+		json.append("    \"pairsRejectedByScreening\": ").append(getPairsRejectedByScreening()).append(",\n");
+		json.append("    \"testsRejectedByScreening\": ").append(getTestsRejectedByScreening()).append(",\n");
+		json.append("    \"grangerTests\": ").append(getGrangerTests()).append(",\n");
+		json.append("    \"testedLags\": ").append(getTestedLags()).append(",\n");
+		json.append("    \"singularLags\": ").append(getSingularLags()).append(",\n");
+		json.append("    \"restrictedFitHits\": ").append(getRestrictedFitHits()).append(",\n");
+		json.append("    \"restrictedFitMisses\": ").append(getRestrictedFitMisses()).append(",\n");
+		json.append("    \"fittedModels\": ").append(getFittedModels()).append(",\n");
+		json.append("    \"lassoPasses\": ").append(getLassoPasses()).append("\n");
+		json.append("  }\n");
+		json.append("}");
+		return json.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		for (Stage stage : stages) {
+			string.append(string.length() == 0 ? "" : ", ");
+			string.append(stage.getName()).append(" ").append(stage.getDuration()).append(" ms");
+		}
+		return string.toString();
+	}
+
+	private static String quote(String string) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : string.toCharArray()) {
+			if (c == '"' || c == '\\')
+				quoted.append('\\').append(c);
+			else if (c < 0x20)
+				quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			else
+				quoted.append(c);
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * A single stage of a run. Durations and times are in milliseconds, sizes
+	 * in bytes; the allocated bytes (by all threads) are -1 when the JVM cannot
+	 * measure them.
+	 */
+	public static class Stage {
+
+		// FIELDS
+
+		private String name;
+		private long duration;
+		private long heapUsed;
+		private long heapCommitted;
+		private long allocatedBytes;
+		private long gcCount;
+		private long gcTime;
+
+		// CONSTRUCTORS
+
+		public Stage(String name) {
+			this.name = name;
+		}
+
+		// GETTERS AND SETTERS
+
+		public String getName() {
+			return name;
+		}
+
+		public long getDuration() {
+			return duration;
+		}
+
+		public long getHeapUsed() {
+			return heapUsed;
+		}
+
+		public long getHeapCommitted() {
+			return heapCommitted;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public long getGcCount() {
+			return gcCount;
+		}
+
+		public long getGcTime() {
+			return gcTime;
+		}
+
+		// METHODS
+
+		// Records the starting values; the differences are taken in end()
+		private void start() {
+			duration = -System.nanoTime();
+			allocatedBytes = -allocatedBytes();
+			gcCount = -gcCount();
+			gcTime = -gcTime();
+		}
+
+		private void end() {
+			duration = (duration + System.nanoTime()) / 1000000;
+			long allocated = allocatedBytes();
+			allocatedBytes = allocated < 0 || allocatedBytes > 0 ? -1 : allocatedBytes + allocated;
+			gcCount += gcCount();
+			gcTime += gcTime();
+
+			MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+			heapUsed = heap.getUsed();
+			heapCommitted = heap.getCommitted();
+		}
+
+		// The bytes allocated by the live threads and the terminated worker threads
+		private static long allocatedBytes() {
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if (!(threads instanceof com.sun.management.ThreadMXBean))
+				return -1;
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (!sunThreads.isThreadAllocatedMemorySupported() || !sunThreads.isThreadAllocatedMemoryEnabled())
+				return -1;
+
+			long allocated = terminatedWorkerAllocatedBytes.get();
+			// Threads that terminated since their ids were taken are -1
+			for (long bytes : sunThreads.getThreadAllocatedBytes(sunThreads.getAllThreadIds()))
+				allocated += Math.max(bytes, 0);
+			return allocated;
+		}
+
+		private static long gcCount() {
+			long count = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+				count += Math.max(gc.getCollectionCount(), 0);
+			return count;
+		}
+
+		private static long gcTime() {
+			long time = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+				time += Math.max(gc.getCollectionTime(), 0);
+			return time;
+		}
+
+	}
+
+	/**
+	 * A worker thread that adds the bytes it allocated to those of the
+	 * terminated workers when it terminates.
+	 */
+	private static class WorkerThread extends ForkJoinWorkerThread {
+
+		public WorkerThread(ForkJoinPool pool) {
+			super(pool);
+		}
+
+		@Override
+		protected void onTermination(Throwable exception) {
+			long allocated = getThreadAllocatedBytes(getId());
+			if (allocated > 0)
+				terminatedWorkerAllocatedBytes.addAndGet(allocated);
+			super.onTermination(exception);
+		}
+
+	}
+
+}
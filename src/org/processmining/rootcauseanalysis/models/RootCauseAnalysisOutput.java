@@ -1,14 +1,22 @@
 package org.processmining.rootcauseanalysis.models;
 
+import org.processmining.rootcauseanalysis.algorithms.causality.CausalityAlgorithm;
 import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.UntestedPairs;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
 
 public class RootCauseAnalysisOutput {
 
 	// FIELDS
 
 	private Graph decompositionGraph;
-	private Graph inclusionGraph;
+	private InclusionGraph inclusionGraph;
 	private Graph causalityGraph;
+	private Graph prunedGraph;
+	private UntestedPairs untestedPairs;
+	private RootCauseAnalysisMetrics metrics;
+	private EpochBucketing bucketing;
 
 	// CONSTRUCTORS
 
@@ -22,11 +30,19 @@ public class RootCauseAnalysisOutput {
 		this.decompositionGraph = decompositionGraph;
 	}
 
+	/**
+	 * Returns the inclusion graph as an explicit graph. The graph is expanded
+	 * from the implicit representation on the first call.
+	 */
 	public Graph getInclusionGraph() {
+		return inclusionGraph == null ? null : inclusionGraph.expand();
+	}
+
+	public InclusionGraph getImplicitInclusionGraph() {
 		return inclusionGraph;
 	}
 
-	public void setInclusionGraph(Graph inclusionGraph) {
+	public void setInclusionGraph(InclusionGraph inclusionGraph) {
 		this.inclusionGraph = inclusionGraph;
 	}
 
@@ -38,4 +54,62 @@ public class RootCauseAnalysisOutput {
 		this.causalityGraph = causalityGraph;
 	}
 
+	/**
+	 * The pairs below which the hierarchical search did not descend (see
+	 * {@link CausalityAlgorithm#getPrunedGraph()}), or null when all candidate
+	 * pairs were tested.
+	 */
+	public Graph getPrunedGraph() {
+		return prunedGraph;
+	}
+
+	public void setPrunedGraph(Graph prunedGraph) {
+		this.prunedGraph = prunedGraph;
+	}
+
+	/**
+	 * The candidate pairs of the inclusion graph that the anytime search did
+	 * not test (see {@link CausalityAlgorithm#getUntestedPairs()}), or null
+	 * when the causality graph is complete.
+	 */
+	public UntestedPairs getUntestedPairs() {
+		return untestedPairs;
+	}
+
+	public void setUntestedPairs(UntestedPairs untestedPairs) {
+		this.untestedPairs = untestedPairs;
+	}
+
+	/**
+	 * Whether the causality graph covers all candidate pairs, so the output
+	 * can be reused for the same log and parameters.
+	 */
+	public boolean isComplete() {
+		return untestedPairs == null;
+	}
+
+	/**
+	 * The per-stage timings and counters of the run that computed this output.
+	 */
+	public RootCauseAnalysisMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(RootCauseAnalysisMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * The bucketing (sampling rate) the series were resampled to, which
+	 * differs from the configured time period when it was selected
+	 * automatically.
+	 */
+	public EpochBucketing getBucketing() {
+		return bucketing;
+	}
+
+	public void setBucketing(EpochBucketing bucketing) {
+		this.bucketing = bucketing;
+	}
+
 }
@@ -0,0 +1,195 @@
+package org.processmining.rootcauseanalysis.models.graph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+/**
+ * Reachability index over a graph, used to answer ancestry queries in constant
+ * time. Every node gets a dense index. When the graph is a forest (every node
+ * has at most one parent, like the decomposition graph), nodes are labeled
+ * with pre- and post-order numbers and a node is an ancestor of another when
+ * its interval encloses the interval of the other. For any other graph, the
+ * transitive closure is stored as one bitset of descendants per node.
+ *
+ * The index is a snapshot; it does not reflect later changes to the graph.
+ */
+public class AncestryIndex {
+
+	// FIELDS
+
+	private Node[] nodes;
+	private ObjectIntHashMap<Node> indices;
+
+	// Interval labels (forest)
+	private int[] pre;
+	private int[] post;
+	private int[] parents;
+
+	// Transitive closure (general graphs)
+	private BitSet[] descendants;
+
+	// CONSTRUCTORS
+
+	public AncestryIndex(Graph graph) {
+		nodes = graph.getNodes().toArray(new Node[graph.getNodes().size()]);
+		indices = new ObjectIntHashMap<Node>(nodes.length);
+		for (int i = 0; i < nodes.length; i++)
+			indices.put(nodes[i], i);
+
+		if (!labelForest(graph))
+			computeClosure(graph);
+	}
+
+	// GETTERS AND SETTERS
+
+	public int size() {
+		return nodes.length;
+	}
+
+	public Node getNode(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * Returns the dense index of the specified node, or -1 when the node is not
+	 * part of the indexed graph.
+	 */
+	public int indexOf(Node node) {
+		return indices.getIfAbsent(node, -1);
+	}
+
+	public boolean isForest() {
+		return descendants == null;
+	}
+
+	/**
+	 * Returns the index of the parent of the node with the specified index, or
+	 * -1 for a root. Only available when the indexed graph is a forest.
+	 */
+	public int getParent(int index) {
+		if (parents == null)
+			throw new UnsupportedOperationException("Parents are only indexed for forests");
+		return parents[index];
+	}
+
+	// METHODS
+
+	/**
+	 * Checks whether there exists a path from the parent node to the child node
+	 * (see {@link Graph#ancestor(Node, Node)}).
+	 *
+	 * @param child
+	 *            The child node.
+	 * @param parent
+	 *            The parent node.
+	 * @return Whether or not there exists an ancestry relation.
+	 */
+	public boolean ancestor(Node child, Node parent) {
+		int c = indexOf(child);
+		int p = indexOf(parent);
+		return c >= 0 && p >= 0 && ancestor(c, p);
+	}
+
+	/**
+	 * Index-based variant of {@link #ancestor(Node, Node)}.
+	 */
+	public boolean ancestor(int child, int parent) {
+		if (descendants != null)
+			return descendants[parent].get(child);
+		return pre[parent] < pre[child] && post[child] < post[parent];
+	}
+
+	/**
+	 * Checks whether one of the two nodes is an ancestor of the other.
+	 */
+	public boolean related(int a, int b) {
+		return ancestor(a, b) || ancestor(b, a);
+	}
+
+	/**
+	 * Returns the number of (ancestor, descendant) pairs in the indexed graph.
+	 */
+	public long countAncestryPairs() {
+		long count = 0;
+		for (int i = 0; i < nodes.length; i++)
+			count += descendants != null ? descendants[i].cardinality() : (post[i] - pre[i] - 1) / 2;
+		return count;
+	}
+
+	/**
+	 * Assigns pre- and post-order labels by an iterative depth-first traversal
+	 * from the roots. Returns false when the graph turns out not to be a
+	 * forest.
+	 */
+	private boolean labelForest(Graph graph) {
+		for (Node node : nodes)
+			if (graph.getInDegree(node) > 1)
+				return false;
+
+		pre = new int[nodes.length];
+		post = new int[nodes.length];
+		parents = new int[nodes.length];
+		Arrays.fill(parents, -1);
+		int counter = 0;
+		int labeled = 0;
+
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		for (int root = 0; root < nodes.length; root++) {
+			if (graph.getInDegree(nodes[root]) > 0)
+				continue;
+
+			// Positive entries are entered, negative entries (~i) are left
+			stack.push(root);
+			while (!stack.isEmpty()) {
+				int i = stack.pop();
+				if (i < 0) {
+					post[~i] = counter++;
+					continue;
+				}
+				labeled++;
+				pre[i] = counter++;
+				stack.push(~i);
+				for (Edge edge : graph.getOutgoingEdges(nodes[i])) {
+					int c = indexOf(edge.getTarget());
+					if (c >= 0) {
+						parents[c] = i;
+						stack.push(c);
+					}
+				}
+			}
+		}
+
+		// Nodes on a cycle have no root and are never visited
+		if (labeled == nodes.length)
+			return true;
+
+		pre = null;
+		post = null;
+		parents = null;
+		return false;
+	}
+
+	private void computeClosure(Graph graph) {
+		descendants = new BitSet[nodes.length];
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		for (int p = 0; p < nodes.length; p++) {
+			BitSet reached = new BitSet(nodes.length);
+			stack.push(p);
+			while (!stack.isEmpty()) {
+				for (Edge edge : graph.getOutgoingEdges(nodes[stack.pop()])) {
+					int c = indexOf(edge.getTarget());
+					if (c >= 0 && !reached.get(c)) {
+						reached.set(c);
+						stack.push(c);
+					}
+				}
+			}
+			descendants[p] = reached;
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.processmining.rootcauseanalysis.models.graph;
 
+import java.util.Collections;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
@@ -17,12 +18,21 @@ public class Graph {
 	private UnifiedSet<Edge> edges;
 	private UnifiedMap<String, Object> properties;
 
+	// Adjacency indexes, kept in sync with the edge set
+	private UnifiedMap<Node, UnifiedSet<Edge>> incoming;
+	private UnifiedMap<Node, UnifiedSet<Edge>> outgoing;
+
+	// Reachability index, built on demand and dropped on every modification
+	private AncestryIndex ancestryIndex;
+
 	// CONSTRUCTORS
 
 	public Graph() {
 		id = UUID.randomUUID();
 		nodes = new UnifiedSet<Node>();
 		edges = new UnifiedSet<Edge>();
+		incoming = new UnifiedMap<Node, UnifiedSet<Edge>>();
+		outgoing = new UnifiedMap<Node, UnifiedSet<Edge>>();
 		setProperties(new UnifiedMap<String, Object>());
 	}
 
@@ -38,29 +48,82 @@ public class Graph {
 	}
 
 	public Node addNode(Node node) {
-		nodes.add(node);
+		if (nodes.add(node))
+			ancestryIndex = null;
 		return node;
 	}
 
+	/**
+	 * Removes the specified node from this graph, together with all edges in
+	 * which the node is either the source or the target node.
+	 * 
+	 * @param node
+	 *            The node to remove.
+	 * @return Whether or not the node was part of this graph.
+	 */
+	public boolean removeNode(Node node) {
+		for (Edge edge : getEdges(node))
+			removeEdge(edge);
+		incoming.remove(node);
+		outgoing.remove(node);
+		ancestryIndex = null;
+		return nodes.remove(node);
+	}
+
 	public Edge addEdge(Edge edge) {
-		edges.add(edge);
+		if (edges.add(edge)) {
+			index(edge);
+			ancestryIndex = null;
+		}
 		return edge;
 	}
 
+	/**
+	 * Removes the specified edge from this graph and from the adjacency
+	 * indexes of its source and target nodes.
+	 * 
+	 * @param edge
+	 *            The edge to remove.
+	 * @return Whether or not the edge was part of this graph.
+	 */
+	public boolean removeEdge(Edge edge) {
+		if (!edges.remove(edge))
+			return false;
+		unindex(outgoing, edge.getSource(), edge);
+		unindex(incoming, edge.getTarget(), edge);
+		ancestryIndex = null;
+		return true;
+	}
+
+	/**
+	 * Returns an unmodifiable view on the nodes of this graph. Use
+	 * {@link #addNode(Node)} and {@link #removeNode(Node)} to modify the graph.
+	 */
 	public Set<Node> getNodes() {
-		return nodes;
+		return Collections.unmodifiableSet(nodes);
 	}
 
 	public void setNodes(Set<Node> nodes) {
 		this.nodes = new UnifiedSet<Node>(nodes);
+		ancestryIndex = null;
 	}
 
+	/**
+	 * Returns an unmodifiable view on the edges of this graph. Use
+	 * {@link #addEdge(Edge)} and {@link #removeEdge(Edge)} to modify the graph,
+	 * so that the adjacency indexes stay in sync.
+	 */
 	public Set<Edge> getEdges() {
-		return edges;
+		return Collections.unmodifiableSet(edges);
 	}
 
 	public void setEdges(Set<Edge> edges) {
 		this.edges = new UnifiedSet<Edge>(edges);
+		incoming = new UnifiedMap<Node, UnifiedSet<Edge>>();
+		outgoing = new UnifiedMap<Node, UnifiedSet<Edge>>();
+		for (Edge edge : this.edges)
+			index(edge);
+		ancestryIndex = null;
 	}
 
 	public UnifiedMap<String, Object> getProperties() {
@@ -79,7 +142,8 @@ public class Graph {
 
 	/**
 	 * Returns all edges in this graph for which the specified node is either
-	 * the source of the target node, depending on the specified flags.
+	 * the source of the target node, depending on the specified flags. The
+	 * lookup uses the adjacency indexes and runs in O(degree).
 	 * 
 	 * @param node
 	 *            The node that should be part of the edge.
@@ -94,19 +158,51 @@ public class Graph {
 	 */
 	public Set<Edge> getEdges(Node node, boolean source, boolean target) {
 		Set<Edge> edgesForNode = Sets.mutable.empty();
-		for (Edge edge : edges) {
-			if (source && Objects.equals(edge.getSource(), node)) {
-				edgesForNode.add(edge);
-				continue;
-			}
-			if (target && Objects.equals(edge.getTarget(), node)) {
-				edgesForNode.add(edge);
-				continue;
-			}
-		}
+		if (source && outgoing.containsKey(node))
+			edgesForNode.addAll(outgoing.get(node));
+		if (target && incoming.containsKey(node))
+			edgesForNode.addAll(incoming.get(node));
 		return edgesForNode;
 	}
 
+	/**
+	 * Returns an unmodifiable view on the edges for which the specified node is
+	 * the target node. Runs in constant time.
+	 * 
+	 * @param node
+	 *            The target node.
+	 * @return The incoming edges of the node.
+	 */
+	public Set<Edge> getIncomingEdges(Node node) {
+		return incoming.containsKey(node) ? Collections.unmodifiableSet(incoming.get(node))
+				: Collections.<Edge>emptySet();
+	}
+
+	/**
+	 * Returns an unmodifiable view on the edges for which the specified node is
+	 * the source node. Runs in constant time.
+	 * 
+	 * @param node
+	 *            The source node.
+	 * @return The outgoing edges of the node.
+	 */
+	public Set<Edge> getOutgoingEdges(Node node) {
+		return outgoing.containsKey(node) ? Collections.unmodifiableSet(outgoing.get(node))
+				: Collections.<Edge>emptySet();
+	}
+
+	public int getInDegree(Node node) {
+		return incoming.containsKey(node) ? incoming.get(node).size() : 0;
+	}
+
+	public int getOutDegree(Node node) {
+		return outgoing.containsKey(node) ? outgoing.get(node).size() : 0;
+	}
+
+	public int getDegree(Node node) {
+		return getInDegree(node) + getOutDegree(node);
+	}
+
 	/**
 	 * Returns all edges in this graph for which the specified node is either
 	 * the source or the target node.
@@ -120,11 +216,24 @@ public class Graph {
 		return getEdges(node, true, true);
 	}
 
+	/**
+	 * Returns the reachability index of this graph. The index is built on the
+	 * first call and reused until the graph is modified.
+	 * 
+	 * @return The ancestry index for the current nodes and edges.
+	 */
+	public AncestryIndex getAncestryIndex() {
+		if (ancestryIndex == null)
+			ancestryIndex = new AncestryIndex(this);
+		return ancestryIndex;
+	}
+
 	/**
 	 * Checks whether there exists an ancestry relationship between two nodes
 	 * (unidirectional). An ancestry relations exists when there is a path in
 	 * the graph from the parent node to the child node. This implementation
-	 * performs a depth-first search. *
+	 * uses the (cached) ancestry index, so repeated checks run in constant
+	 * time.
 	 * 
 	 * @param child
 	 *            The child node.
@@ -133,13 +242,26 @@ public class Graph {
 	 * @return Whether or not there exists an ancestry relation.
 	 */
 	public boolean ancestor(Node child, Node parent) {
-		for (Edge edge : getEdges(child, false, true)) {
-			if (edge.getSource().equals(parent) && edge.getTarget().equals(child))
-				return true;
-			if (ancestor(edge.getSource(), parent))
-				return true;
-		}
-		return false;
+		return getAncestryIndex().ancestor(child, parent);
+	}
+
+	private void index(Edge edge) {
+		if (!outgoing.containsKey(edge.getSource()))
+			outgoing.put(edge.getSource(), new UnifiedSet<Edge>());
+		outgoing.get(edge.getSource()).add(edge);
+
+		if (!incoming.containsKey(edge.getTarget()))
+			incoming.put(edge.getTarget(), new UnifiedSet<Edge>());
+		incoming.get(edge.getTarget()).add(edge);
+	}
+
+	private static void unindex(UnifiedMap<Node, UnifiedSet<Edge>> adjacency, Node node, Edge edge) {
+		UnifiedSet<Edge> adjacent = adjacency.get(node);
+		if (adjacent == null)
+			return;
+		adjacent.remove(edge);
+		if (adjacent.isEmpty())
+			adjacency.remove(node);
 	}
 
 	@Override
@@ -0,0 +1,177 @@
+package org.processmining.rootcauseanalysis.models.graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
+
+/**
+ * Implicit representation of the inclusion graph: the fully connected graph
+ * over (clones of) the decomposition graph nodes, minus the pairs that have an
+ * ancestry relationship in the decomposition graph. The candidate pairs are
+ * derived from the ancestry index when iterated, so no edge objects are
+ * allocated. Use {@link #expand()} when an explicit {@link Graph} is needed.
+ */
+public class InclusionGraph {
+
+	// FIELDS
+
+	private AncestryIndex ancestryIndex;
+	private Node[] nodes;
+	private Graph expanded;
+
+	// The hierarchy of the decomposition graph, if it is a forest
+	private int[] roots;
+	private int[][] children;
+
+	// CONSTRUCTORS
+
+	public InclusionGraph(Graph decompositionGraph) {
+		ancestryIndex = decompositionGraph.getAncestryIndex();
+		nodes = new Node[ancestryIndex.size()];
+		for (int i = 0; i < nodes.length; i++)
+			nodes[i] = ancestryIndex.getNode(i).clone();
+
+		if (ancestryIndex.isForest())
+			indexHierarchy();
+	}
+
+	// GETTERS AND SETTERS
+
+	public int size() {
+		return nodes.length;
+	}
+
+	public Node getNode(int index) {
+		return nodes[index];
+	}
+
+	/**
+	 * Returns the node of the decomposition graph of which the node with the
+	 * specified index is a clone.
+	 */
+	public Node getDecompositionNode(int index) {
+		return ancestryIndex.getNode(index);
+	}
+
+	public List<Node> getNodes() {
+		return Collections.unmodifiableList(Arrays.asList(nodes));
+	}
+
+	/**
+	 * Whether the decomposition graph is a forest, so the nodes form a
+	 * hierarchy (see {@link #getRoots()} and {@link #getChildren(int)}).
+	 */
+	public boolean isHierarchical() {
+		return children != null;
+	}
+
+	/**
+	 * Returns the indices of the nodes whose decomposition node has no parent.
+	 * Only available when the inclusion graph is hierarchical.
+	 */
+	public int[] getRoots() {
+		if (roots == null)
+			throw new UnsupportedOperationException("The decomposition graph is not a forest");
+		return roots;
+	}
+
+	/**
+	 * Returns the indices of the nodes whose decomposition node is a child of
+	 * the decomposition node with the specified index. Only available when the
+	 * inclusion graph is hierarchical.
+	 */
+	public int[] getChildren(int index) {
+		if (children == null)
+			throw new UnsupportedOperationException("The decomposition graph is not a forest");
+		return children[index];
+	}
+
+	// METHODS
+
+	/**
+	 * Checks whether the ordered pair (source, target) is an edge of the
+	 * inclusion graph.
+	 */
+	public boolean isCandidate(int source, int target) {
+		return source != target && !ancestryIndex.related(source, target);
+	}
+
+	/**
+	 * Returns the number of edges (ordered candidate pairs) of the inclusion
+	 * graph, without enumerating them.
+	 */
+	public long getCandidatePairCount() {
+		long n = nodes.length;
+		return n * (n - 1) - 2 * ancestryIndex.countAncestryPairs();
+	}
+
+	/**
+	 * Calls the procedure with the (source, target) node indices of every edge
+	 * of the inclusion graph.
+	 */
+	public void forEachCandidatePair(IntIntProcedure procedure) {
+		forEachCandidatePair(0, nodes.length, procedure);
+	}
+
+	/**
+	 * Calls the procedure with the (source, target) node indices of every edge
+	 * of the inclusion graph whose source index lies in [fromSource,
+	 * toSource). Disjoint source ranges can be processed independently.
+	 */
+	public void forEachCandidatePair(int fromSource, int toSource, IntIntProcedure procedure) {
+		for (int source = fromSource; source < toSource; source++)
+			for (int target = 0; target < nodes.length; target++)
+				if (isCandidate(source, target))
+					procedure.value(source, target);
+	}
+
+	/**
+	 * Materializes the inclusion graph as an explicit graph. The result is
+	 * cached and shares its nodes with this representation.
+	 * 
+	 * @return The explicit inclusion graph.
+	 */
+	public Graph expand() {
+		if (expanded == null) {
+			final Graph graph = new Graph();
+			for (Node node : nodes)
+				graph.addNode(node);
+			forEachCandidatePair(new IntIntProcedure() {
+				public void value(int source, int target) {
+					graph.addEdge(new Edge(nodes[source], nodes[target]));
+				}
+			});
+			expanded = graph;
+		}
+		return expanded;
+	}
+
+	private void indexHierarchy() {
+		int[] counts = new int[nodes.length];
+		int rootCount = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			int parent = ancestryIndex.getParent(i);
+			if (parent < 0)
+				rootCount++;
+			else
+				counts[parent]++;
+		}
+
+		roots = new int[rootCount];
+		children = new int[nodes.length][];
+		for (int i = 0; i < nodes.length; i++)
+			children[i] = new int[counts[i]];
+		Arrays.fill(counts, 0);
+		rootCount = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			int parent = ancestryIndex.getParent(i);
+			if (parent < 0)
+				roots[rootCount++] = i;
+			else
+				children[parent][counts[parent]++] = i;
+		}
+	}
+
+}
@@ -4,5 +4,14 @@ public class Properties {
 
 	public static final String KEY_LABEL = "label";
 	public static final String KEY_TIMESERIES = "timeseries";
+	public static final String KEY_REGULARTIMESERIES = "regulartimeseries";
+
+	/**
+	 * The structural identity of a decomposed series (view type, performance
+	 * function, and for a child series the context function and context
+	 * result), which is equal across event logs. The label only serves for
+	 * display: it also names the entity that first had the context result.
+	 */
+	public static final String KEY_SERIESKEY = "serieskey";
 
 }
@@ -0,0 +1,78 @@
+package org.processmining.rootcauseanalysis.models.graph;
+
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+
+/**
+ * The candidate pairs of an inclusion graph that were not tested by a search
+ * that was stopped early, so the causality graph is partial: an untested pair
+ * may be causal. Like the inclusion graph, the pairs are implicit; only the
+ * tested pairs are stored, so the memory needed is linear in the number of
+ * tests.
+ */
+public class UntestedPairs {
+
+	// FIELDS
+
+	private final InclusionGraph inclusionGraph;
+	private final LongHashSet tested;
+
+	// CONSTRUCTORS
+
+	/**
+	 * @param inclusionGraph
+	 *            The inclusion graph.
+	 * @param tested
+	 *            The tested candidate pairs, encoded with
+	 *            {@link #encode(int, int)}.
+	 */
+	public UntestedPairs(InclusionGraph inclusionGraph, LongHashSet tested) {
+		this.inclusionGraph = inclusionGraph;
+		this.tested = tested;
+	}
+
+	// GETTERS AND SETTERS
+
+	public InclusionGraph getInclusionGraph() {
+		return inclusionGraph;
+	}
+
+	// METHODS
+
+	/**
+	 * Encodes the pair (source, target) of node indices as (source << 32) |
+	 * target.
+	 */
+	public static long encode(int source, int target) {
+		return ((long) source << 32) | target;
+	}
+
+	/**
+	 * Checks whether the ordered pair (source, target) is a candidate pair
+	 * that was not tested.
+	 */
+	public boolean isUntested(int source, int target) {
+		return inclusionGraph.isCandidate(source, target) && !tested.contains(encode(source, target));
+	}
+
+	/**
+	 * Returns the number of untested candidate pairs.
+	 */
+	public long size() {
+		return inclusionGraph.getCandidatePairCount() - tested.size();
+	}
+
+	/**
+	 * Calls the procedure with the (source, target) node indices of every
+	 * untested candidate pair.
+	 */
+	public void forEachUntestedPair(final IntIntProcedure procedure) {
+		inclusionGraph.forEachCandidatePair(new IntIntProcedure() {
+			public void value(int source, int target) {
+				if (!tested.contains(encode(source, target)))
+					procedure.value(source, target);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.processmining.rootcauseanalysis.models.timeseries;
+
+/**
+ * The built-in aggregation functions used when resampling. Each function
+ * creates fresh {@link Aggregator}s, so resampling can run on multiple threads.
+ */
+public enum AggregationFunction {
+
+	MEAN("Mean"),
+	SUM("Sum"),
+	MIN("Minimum"),
+	MAX("Maximum"),
+	COUNT("Count"),
+	MEDIAN("Median (estimate)"),
+	P95("95th percentile (estimate)");
+
+	// FIELDS
+
+	private final String description;
+
+	// CONSTRUCTORS
+
+	private AggregationFunction(String description) {
+		this.description = description;
+	}
+
+	// GETTERS AND SETTERS
+
+	public String getDescription() {
+		return description;
+	}
+
+	// METHODS
+
+	public Aggregator createAggregator() {
+		switch (this) {
+			case MEDIAN :
+				return new QuantileAggregator(0.5);
+			case P95 :
+				return new QuantileAggregator(0.95);
+			default :
+				return new MomentAggregator(this);
+		}
+	}
+
+	/**
+	 * Count, sum, minimum and maximum of the measurements in a bucket, from
+	 * which the mean, sum, minimum, maximum or count is reported.
+	 */
+	private static class MomentAggregator implements Aggregator {
+
+		private final AggregationFunction function;
+		private long count;
+		private double sum;
+		private double min;
+		private double max;
+
+		public MomentAggregator(AggregationFunction function) {
+			this.function = function;
+			reset();
+		}
+
+		public void reset() {
+			count = 0;
+			sum = 0;
+			min = Double.POSITIVE_INFINITY;
+			max = Double.NEGATIVE_INFINITY;
+		}
+
+		public void add(double value) {
+			count++;
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		public double getValue() {
+			switch (function) {
+				case SUM :
+					return sum;
+				case MIN :
+					return min;
+				case MAX :
+					return max;
+				case COUNT :
+					return count;
+				default :
+					return count == 0 ? Double.NaN : sum / count;
+			}
+		}
+
+	}
+
+}
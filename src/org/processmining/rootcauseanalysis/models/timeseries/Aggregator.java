@@ -0,0 +1,27 @@
+package org.processmining.rootcauseanalysis.models.timeseries;
+
+/**
+ * Streaming aggregation of the measurements within one bucket. Aggregators
+ * keep constant-size state and are reused for consecutive buckets through
+ * {@link #reset()}, so aggregating allocates nothing per measurement. An
+ * aggregator is stateful and must not be shared between threads.
+ */
+public interface Aggregator {
+
+	/**
+	 * Clears the state, to start aggregating a new bucket.
+	 */
+	void reset();
+
+	/**
+	 * Adds a measurement to the current bucket.
+	 */
+	void add(double value);
+
+	/**
+	 * Returns the aggregated value of the measurements added since the last
+	 * reset.
+	 */
+	double getValue();
+
+}
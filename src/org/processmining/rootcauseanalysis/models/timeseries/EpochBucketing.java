@@ -0,0 +1,286 @@
+package org.processmining.rootcauseanalysis.models.timeseries;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.jfree.data.time.Day;
+import org.jfree.data.time.FixedMillisecond;
+import org.jfree.data.time.Hour;
+import org.jfree.data.time.Minute;
+import org.jfree.data.time.Month;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.Second;
+import org.jfree.data.time.Week;
+import org.jfree.data.time.Year;
+
+/**
+ * Bucketing that computes buckets from epoch milliseconds without creating
+ * period objects, in an explicit time zone.
+ *
+ * Buckets of a fixed width (seconds, minutes, hours or any width such as 15
+ * minutes or 4 hours) are aligned to midnight in the standard offset of the
+ * time zone and computed with plain arithmetic. Calendar buckets (days, weeks
+ * starting on Monday, months and years) follow the local calendar of the time
+ * zone, including daylight saving time changes; their starts are kept in a
+ * table that is extended on demand, and the bucket of a point in time is found
+ * by a binary search in the table. Both are allocation-free once the table
+ * covers the measurements.
+ *
+ * Buckets are numbered by their distance to the bucket of 1970-01-01 (for
+ * weeks, the week of Monday 1969-12-29), and are converted to
+ * {@link FixedMillisecond} periods of their first millisecond for
+ * visualization. Bucketings are safe for use by multiple threads.
+ */
+public class EpochBucketing implements TimeBucketing {
+
+	// The number of buckets by which the table is extended at least
+	private static final int TABLE_INCREMENT = 64;
+
+	// FIELDS
+
+	private final ZoneId zone;
+	private final long width;
+	private final ChronoUnit unit;
+	private final long offset;
+
+	// The calendar table, replaced (never modified) when it is extended
+	private volatile Table table;
+
+	// CONSTRUCTORS
+
+	private EpochBucketing(ZoneId zone, long width, ChronoUnit unit) {
+		this.zone = zone;
+		this.width = width;
+		this.unit = unit;
+		offset = zone.getRules().getStandardOffset(Instant.EPOCH).getTotalSeconds() * 1000L;
+	}
+
+	/**
+	 * Creates a bucketing with buckets of a fixed width.
+	 *
+	 * @param width
+	 *            The width of the buckets in milliseconds.
+	 * @param zone
+	 *            The time zone to whose midnight buckets are aligned.
+	 */
+	public static EpochBucketing ofWidth(long width, ZoneId zone) {
+		if (width <= 0)
+			throw new IllegalArgumentException("The bucket width should be positive: " + width);
+		return new EpochBucketing(zone, width, null);
+	}
+
+	/**
+	 * Creates a bucketing with buckets of one unit, from seconds up to years.
+	 * Units up to hours have a fixed width, days and longer units follow the
+	 * calendar of the time zone.
+	 */
+	public static EpochBucketing of(ChronoUnit unit, ZoneId zone) {
+		switch (unit) {
+			case SECONDS :
+			case MINUTES :
+			case HOURS :
+				return ofWidth(unit.getDuration().toMillis(), zone);
+			case DAYS :
+			case WEEKS :
+			case MONTHS :
+			case YEARS :
+				return new EpochBucketing(zone, 0, unit);
+			default :
+				throw new IllegalArgumentException("Unsupported bucket unit: " + unit);
+		}
+	}
+
+	/**
+	 * Creates the bucketing that corresponds to a JFreeChart time period
+	 * class.
+	 */
+	public static EpochBucketing of(RegularTimePeriod periodClass, ZoneId zone) {
+		if (periodClass instanceof Second)
+			return of(ChronoUnit.SECONDS, zone);
+		if (periodClass instanceof Minute)
+			return of(ChronoUnit.MINUTES, zone);
+		if (periodClass instanceof Hour)
+			return of(ChronoUnit.HOURS, zone);
+		if (periodClass instanceof Day)
+			return of(ChronoUnit.DAYS, zone);
+		if (periodClass instanceof Week)
+			return of(ChronoUnit.WEEKS, zone);
+		if (periodClass instanceof Month)
+			return of(ChronoUnit.MONTHS, zone);
+		if (periodClass instanceof Year)
+			return of(ChronoUnit.YEARS, zone);
+		throw new IllegalArgumentException("Unsupported time period: " + periodClass.getClass());
+	}
+
+	// GETTERS AND SETTERS
+
+	public ZoneId getZone() {
+		return zone;
+	}
+
+	/**
+	 * Returns the width of the buckets in milliseconds, or 0 for calendar
+	 * buckets.
+	 */
+	public long getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the calendar unit of the buckets, or null for buckets of a fixed
+	 * width.
+	 */
+	public ChronoUnit getUnit() {
+		return unit;
+	}
+
+	// METHODS
+
+	@Override
+	public long getBucket(long epochMillis) {
+		if (unit == null)
+			return Math.floorDiv(epochMillis + offset, width);
+
+		Table current = table;
+		if (current == null)
+			current = extend(estimateBucket(epochMillis));
+		while (epochMillis < current.starts[0] || epochMillis >= current.starts[current.starts.length - 1]) {
+			if (epochMillis < current.starts[0])
+				current = extend(Math.min(estimateBucket(epochMillis), current.first - 1));
+			else
+				current = extend(Math.max(estimateBucket(epochMillis), current.first + current.starts.length));
+		}
+
+		// The last bucket whose start is at or before the point in time
+		int index = Arrays.binarySearch(current.starts, epochMillis);
+		if (index < 0)
+			index = -index - 2;
+		return current.first + index;
+	}
+
+	@Override
+	public long getBucketStart(long bucket) {
+		if (unit == null)
+			return bucket * width - offset;
+
+		Table current = table;
+		if (current == null || bucket < current.first || bucket >= current.first + current.starts.length)
+			current = extend(bucket);
+		return current.starts[(int) (bucket - current.first)];
+	}
+
+	@Override
+	public RegularTimePeriod getPeriod(long bucket) {
+		return new FixedMillisecond(getBucketStart(bucket));
+	}
+
+	// An estimate of the bucket of a point in time that is off by at most one
+	private long estimateBucket(long epochMillis) {
+		long epochDay = Math.floorDiv(epochMillis + offset, ChronoUnit.DAYS.getDuration().toMillis());
+		LocalDate date = LocalDate.ofEpochDay(epochDay);
+		switch (unit) {
+			case DAYS :
+				return epochDay;
+			case WEEKS :
+				return Math.floorDiv(epochDay + 3, 7);
+			case MONTHS :
+				return (date.getYear() - 1970) * 12L + date.getMonthValue() - 1;
+			default :
+				return date.getYear() - 1970;
+		}
+	}
+
+	// The first day of a calendar bucket
+	private LocalDate getFirstDay(long bucket) {
+		switch (unit) {
+			case DAYS :
+				return LocalDate.ofEpochDay(bucket);
+			case WEEKS :
+				// Day 0 (1970-01-01) is a Thursday
+				return LocalDate.ofEpochDay(bucket * 7 - 3);
+			case MONTHS :
+				return LocalDate.of(1970, 1, 1).plusMonths(bucket);
+			default :
+				return LocalDate.of(1970, 1, 1).plusYears(bucket);
+		}
+	}
+
+	/*
+	 * Extends the table so it holds the starts of the bucket and of the
+	 * buckets up to two before and after it; the start of the next bucket is
+	 * the end of a bucket, and estimates are off by at most one. Tables are
+	 * published as a whole, so concurrent readers see either the old or the
+	 * new table.
+	 */
+	private synchronized Table extend(long bucket) {
+		Table current = table;
+		long first = bucket - 2;
+		long last = bucket + 3;
+		if (current == null) {
+			first -= TABLE_INCREMENT / 2;
+			last += TABLE_INCREMENT / 2;
+		} else {
+			long currentLast = current.first + current.starts.length;
+			if (first >= current.first && last <= currentLast)
+				return current;
+			// Grow by at least the current size, towards the requested bucket
+			long size = Math.max(TABLE_INCREMENT, current.starts.length);
+			first = first < current.first ? Math.min(first, current.first - size) : current.first;
+			last = last > currentLast ? Math.max(last, currentLast + size) : currentLast;
+		}
+
+		long[] starts = new long[(int) (last - first)];
+		for (int b = 0; b < starts.length; b++) {
+			long tableBucket = first + b;
+			if (current != null && tableBucket >= current.first
+					&& tableBucket < current.first + current.starts.length)
+				starts[b] = current.starts[(int) (tableBucket - current.first)];
+			else
+				starts[b] = getFirstDay(tableBucket).atStartOfDay(zone).toInstant().toEpochMilli();
+		}
+
+		table = new Table(first, starts);
+		return table;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof EpochBucketing))
+			return false;
+
+		EpochBucketing bucketing = (EpochBucketing) obj;
+
+		return Objects.equals(zone, bucketing.zone) && Objects.equals(width, bucketing.width)
+				&& Objects.equals(unit, bucketing.unit);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(zone, width, unit);
+	}
+
+	@Override
+	public String toString() {
+		return (unit == null ? width + " ms" : unit.toString()) + " (" + zone + ")";
+	}
+
+	/**
+	 * The starts of the calendar buckets first, first + 1, ...
+	 */
+	private static class Table {
+
+		private final long first;
+		private final long[] starts;
+
+		public Table(long first, long[] starts) {
+			this.first = first;
+			this.starts = starts;
+		}
+
+	}
+
+}
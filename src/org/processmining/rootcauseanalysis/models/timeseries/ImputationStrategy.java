@@ -0,0 +1,93 @@
+package org.processmining.rootcauseanalysis.models.timeseries;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The strategies for the values of buckets without measurements, used when
+ * resampling. Imputation works on the dense values of a resampled series and
+ * the bitmap of its measured buckets, and takes a single pass over the gaps.
+ */
+public enum ImputationStrategy {
+
+	LOCF("Last observation carried forward"),
+	LINEAR("Linear interpolation"),
+	ZERO("Zero"),
+	NONE("Leave missing");
+
+	// FIELDS
+
+	private final String description;
+
+	// CONSTRUCTORS
+
+	private ImputationStrategy(String description) {
+		this.description = description;
+	}
+
+	// GETTERS AND SETTERS
+
+	public String getDescription() {
+		return description;
+	}
+
+	// METHODS
+
+	/**
+	 * Imputes the values of the buckets that are not set in the validity
+	 * bitmap. Valid runs are skipped a word of the bitmap at a time, so the
+	 * cost is linear in the number of buckets and small for dense series. The
+	 * first and the last bucket must be valid.
+	 *
+	 * @param values
+	 *            The values of the buckets, imputed in place.
+	 * @param validity
+	 *            The buckets that hold measurements.
+	 * @return The validity of the values after imputation: null when all
+	 *         values are known, or the bitmap itself when missing values are
+	 *         left (as NaN).
+	 */
+	public BitSet impute(double[] values, BitSet validity) {
+		int length = values.length;
+		int gap = validity.nextClearBit(0);
+		if (gap >= length)
+			return null;
+
+		while (gap < length) {
+			int end = validity.nextSetBit(gap);
+			if (end < 0 || end > length)
+				end = length;
+			fill(values, gap, end);
+			gap = validity.nextClearBit(end);
+		}
+
+		return this == NONE ? validity : null;
+	}
+
+	// Fills the gap [from, to), which is preceded by a valid value and (unless it ends the array) followed by one
+	private void fill(double[] values, int from, int to) {
+		switch (this) {
+			case LINEAR :
+				if (to < values.length) {
+					double left = values[from - 1];
+					double step = (values[to] - left) / (to - from + 1);
+					for (int i = from; i < to; i++)
+						values[i] = left + step * (i - from + 1);
+					break;
+				}
+				// Without a value after the gap, carry the last one forward
+				Arrays.fill(values, from, to, values[from - 1]);
+				break;
+			case ZERO :
+				Arrays.fill(values, from, to, 0);
+				break;
+			case NONE :
+				Arrays.fill(values, from, to, Double.NaN);
+				break;
+			default :
+				Arrays.fill(values, from, to, values[from - 1]);
+				break;
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.processmining.rootcauseanalysis.models.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a quantile of the measurements in a bucket with the P-square
+ * algorithm (Jain and Chlamtac, 1985), which keeps five markers instead of
+ * the measurements themselves. Up to five measurements, the quantile is
+ * exact.
+ */
+public class QuantileAggregator implements Aggregator {
+
+	// FIELDS
+
+	private final double quantile;
+	private final double[] heights = new double[5];
+	private final double[] positions = new double[5];
+	private final double[] desired = new double[5];
+	private final double[] increments = new double[5];
+	private int count;
+
+	// CONSTRUCTORS
+
+	public QuantileAggregator(double quantile) {
+		if (quantile <= 0 || quantile >= 1)
+			throw new IllegalArgumentException("Quantile should lie in (0, 1): " + quantile);
+		this.quantile = quantile;
+		increments[0] = 0;
+		increments[1] = quantile / 2;
+		increments[2] = quantile;
+		increments[3] = (1 + quantile) / 2;
+		increments[4] = 1;
+		reset();
+	}
+
+	// GETTERS AND SETTERS
+
+	public double getQuantile() {
+		return quantile;
+	}
+
+	// METHODS
+
+	public void reset() {
+		count = 0;
+	}
+
+	public void add(double value) {
+		if (count < 5) {
+			heights[count++] = value;
+			if (count == 5) {
+				Arrays.sort(heights);
+				for (int i = 0; i < 5; i++) {
+					positions[i] = i;
+					desired[i] = 4 * increments[i];
+				}
+			}
+			return;
+		}
+		count++;
+
+		// Find the cell of the value and update the extreme markers
+		int k;
+		if (value < heights[0]) {
+			heights[0] = value;
+			k = 0;
+		} else if (value >= heights[4]) {
+			heights[4] = Math.max(heights[4], value);
+			k = 3;
+		} else {
+			k = 0;
+			while (value >= heights[k + 1])
+				k++;
+		}
+
+		for (int i = k + 1; i < 5; i++)
+			positions[i]++;
+		for (int i = 0; i < 5; i++)
+			desired[i] += increments[i];
+
+		// Adjust the middle markers when they are off their desired position
+		for (int i = 1; i < 4; i++) {
+			double d = desired[i] - positions[i];
+			if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+				int sign = d > 0 ? 1 : -1;
+				double height = parabolic(i, sign);
+				if (heights[i - 1] < height && height < heights[i + 1])
+					heights[i] = height;
+				else
+					heights[i] += sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+				positions[i] += sign;
+			}
+		}
+	}
+
+	public double getValue() {
+		if (count == 0)
+			return Double.NaN;
+		if (count >= 5)
+			return heights[2];
+
+		// Exact (interpolated) quantile of the first few measurements
+		double[] sorted = Arrays.copyOf(heights, count);
+		Arrays.sort(sorted);
+		double rank = quantile * (count - 1);
+		int lower = (int) Math.floor(rank);
+		int upper = Math.min(lower + 1, count - 1);
+		return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+	}
+
+	private double parabolic(int i, int sign) {
+		double n = positions[i];
+		double nLower = positions[i - 1];
+		double nUpper = positions[i + 1];
+		return heights[i] + sign / (nUpper - nLower)
+				* ((n - nLower + sign) * (heights[i + 1] - heights[i]) / (nUpper - n)
+						+ (nUpper - n - sign) * (heights[i] - heights[i - 1]) / (n - nLower));
+	}
+
+}
@@ -0,0 +1,176 @@
+package org.processmining.rootcauseanalysis.models.timeseries;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.jfree.data.time.TimeSeries;
+
+/**
+ * Compact, regularly sampled time series. Values are stored in a primitive
+ * array where index i holds the value of bucket start + i of the bucketing.
+ * An optional validity bitmap marks which buckets hold an actual value; when
+ * it is absent, all values are valid.
+ * 
+ * A series can be a window (view) on part of the backing array of another
+ * series, see {@link #window(int, int)}. Windows share the backing array and
+ * validity bitmap, so creating them copies no values.
+ */
+public class RegularTimeSeries {
+
+	// FIELDS
+
+	private String description;
+	private TimeBucketing bucketing;
+	private long start;
+	private double[] values;
+	private int offset;
+	private int length;
+	private BitSet validity;
+
+	// CONSTRUCTORS
+
+	public RegularTimeSeries(String description, TimeBucketing bucketing, long start, double[] values) {
+		this(description, bucketing, start, values, null);
+	}
+
+	public RegularTimeSeries(String description, TimeBucketing bucketing, long start, double[] values,
+			BitSet validity) {
+		this(description, bucketing, start, values, 0, values.length, validity);
+	}
+
+	private RegularTimeSeries(String description, TimeBucketing bucketing, long start, double[] values, int offset,
+			int length, BitSet validity) {
+		this.description = description;
+		this.bucketing = bucketing;
+		this.start = start;
+		this.values = values;
+		this.offset = offset;
+		this.length = length;
+		this.validity = validity;
+	}
+
+	// GETTERS AND SETTERS
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public TimeBucketing getBucketing() {
+		return bucketing;
+	}
+
+	/**
+	 * Returns the bucket of the first value.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the bucket of the last value.
+	 */
+	public long getEnd() {
+		return start + length - 1;
+	}
+
+	/**
+	 * Returns the values of this series. The backing array is returned as is
+	 * when this series spans all of it, otherwise the values are copied.
+	 */
+	public double[] getValues() {
+		if (offset == 0 && length == values.length)
+			return values;
+		return Arrays.copyOfRange(values, offset, offset + length);
+	}
+
+	/**
+	 * Returns the (shared) backing array; the values of this series start at
+	 * {@link #getOffset()}.
+	 */
+	public double[] getBackingArray() {
+		return values;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the validity bitmap, indexed like the backing array, or null
+	 * when all values are valid.
+	 */
+	public BitSet getValidity() {
+		return validity;
+	}
+
+	// METHODS
+
+	public int size() {
+		return length;
+	}
+
+	public double getValue(int index) {
+		return values[offset + index];
+	}
+
+	public boolean isValid(int index) {
+		return validity == null || validity.get(offset + index);
+	}
+
+	/**
+	 * Returns whether all values with indices [from, to) are valid.
+	 */
+	public boolean isValid(int from, int to) {
+		return validity == null || validity.nextClearBit(offset + from) >= offset + to;
+	}
+
+	/**
+	 * Returns a view on the values with indices [from, to) of this series.
+	 * The view shares the backing array with this series.
+	 * 
+	 * @param from
+	 *            The first index (inclusive).
+	 * @param to
+	 *            The last index (exclusive).
+	 * @return The window.
+	 */
+	public RegularTimeSeries window(int from, int to) {
+		if (from < 0 || to > length || from > to)
+			throw new IndexOutOfBoundsException("Window [" + from + ", " + to + ") of series of size " + length);
+		return new RegularTimeSeries(description, bucketing, start + from, values, offset + from, to - from,
+				validity);
+	}
+
+	/**
+	 * Returns the index of the specified bucket in this series (which may lie
+	 * outside [0, size())).
+	 */
+	public int indexOf(long bucket) {
+		return (int) (bucket - start);
+	}
+
+	/**
+	 * Converts this series to a JFreeChart time series, for visualization.
+	 * Invalid values are left out.
+	 * 
+	 * @return The JFreeChart time series.
+	 */
+	public TimeSeries toTimeSeries() {
+		TimeSeries series = new TimeSeries(description);
+		series.setDescription(description);
+		if (length == 0)
+			return series;
+
+		// Periods are taken from the bucketing, since buckets need not be consecutive periods of one class
+		for (int i = 0; i < length; i++)
+			if (isValid(i))
+				series.add(bucketing.getPeriod(start + i), getValue(i), false);
+		series.fireSeriesChanged();
+		return series;
+	}
+
+}
@@ -0,0 +1,28 @@
+package org.processmining.rootcauseanalysis.models.timeseries;
+
+import org.jfree.data.time.RegularTimePeriod;
+
+/**
+ * Maps points in time to consecutively numbered buckets (sampling periods).
+ * Bucket b + 1 is the period directly following bucket b, so the distance
+ * between two buckets is a plain subtraction.
+ */
+public interface TimeBucketing {
+
+	/**
+	 * Returns the bucket that contains the specified point in time.
+	 */
+	long getBucket(long epochMillis);
+
+	/**
+	 * Returns the first millisecond of the specified bucket.
+	 */
+	long getBucketStart(long bucket);
+
+	/**
+	 * Returns the JFreeChart time period of the specified bucket, used when
+	 * series are converted for visualization.
+	 */
+	RegularTimePeriod getPeriod(long bucket);
+
+}
@@ -1,15 +1,47 @@
 package org.processmining.rootcauseanalysis.parameters;
 
+import org.processmining.rootcauseanalysis.algorithms.causality.GroupLassoGrangerAlgorithm;
+
 public class GrangerCausalityParameters {
 
 	public static int DEFAULT_MINIMALSAMPLESIZE;
 	public static int DEFAULT_MAXH;
 	public static int DEFAULT_BETA;
+	public static int DEFAULT_NUMBEROFTHREADS;
+	public static int DEFAULT_CHUNKSIZE;
+	public static boolean DEFAULT_SCREENING;
+	public static double DEFAULT_SCREENINGFALSENEGATIVERATE;
+	public static long DEFAULT_RESTRICTEDFITCACHESIZE;
+	public static int DEFAULT_WINDOWLENGTH;
+	public static int DEFAULT_LASSOLAG;
+	public static int DEFAULT_LASSOPATHLENGTH;
+	public static double DEFAULT_LASSOLAMBDARATIO;
+	public static double DEFAULT_LASSOTOLERANCE;
+	public static boolean DEFAULT_HIERARCHICAL;
+	public static double DEFAULT_HIERARCHICALSIGNIFICANCELEVEL;
+	public static boolean DEFAULT_ANYTIME;
+	public static long DEFAULT_TIMEBUDGET;
+	public static long DEFAULT_TESTBUDGET;
 
 	static {
 		DEFAULT_MINIMALSAMPLESIZE = 100;
 		DEFAULT_MAXH = Integer.MAX_VALUE;
 		DEFAULT_BETA = 10;
+		DEFAULT_NUMBEROFTHREADS = 1;
+		DEFAULT_CHUNKSIZE = 8;
+		DEFAULT_SCREENING = false;
+		DEFAULT_SCREENINGFALSENEGATIVERATE = 0.05;
+		DEFAULT_RESTRICTEDFITCACHESIZE = 64L * 1024 * 1024;
+		DEFAULT_WINDOWLENGTH = 100;
+		DEFAULT_LASSOLAG = 5;
+		DEFAULT_LASSOPATHLENGTH = 20;
+		DEFAULT_LASSOLAMBDARATIO = 0.01;
+		DEFAULT_LASSOTOLERANCE = 1e-4;
+		DEFAULT_HIERARCHICAL = false;
+		DEFAULT_HIERARCHICALSIGNIFICANCELEVEL = 0.2;
+		DEFAULT_ANYTIME = false;
+		DEFAULT_TIMEBUDGET = 0;
+		DEFAULT_TESTBUDGET = 0;
 	}
 
 	// FIELDS
@@ -17,6 +49,21 @@ public class GrangerCausalityParameters {
 	private int minimumSampleSize;
 	private int maxH;
 	private int beta;
+	private int numberOfThreads;
+	private int chunkSize;
+	private boolean screening;
+	private double screeningFalseNegativeRate;
+	private long restrictedFitCacheSize;
+	private int windowLength;
+	private int lassoLag;
+	private int lassoPathLength;
+	private double lassoLambdaRatio;
+	private double lassoTolerance;
+	private boolean hierarchical;
+	private double hierarchicalSignificanceLevel;
+	private boolean anytime;
+	private long timeBudget;
+	private long testBudget;
 
 	// CONSTRUCTORS
 
@@ -24,6 +71,21 @@ public class GrangerCausalityParameters {
 		setMinimumSampleSize(DEFAULT_MINIMALSAMPLESIZE);
 		setMaxH(DEFAULT_MAXH);
 		setBeta(DEFAULT_BETA);
+		setNumberOfThreads(DEFAULT_NUMBEROFTHREADS);
+		setChunkSize(DEFAULT_CHUNKSIZE);
+		setScreening(DEFAULT_SCREENING);
+		setScreeningFalseNegativeRate(DEFAULT_SCREENINGFALSENEGATIVERATE);
+		setRestrictedFitCacheSize(DEFAULT_RESTRICTEDFITCACHESIZE);
+		setWindowLength(DEFAULT_WINDOWLENGTH);
+		setLassoLag(DEFAULT_LASSOLAG);
+		setLassoPathLength(DEFAULT_LASSOPATHLENGTH);
+		setLassoLambdaRatio(DEFAULT_LASSOLAMBDARATIO);
+		setLassoTolerance(DEFAULT_LASSOTOLERANCE);
+		setHierarchical(DEFAULT_HIERARCHICAL);
+		setHierarchicalSignificanceLevel(DEFAULT_HIERARCHICALSIGNIFICANCELEVEL);
+		setAnytime(DEFAULT_ANYTIME);
+		setTimeBudget(DEFAULT_TIMEBUDGET);
+		setTestBudget(DEFAULT_TESTBUDGET);
 	}
 
 	// GETTERS AND SETTERS
@@ -52,4 +114,193 @@ public class GrangerCausalityParameters {
 		this.beta = beta;
 	}
 
+	/**
+	 * The number of worker threads used to test candidate pairs. With one
+	 * thread, pairs are tested sequentially on the calling thread.
+	 */
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * The number of source nodes whose candidate pairs are tested as one unit
+	 * of work. Larger ranges are split and balanced over the worker threads by
+	 * work stealing.
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Whether candidate pairs are screened before they are tested. Pairs that
+	 * are too short to test any lag or that are constant are discarded (these
+	 * can never be causal), as are shifted pairs whose lagged correlations are
+	 * all too small (see the false-negative rate).
+	 */
+	public boolean isScreening() {
+		return screening;
+	}
+
+	public void setScreening(boolean screening) {
+		this.screening = screening;
+	}
+
+	/**
+	 * The tolerated probability that the correlation screening discards a
+	 * relation that is just significant in the Granger test. Higher rates
+	 * discard more pairs; 0 only keeps the lossless checks.
+	 */
+	public double getScreeningFalseNegativeRate() {
+		return screeningFalseNegativeRate;
+	}
+
+	public void setScreeningFalseNegativeRate(double screeningFalseNegativeRate) {
+		this.screeningFalseNegativeRate = screeningFalseNegativeRate;
+	}
+
+	/**
+	 * The maximum size (in bytes) of the cache of restricted model fits, which
+	 * are shared by all candidate causes of a series. 0 disables the cache.
+	 */
+	public long getRestrictedFitCacheSize() {
+		return restrictedFitCacheSize;
+	}
+
+	public void setRestrictedFitCacheSize(long restrictedFitCacheSize) {
+		this.restrictedFitCacheSize = restrictedFitCacheSize;
+	}
+
+	/**
+	 * The number of most recent buckets (values per series) on which the
+	 * online monitor evaluates causality.
+	 */
+	public int getWindowLength() {
+		return windowLength;
+	}
+
+	public void setWindowLength(int windowLength) {
+		this.windowLength = windowLength;
+	}
+
+	/**
+	 * The number of lags of every series in the sparse regression of a target
+	 * (see {@link GroupLassoGrangerAlgorithm}). Fewer lags are used when the
+	 * target is too short for this many.
+	 */
+	public int getLassoLag() {
+		return lassoLag;
+	}
+
+	public void setLassoLag(int lassoLag) {
+		this.lassoLag = lassoLag;
+	}
+
+	/**
+	 * The number of penalties on the regularization path, from the smallest
+	 * penalty that excludes all causes down to that penalty times the lambda
+	 * ratio.
+	 */
+	public int getLassoPathLength() {
+		return lassoPathLength;
+	}
+
+	public void setLassoPathLength(int lassoPathLength) {
+		this.lassoPathLength = lassoPathLength;
+	}
+
+	public double getLassoLambdaRatio() {
+		return lassoLambdaRatio;
+	}
+
+	public void setLassoLambdaRatio(double lassoLambdaRatio) {
+		this.lassoLambdaRatio = lassoLambdaRatio;
+	}
+
+	/**
+	 * The largest change of the (standardized) coefficients of a cause in a
+	 * pass of the coordinate descent at which a fit is considered converged.
+	 */
+	public double getLassoTolerance() {
+		return lassoTolerance;
+	}
+
+	public void setLassoTolerance(double lassoTolerance) {
+		this.lassoTolerance = lassoTolerance;
+	}
+
+	/**
+	 * Whether the candidate pairs are searched top-down through the hierarchy
+	 * of the decomposition graph: pairs of child series are only tested when
+	 * the pair of their parents shows a signal. Only applies when the
+	 * decomposition graph is a forest.
+	 */
+	public boolean isHierarchical() {
+		return hierarchical;
+	}
+
+	public void setHierarchical(boolean hierarchical) {
+		this.hierarchical = hierarchical;
+	}
+
+	/**
+	 * The significance level at which a pair of parent series shows a signal
+	 * in the hierarchical search. It is relaxed (higher than the significance
+	 * level of the Granger tests), since the relation between child series
+	 * can be diluted in their parents.
+	 */
+	public double getHierarchicalSignificanceLevel() {
+		return hierarchicalSignificanceLevel;
+	}
+
+	public void setHierarchicalSignificanceLevel(double hierarchicalSignificanceLevel) {
+		this.hierarchicalSignificanceLevel = hierarchicalSignificanceLevel;
+	}
+
+	/**
+	 * Whether the candidate pairs are tested in descending order of a cheap
+	 * priority score, until all pairs are tested, the time or test budget is
+	 * exhausted or the search is cancelled. A search that stops early returns
+	 * the causal pairs found so far and marks the other pairs as untested.
+	 */
+	public boolean isAnytime() {
+		return anytime;
+	}
+
+	public void setAnytime(boolean anytime) {
+		this.anytime = anytime;
+	}
+
+	/**
+	 * The wall-clock time (in milliseconds) after which the anytime search
+	 * stops testing pairs, or 0 for no limit. It is checked between batches of
+	 * tests, so the search may take a little longer.
+	 */
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * The number of candidate pairs after which the anytime search stops
+	 * testing pairs, or 0 for no limit.
+	 */
+	public long getTestBudget() {
+		return testBudget;
+	}
+
+	public void setTestBudget(long testBudget) {
+		this.testBudget = testBudget;
+	}
+
 }
@@ -1,5 +1,7 @@
 package org.processmining.rootcauseanalysis.parameters;
 
+import java.io.File;
+import java.time.ZoneId;
 import java.util.EnumSet;
 import java.util.Objects;
 import java.util.Set;
@@ -14,6 +16,10 @@ import org.processmining.contextawareperformance.models.functions.context.event.
 import org.processmining.contextawareperformance.models.functions.performance.Performance;
 import org.processmining.contextawareperformance.models.functions.performance.activityinstance.duration.ActivityInstanceDurationPerformance;
 import org.processmining.contextawareperformance.models.functions.performance.trace.duration.CaseDurationPerformance;
+import org.processmining.rootcauseanalysis.algorithms.causality.CausalityMethod;
+import org.processmining.rootcauseanalysis.models.timeseries.AggregationFunction;
+import org.processmining.rootcauseanalysis.models.timeseries.ImputationStrategy;
+import org.processmining.rootcauseanalysis.utils.TimeSeriesUtils;
 
 import com.google.common.collect.Sets;
 
@@ -23,7 +29,20 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 	private static final Set<? extends Context<?>> DEFAULT_CONTEXT_FUNCTIONS;
 	private static final Set<? extends Performance<?>> DEFAULT_PERFORMANCE_FUNCTIONS;
 	private static final boolean DEFAULT_CLONE;
+	private static final int DEFAULT_NUMBEROFTHREADS;
 	private static RegularTimePeriod DEFAULT_TIMEPERIOD;
+	private static final boolean DEFAULT_AUTOMATICTIMEPERIOD;
+	private static final long DEFAULT_BUCKETWIDTH;
+	private static final ZoneId DEFAULT_TIMEZONE;
+	private static final AggregationFunction DEFAULT_AGGREGATIONFUNCTION;
+	private static final ImputationStrategy DEFAULT_IMPUTATIONSTRATEGY;
+	private static final CausalityMethod DEFAULT_CAUSALITYMETHOD;
+	private static final double DEFAULT_HIERARCHICALSIGNIFICANCELEVEL;
+	private static final long DEFAULT_CAUSALITYTIMEBUDGET;
+	private static final long DEFAULT_CAUSALITYTESTBUDGET;
+	private static final boolean DEFAULT_SCREENING;
+	private static final double DEFAULT_SCREENINGFALSENEGATIVERATE;
+	private static final int DEFAULT_STREAMINGBATCHSIZE;
 
 	//@formatter:off
 	static {
@@ -37,7 +56,20 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 				new ActivityInstanceDurationPerformance(),
 				new CaseDurationPerformance());
 		DEFAULT_TIMEPERIOD = new Week();
+		DEFAULT_AUTOMATICTIMEPERIOD = false;
+		DEFAULT_BUCKETWIDTH = 0;
+		DEFAULT_TIMEZONE = ZoneId.systemDefault();
+		DEFAULT_AGGREGATIONFUNCTION = AggregationFunction.MEAN;
+		DEFAULT_IMPUTATIONSTRATEGY = ImputationStrategy.LOCF;
+		DEFAULT_CAUSALITYMETHOD = CausalityMethod.PAIRWISE;
+		DEFAULT_HIERARCHICALSIGNIFICANCELEVEL = 0.2;
+		DEFAULT_CAUSALITYTIMEBUDGET = 0;
+		DEFAULT_CAUSALITYTESTBUDGET = 0;
 		DEFAULT_CLONE = false;
+		DEFAULT_NUMBEROFTHREADS = 1;
+		DEFAULT_SCREENING = false;
+		DEFAULT_SCREENINGFALSENEGATIVERATE = 0.05;
+		DEFAULT_STREAMINGBATCHSIZE = 1000;
 	}
 	//@formatter:on
 
@@ -47,7 +79,21 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 	private Set<? extends Context<?>> contextFunctionsToUse;
 	private Set<? extends Performance<?>> performanceFunctionsToUse;
 	private RegularTimePeriod timePeriod;
+	private boolean automaticTimePeriod;
+	private long bucketWidth;
+	private ZoneId timeZone;
+	private AggregationFunction aggregationFunction;
+	private ImputationStrategy imputationStrategy;
+	private CausalityMethod causalityMethod;
+	private double hierarchicalSignificanceLevel;
+	private long causalityTimeBudget;
+	private long causalityTestBudget;
 	private boolean clone;
+	private int numberOfThreads;
+	private boolean screening;
+	private double screeningFalseNegativeRate;
+	private File cacheDirectory;
+	private int streamingBatchSize;
 
 	// CONSTRUCTORS
 
@@ -57,7 +103,20 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 		setContextFunctionsToUse(DEFAULT_CONTEXT_FUNCTIONS);
 		setPerformanceFunctionsToUse(DEFAULT_PERFORMANCE_FUNCTIONS);
 		setTimePeriod(DEFAULT_TIMEPERIOD);
+		setAutomaticTimePeriod(DEFAULT_AUTOMATICTIMEPERIOD);
+		setBucketWidth(DEFAULT_BUCKETWIDTH);
+		setTimeZone(DEFAULT_TIMEZONE);
+		setAggregationFunction(DEFAULT_AGGREGATIONFUNCTION);
+		setImputationStrategy(DEFAULT_IMPUTATIONSTRATEGY);
+		setCausalityMethod(DEFAULT_CAUSALITYMETHOD);
+		setHierarchicalSignificanceLevel(DEFAULT_HIERARCHICALSIGNIFICANCELEVEL);
+		setCausalityTimeBudget(DEFAULT_CAUSALITYTIMEBUDGET);
+		setCausalityTestBudget(DEFAULT_CAUSALITYTESTBUDGET);
 		setClone(DEFAULT_CLONE);
+		setNumberOfThreads(DEFAULT_NUMBEROFTHREADS);
+		setScreening(DEFAULT_SCREENING);
+		setScreeningFalseNegativeRate(DEFAULT_SCREENINGFALSENEGATIVERATE);
+		setStreamingBatchSize(DEFAULT_STREAMINGBATCHSIZE);
 	}
 
 	public RootCauseAnalysisParameters(Set<EventCollectionViewType> viewTypes, Set<? extends Context<?>> contexts,
@@ -66,7 +125,20 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 		setEventCollectionViewTypesToUse(viewTypes);
 		setContextFunctionsToUse(contexts);
 		setPerformanceFunctionsToUse(performanceMeasures);
+		setAutomaticTimePeriod(DEFAULT_AUTOMATICTIMEPERIOD);
+		setBucketWidth(DEFAULT_BUCKETWIDTH);
+		setTimeZone(DEFAULT_TIMEZONE);
+		setAggregationFunction(DEFAULT_AGGREGATIONFUNCTION);
+		setImputationStrategy(DEFAULT_IMPUTATIONSTRATEGY);
+		setCausalityMethod(DEFAULT_CAUSALITYMETHOD);
+		setHierarchicalSignificanceLevel(DEFAULT_HIERARCHICALSIGNIFICANCELEVEL);
+		setCausalityTimeBudget(DEFAULT_CAUSALITYTIMEBUDGET);
+		setCausalityTestBudget(DEFAULT_CAUSALITYTESTBUDGET);
 		setClone(clone);
+		setNumberOfThreads(DEFAULT_NUMBEROFTHREADS);
+		setScreening(DEFAULT_SCREENING);
+		setScreeningFalseNegativeRate(DEFAULT_SCREENINGFALSENEGATIVERATE);
+		setStreamingBatchSize(DEFAULT_STREAMINGBATCHSIZE);
 	}
 
 	// GETTERS AND SETTERS
@@ -103,6 +175,117 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 		this.timePeriod = timePeriod;
 	}
 
+	/**
+	 * Whether the time period (sampling rate) is selected from the
+	 * measurements (see {@link TimeSeriesUtils#getMCSR(Iterable, int, ZoneId)}).
+	 * The configured time period is used when no rate can be selected.
+	 */
+	public boolean isAutomaticTimePeriod() {
+		return automaticTimePeriod;
+	}
+
+	public void setAutomaticTimePeriod(boolean automaticTimePeriod) {
+		this.automaticTimePeriod = automaticTimePeriod;
+	}
+
+	/**
+	 * The width of the time periods in milliseconds, for periods that are
+	 * not calendar units (e.g. 15 minutes or 4 hours). When greater than 0,
+	 * it is used instead of the (automatic) time period.
+	 */
+	public long getBucketWidth() {
+		return bucketWidth;
+	}
+
+	public void setBucketWidth(long bucketWidth) {
+		this.bucketWidth = bucketWidth;
+	}
+
+	/**
+	 * The time zone in which time periods start, e.g. at midnight.
+	 */
+	public ZoneId getTimeZone() {
+		return timeZone;
+	}
+
+	public void setTimeZone(ZoneId timeZone) {
+		this.timeZone = timeZone;
+	}
+
+	/**
+	 * The function that aggregates multiple measurements within one time
+	 * period when the series are resampled.
+	 */
+	public AggregationFunction getAggregationFunction() {
+		return aggregationFunction;
+	}
+
+	public void setAggregationFunction(AggregationFunction aggregationFunction) {
+		this.aggregationFunction = aggregationFunction;
+	}
+
+	/**
+	 * The imputation of time periods without measurements when the series are
+	 * resampled.
+	 */
+	public ImputationStrategy getImputationStrategy() {
+		return imputationStrategy;
+	}
+
+	public void setImputationStrategy(ImputationStrategy imputationStrategy) {
+		this.imputationStrategy = imputationStrategy;
+	}
+
+	/**
+	 * The method that finds the causal relations between the candidate pairs.
+	 */
+	public CausalityMethod getCausalityMethod() {
+		return causalityMethod;
+	}
+
+	public void setCausalityMethod(CausalityMethod causalityMethod) {
+		this.causalityMethod = causalityMethod;
+	}
+
+	/**
+	 * The significance level at which a pair of parent series is expanded in
+	 * the hierarchical search (see
+	 * {@link GrangerCausalityParameters#getHierarchicalSignificanceLevel()}).
+	 */
+	public double getHierarchicalSignificanceLevel() {
+		return hierarchicalSignificanceLevel;
+	}
+
+	public void setHierarchicalSignificanceLevel(double hierarchicalSignificanceLevel) {
+		this.hierarchicalSignificanceLevel = hierarchicalSignificanceLevel;
+	}
+
+	/**
+	 * The wall-clock time in milliseconds after which the anytime search stops
+	 * testing pairs, or 0 for no limit (see
+	 * {@link GrangerCausalityParameters#getTimeBudget()}).
+	 */
+	public long getCausalityTimeBudget() {
+		return causalityTimeBudget;
+	}
+
+	public void setCausalityTimeBudget(long causalityTimeBudget) {
+		this.causalityTimeBudget = causalityTimeBudget;
+	}
+
+	/**
+	 * The number of pairs after which the anytime search stops testing pairs,
+	 * or 0 for no limit (see
+	 * {@link GrangerCausalityParameters#getTestBudget()}).
+	 */
+	public long getCausalityTestBudget() {
+		return causalityTestBudget;
+	}
+
+	public void setCausalityTestBudget(long causalityTestBudget) {
+		this.causalityTestBudget = causalityTestBudget;
+	}
+
 	public boolean isClone() {
 		return clone;
 	}
@@ -111,8 +294,85 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 		this.clone = clone;
 	}
 
+	/**
+	 * The number of threads used to decompose the event collection entities
+	 * into time series and to test the candidate pairs. With one thread, both
+	 * are done sequentially. The number of threads does not change the result, so it is
+	 * not part of {@link #equals(Object)}.
+	 */
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * Whether candidate pairs are screened before the Granger tests (see
+	 * {@link GrangerCausalityParameters#isScreening()}).
+	 */
+	public boolean isScreening() {
+		return screening;
+	}
+
+	public void setScreening(boolean screening) {
+		this.screening = screening;
+	}
+
+	public double getScreeningFalseNegativeRate() {
+		return screeningFalseNegativeRate;
+	}
+
+	public void setScreeningFalseNegativeRate(double screeningFalseNegativeRate) {
+		this.screeningFalseNegativeRate = screeningFalseNegativeRate;
+	}
+
+	/**
+	 * The directory in which outputs are cached across sessions, or null to not
+	 * cache outputs on disk. The directory does not change the result, so it
+	 * is not part of {@link #equals(Object)}.
+	 */
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * The number of traces that are decomposed at a time when an event log is
+	 * streamed from a file, which bounds the memory needed for the log. Views
+	 * whose entities span multiple cases are not decomposed when streaming.
+	 * Context functions only see the cases of their batch, so the batch size
+	 * can change the result and is part of {@link #equals(Object)}.
+	 */
+	public int getStreamingBatchSize() {
+		return streamingBatchSize;
+	}
+
+	public void setStreamingBatchSize(int streamingBatchSize) {
+		this.streamingBatchSize = streamingBatchSize;
+	}
+
 	// METHODS
 
+	/**
+	 * Creates the parameters of the causality search from these parameters;
+	 * the other Granger parameters keep their defaults.
+	 */
+	public GrangerCausalityParameters createCausalityParameters() {
+		GrangerCausalityParameters causalityParameters = new GrangerCausalityParameters();
+		causalityParameters.setNumberOfThreads(getNumberOfThreads());
+		causalityParameters.setScreening(isScreening());
+		causalityParameters.setScreeningFalseNegativeRate(getScreeningFalseNegativeRate());
+		causalityParameters.setHierarchicalSignificanceLevel(getHierarchicalSignificanceLevel());
+		causalityParameters.setTimeBudget(getCausalityTimeBudget());
+		causalityParameters.setTestBudget(getCausalityTestBudget());
+		return causalityParameters;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (!(obj instanceof RootCauseAnalysisParameters))
@@ -124,13 +384,28 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 				&& Objects.equals(eventCollectionViewTypesToUse, parameters.eventCollectionViewTypesToUse)
 				&& Objects.equals(contextFunctionsToUse, parameters.contextFunctionsToUse)
 				&& Objects.equals(performanceFunctionsToUse, parameters.performanceFunctionsToUse)
-				&& Objects.equals(timePeriod, parameters.timePeriod) && Objects.equals(clone, parameters.clone);
+				&& Objects.equals(timePeriod, parameters.timePeriod)
+				&& Objects.equals(automaticTimePeriod, parameters.automaticTimePeriod)
+				&& Objects.equals(bucketWidth, parameters.bucketWidth)
+				&& Objects.equals(timeZone, parameters.timeZone)
+				&& Objects.equals(aggregationFunction, parameters.aggregationFunction)
+				&& Objects.equals(imputationStrategy, parameters.imputationStrategy)
+				&& Objects.equals(causalityMethod, parameters.causalityMethod)
+				&& Objects.equals(hierarchicalSignificanceLevel, parameters.hierarchicalSignificanceLevel)
+				&& Objects.equals(causalityTimeBudget, parameters.causalityTimeBudget)
+				&& Objects.equals(causalityTestBudget, parameters.causalityTestBudget)
+				&& Objects.equals(clone, parameters.clone)
+				&& Objects.equals(screening, parameters.screening)
+				&& Objects.equals(screeningFalseNegativeRate, parameters.screeningFalseNegativeRate)
+				&& Objects.equals(streamingBatchSize, parameters.streamingBatchSize);
 	}
 
 	@Override
 	public int hashCode() {
 		return Objects.hash(super.hashCode(), eventCollectionViewTypesToUse, contextFunctionsToUse,
-				performanceFunctionsToUse, clone, timePeriod);
+				performanceFunctionsToUse, clone, timePeriod, automaticTimePeriod, bucketWidth, timeZone,
+				aggregationFunction, imputationStrategy, causalityMethod, hierarchicalSignificanceLevel,
+				causalityTimeBudget, causalityTestBudget, screening, screeningFalseNegativeRate, streamingBatchSize);
 	}
 
 	@Override
@@ -154,7 +429,27 @@ public class RootCauseAnalysisParameters extends PluginParametersImpl {
 		for (Performance<?> performance : performanceFunctionsToUse)
 			builder.append("- " + performance.toString() + System.lineSeparator());
 
-		builder.append("Time period:" + getTimePeriod().getClass());
+		if (getBucketWidth() > 0)
+			builder.append("Time period:" + getBucketWidth() + " ms");
+		else
+			builder.append(
+					"Time period:" + getTimePeriod().getClass() + (isAutomaticTimePeriod() ? " (automatic)" : ""));
+		builder.append(" in " + getTimeZone() + System.lineSeparator());
+
+		builder.append("Aggregation function:" + getAggregationFunction().getDescription() + System.lineSeparator());
+
+		builder.append("Imputation:" + getImputationStrategy().getDescription() + System.lineSeparator());
+
+		builder.append("Causality:" + getCausalityMethod().getDescription());
+		if (getCausalityMethod() == CausalityMethod.HIERARCHICAL)
+			builder.append(" (" + getHierarchicalSignificanceLevel() + ")");
+		else if (getCausalityMethod() == CausalityMethod.ANYTIME)
+			builder.append(" (" + (getCausalityTimeBudget() > 0 ? getCausalityTimeBudget() + " ms" : "no time limit")
+					+ ", " + (getCausalityTestBudget() > 0 ? getCausalityTestBudget() + " tests" : "no test limit")
+					+ ")");
+		builder.append(System.lineSeparator());
+
+		builder.append("Screening:" + (isScreening() ? getScreeningFalseNegativeRate() : "off"));
 
 		return builder.toString();
 	}
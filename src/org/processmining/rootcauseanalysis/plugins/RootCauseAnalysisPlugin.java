@@ -1,5 +1,7 @@
 package org.processmining.rootcauseanalysis.plugins;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
@@ -10,16 +12,22 @@ import org.processmining.framework.connections.ConnectionCannotBeObtained;
 import org.processmining.framework.plugin.PluginContext;
 import org.processmining.framework.plugin.annotations.Plugin;
 import org.processmining.framework.plugin.annotations.PluginVariant;
+import org.processmining.rootcauseanalysis.algorithms.IncrementalRootCauseAnalysisAlgorithm;
 import org.processmining.rootcauseanalysis.algorithms.RootCauseAnalysisAlgorithm;
+import org.processmining.rootcauseanalysis.algorithms.decomposition.DecompositionAlgorithm;
+import org.processmining.rootcauseanalysis.cache.ResultCache;
 import org.processmining.rootcauseanalysis.connections.RootCauseAnalysisXLogConnection;
 import org.processmining.rootcauseanalysis.constants.AuthorConstants;
 import org.processmining.rootcauseanalysis.help.RootCauseAnalysisHelp;
+import org.processmining.rootcauseanalysis.io.TraceReader;
+import org.processmining.rootcauseanalysis.io.TraceReaders;
 import org.processmining.rootcauseanalysis.models.RootCauseAnalysisOutput;
 import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
+import org.processmining.rootcauseanalysis.utils.FingerprintUtils;
 
 @Plugin(
 		name = "Discover Root Causes for Process Performance",
-		parameterLabels = { "Event log", "Parameters" },
+		parameterLabels = { "Event log", "Parameters", "Previous output", "Event log file" },
 		returnLabels = { "Output" },
 		returnTypes = { RootCauseAnalysisOutput.class },
 		help = RootCauseAnalysisHelp.TEXT)
@@ -47,6 +55,58 @@ public class RootCauseAnalysisPlugin extends RootCauseAnalysisAlgorithm {
 		return runConnectionsXLog(pluginContext, eventlog, parameters);
 	}
 
+	/**
+	 * Updates a previous output with an event log of new cases, appended to
+	 * the log of the previous output. The parameters must be the ones of the
+	 * previous output.
+	 */
+	@PluginVariant(
+			variantLabel = "Discover Root Causes for Process Performance, Incremental",
+			requiredParameterLabels = { 0, 1, 2 })
+	public RootCauseAnalysisOutput runIncremental(PluginContext pluginContext, XLog newEvents,
+			RootCauseAnalysisParameters parameters, RootCauseAnalysisOutput previous) {
+		long time = -System.currentTimeMillis();
+		parameters.displayMessage("[RootCauseAnalysisPlugin] Start (incremental)");
+		parameters.displayMessage("[RootCauseAnalysisPlugin] Parameters: " + parameters.toString());
+
+		RootCauseAnalysisOutput output = new IncrementalRootCauseAnalysisAlgorithm(parameters).apply(pluginContext,
+				previous, newEvents);
+
+		time += System.currentTimeMillis();
+		displayEnd(parameters, output, time);
+		return output;
+	}
+
+	/**
+	 * Streams the event log from an XES or CSV file (see
+	 * {@link TraceReaders#open(File)}) instead of loading it first, for logs
+	 * that do not fit in memory. Connections and the output cache are not
+	 * used, since there is no event log object. Views whose entities span
+	 * multiple cases are skipped (see
+	 * {@link DecompositionAlgorithm#CASE_VIEW_TYPES}).
+	 */
+	@PluginVariant(
+			variantLabel = "Discover Root Causes for Process Performance, Streaming",
+			requiredParameterLabels = { 3, 1 })
+	public RootCauseAnalysisOutput runStreaming(PluginContext pluginContext, File eventlogFile,
+			RootCauseAnalysisParameters parameters) {
+		long time = -System.currentTimeMillis();
+		parameters.displayMessage("[RootCauseAnalysisPlugin] Start (streaming " + eventlogFile + ")");
+		parameters.displayMessage("[RootCauseAnalysisPlugin] Parameters: " + parameters.toString());
+
+		RootCauseAnalysisOutput output;
+		try (TraceReader reader = TraceReaders.open(eventlogFile)) {
+			output = apply(pluginContext, reader, parameters);
+		} catch (IOException e) {
+			parameters.displayMessage("The event log cannot be read (" + e.getMessage() + ").");
+			output = null;
+		}
+
+		time += System.currentTimeMillis();
+		displayEnd(parameters, output, time);
+		return output;
+	}
+
 	private RootCauseAnalysisOutput runConnectionsXLog(PluginContext pluginContext, XLog eventlog,
 			RootCauseAnalysisParameters parameters) {
 		if (parameters.isTryConnections()) {
@@ -66,9 +126,37 @@ public class RootCauseAnalysisPlugin extends RootCauseAnalysisAlgorithm {
 			}
 		}
 
-		RootCauseAnalysisOutput output = runPrivate(pluginContext, eventlog, parameters);
+		// Outputs of previous sessions are cached on disk, by the fingerprints of the log and the parameters
+		ResultCache cache = null;
+		String logFingerprint = null;
+		RootCauseAnalysisOutput output = null;
+		if (parameters.getCacheDirectory() != null) {
+			cache = new ResultCache(parameters.getCacheDirectory());
+			logFingerprint = FingerprintUtils.fingerprint(eventlog);
+			try {
+				output = cache.load(logFingerprint, parameters);
+				if (output != null)
+					parameters.displayMessage("Cached output found, returning the previously calculated output.");
+			} catch (IOException e) {
+				parameters.displayMessage("Cached output cannot be read, have to calculate now (" + e.getMessage()
+						+ ").");
+			}
+		}
 
-		if (parameters.isTryConnections()) {
+		if (output == null) {
+			output = runPrivate(pluginContext, eventlog, parameters);
+
+			// Partial outputs of an anytime search are not reused
+			if (cache != null && output != null && output.isComplete()) {
+				try {
+					cache.store(logFingerprint, parameters, output);
+				} catch (IOException e) {
+					parameters.displayMessage("Output cannot be cached (" + e.getMessage() + ").");
+				}
+			}
+		}
+
+		if (parameters.isTryConnections() && output != null && output.isComplete()) {
 			pluginContext.getConnectionManager()
 					.addConnection(new RootCauseAnalysisXLogConnection(eventlog, output, parameters));
 		}
@@ -86,9 +174,18 @@ public class RootCauseAnalysisPlugin extends RootCauseAnalysisAlgorithm {
 		output = apply(pluginContext, eventlog, parameters);
 
 		time += System.currentTimeMillis();
+		displayEnd(parameters, output, time);
+		return output;
+	}
+
+	private static void displayEnd(RootCauseAnalysisParameters parameters, RootCauseAnalysisOutput output,
+			long time) {
+		if (output != null && output.getMetrics() != null) {
+			parameters.displayMessage("[RootCauseAnalysisPlugin] Stages: " + output.getMetrics().toString());
+			parameters.displayMessage("[RootCauseAnalysisPlugin] Metrics: " + output.getMetrics().toJSON());
+		}
 		parameters.displayMessage(
 				"[RootCauseAnalysisPlugin] End (took " + DurationFormatUtils.formatDurationHMS(time) + ").");
-		return output;
 	}
 
 }
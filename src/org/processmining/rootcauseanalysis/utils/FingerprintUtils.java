@@ -0,0 +1,140 @@
+package org.processmining.rootcauseanalysis.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.deckfour.xes.model.XAttributable;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.processmining.contextawareperformance.models.eventcollectionviews.EventCollectionViewType;
+import org.processmining.contextawareperformance.models.functions.context.Context;
+import org.processmining.contextawareperformance.models.functions.performance.Performance;
+import org.processmining.rootcauseanalysis.algorithms.causality.CausalityMethod;
+import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
+
+/**
+ * Content fingerprints (SHA-256, hex encoded) of event logs and parameters,
+ * used to identify previously computed results across ProM sessions.
+ */
+public class FingerprintUtils {
+
+	private static final String ALGORITHM = "SHA-256";
+
+	/**
+	 * Returns the fingerprint of the contents of the event log: the attributes
+	 * of the log, its traces and their events, in trace and event order.
+	 * Attributes are taken in key order, so the order in which they were read
+	 * does not matter. Meta-attributes are not included.
+	 */
+	public static String fingerprint(XLog eventlog) {
+		MessageDigest digest = createDigest();
+		update(digest, eventlog);
+		update(digest, eventlog.size());
+		for (XTrace trace : eventlog) {
+			update(digest, trace);
+			update(digest, trace.size());
+			for (XEvent event : trace)
+				update(digest, event);
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the fingerprint of the parameters that determine the result of
+	 * the analysis. Functions are identified by their class, and sets are
+	 * sorted, so equal parameters have the same fingerprint in every session.
+	 * The budgets of an anytime search are left out: only complete results are
+	 * cached, and those do not depend on the budget.
+	 */
+	public static String fingerprint(RootCauseAnalysisParameters parameters) {
+		List<String> viewTypes = new ArrayList<String>();
+		for (EventCollectionViewType viewType : parameters.getEventCollectionViewTypesToUse())
+			viewTypes.add(viewType.name());
+		Collections.sort(viewTypes);
+
+		List<String> contexts = new ArrayList<String>();
+		for (Context<?> context : parameters.getContextFunctionsToUse())
+			contexts.add(context.getClass().getName());
+		Collections.sort(contexts);
+
+		List<String> performances = new ArrayList<String>();
+		for (Performance<?> performance : parameters.getPerformanceFunctionsToUse())
+			performances.add(performance.getClass().getName());
+		Collections.sort(performances);
+
+		//@formatter:off
+		List<String> canonical = Arrays.asList(
+				"views=" + viewTypes,
+				"contexts=" + contexts,
+				"performances=" + performances,
+				"timeperiod=" + (parameters.getBucketWidth() > 0 ? parameters.getBucketWidth() + "ms"
+						: parameters.getTimePeriod().getClass().getName()
+								+ (parameters.isAutomaticTimePeriod() ? ",automatic" : "")),
+				"timezone=" + parameters.getTimeZone().getId(),
+				"aggregation=" + parameters.getAggregationFunction().name(),
+				"imputation=" + parameters.getImputationStrategy().name(),
+				"causality=" + parameters.getCausalityMethod().name()
+						+ (parameters.getCausalityMethod() == CausalityMethod.HIERARCHICAL
+								? "," + parameters.getHierarchicalSignificanceLevel()
+								: ""),
+				"clone=" + parameters.isClone(),
+				"screening=" + (parameters.isScreening() ? parameters.getScreeningFalseNegativeRate() : "off"));
+		//@formatter:on
+
+		MessageDigest digest = createDigest();
+		for (String entry : canonical)
+			update(digest, entry);
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, XAttributable attributable) {
+		XAttributeMap attributes = attributable.getAttributes();
+		List<String> keys = new ArrayList<String>(attributes.keySet());
+		Collections.sort(keys);
+		update(digest, keys.size());
+		for (String key : keys) {
+			XAttribute attribute = attributes.get(key);
+			update(digest, key);
+			update(digest, attribute == null ? "" : attribute.toString());
+		}
+	}
+
+	// Strings are prefixed with their length, so concatenations cannot collide
+	private static void update(MessageDigest digest, String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		update(digest, bytes.length);
+		digest.update(bytes);
+	}
+
+	private static void update(MessageDigest digest, int value) {
+		digest.update((byte) (value >>> 24));
+		digest.update((byte) (value >>> 16));
+		digest.update((byte) (value >>> 8));
+		digest.update((byte) value);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+
+}
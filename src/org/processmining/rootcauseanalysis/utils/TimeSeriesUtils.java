@@ -1,12 +1,12 @@
 package org.processmining.rootcauseanalysis.utils;
 
-import java.util.Date;
-import java.util.Set;
+import java.time.ZoneId;
+import java.util.BitSet;
+import java.util.List;
 
-import org.eclipse.collections.impl.map.mutable.UnifiedMap;
-import org.eclipse.collections.impl.set.mutable.UnifiedSet;
 import org.jfree.data.time.Day;
 import org.jfree.data.time.Hour;
+import org.jfree.data.time.Minute;
 import org.jfree.data.time.Month;
 import org.jfree.data.time.RegularTimePeriod;
 import org.jfree.data.time.Second;
@@ -14,29 +14,118 @@ import org.jfree.data.time.TimeSeries;
 import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.time.Week;
 import org.jfree.data.time.Year;
-
-import com.google.common.collect.Sets;
+import org.processmining.rootcauseanalysis.models.timeseries.AggregationFunction;
+import org.processmining.rootcauseanalysis.models.timeseries.Aggregator;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
+import org.processmining.rootcauseanalysis.models.timeseries.ImputationStrategy;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.models.timeseries.TimeBucketing;
+import org.processmining.rootcauseanalysis.parameters.GrangerCausalityParameters;
+import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
 
 public class TimeSeriesUtils {
 
+	private static final RegularTimePeriod[] CANDIDATE_PERIODS;
+
+	static {
+		// Ordered from coarse to fine
+		CANDIDATE_PERIODS = new RegularTimePeriod[] { new Year(), new Month(), new Week(), new Day(), new Hour(),
+				new Minute(), new Second() };
+	}
+
+	/**
+	 * Returns the minimum common sampling rate of the series in the
+	 * collection, for the default minimum sample size of the Granger test and
+	 * the default time zone.
+	 * 
+	 * @see #getMCSR(Iterable, int, ZoneId)
+	 */
+	@SuppressWarnings("unchecked")
 	public static RegularTimePeriod getMCSR(TimeSeriesCollection collection) {
+		return getMCSR((List<TimeSeries>) collection.getSeries(),
+				new GrangerCausalityParameters().getMinimumSampleSize(), ZoneId.systemDefault());
+	}
 
-		Set<RegularTimePeriod> timeperiods = Sets.newHashSet();
+	/**
+	 * Selects the sampling rate (time period) to resample the series to: the
+	 * coarsest rate at which as many series as possible can be resampled and
+	 * tested. A series can be tested at a rate when it spans at least the
+	 * minimum sample size in buckets, and can be resampled when it has more
+	 * measurements than buckets to impute (see
+	 * {@link #resample(TimeSeries, TimeBucketing, Aggregator)}). Finer rates
+	 * give longer series, and so make tests more expensive, without making
+	 * more series testable beyond the selected rate.
+	 * 
+	 * The measurements of every series are traversed once per candidate rate,
+	 * and buckets are only computed where the measurements cross a bucket
+	 * boundary, so the cost is dominated by the number of distinct buckets.
+	 * 
+	 * @param series
+	 *            The (time-ordered) measurement series.
+	 * @param minimumSampleSize
+	 *            The minimum number of samples a series needs to be tested.
+	 * @param zone
+	 *            The time zone in which the time periods start.
+	 * @return The selected time period, or null when no series can be tested
+	 *         at any rate.
+	 */
+	public static RegularTimePeriod getMCSR(Iterable<TimeSeries> series, int minimumSampleSize, ZoneId zone) {
+		int[] testable = new int[CANDIDATE_PERIODS.length];
+		TimeBucketing[] bucketings = new TimeBucketing[CANDIDATE_PERIODS.length];
+		for (int r = 0; r < CANDIDATE_PERIODS.length; r++)
+			bucketings[r] = EpochBucketing.of(CANDIDATE_PERIODS[r], zone);
 
-		for (int i = 0; i < collection.getSeriesCount(); i++) {
-			TimeSeries series = collection.getSeries(i);
-			timeperiods.add(series.getTimePeriod(0));
-		}
+		for (TimeSeries timeSeries : series) {
+			int size = timeSeries.getItemCount();
+			if (size == 0)
+				continue;
+			long[] times = new long[size];
+			for (int m = 0; m < size; m++)
+				times[m] = timeSeries.getTimePeriod(m).getFirstMillisecond();
 
-		RegularTimePeriod max = null;
-		for (RegularTimePeriod period : timeperiods) {
-			max = max == null ? period
-					: ((period.getEnd().getTime() - period.getStart().getTime()) > (max.getEnd().getTime()
-							- max.getStart().getTime())) ? period : max;
+			for (int r = 0; r < CANDIDATE_PERIODS.length; r++)
+				if (isTestable(times, size, bucketings[r], minimumSampleSize))
+					testable[r]++;
 		}
 
-		return null;
+		int selected = -1;
+		for (int r = 0; r < CANDIDATE_PERIODS.length; r++)
+			if (testable[r] > 0 && (selected < 0 || testable[r] > testable[selected]))
+				selected = r;
+
+		return selected < 0 ? null : CANDIDATE_PERIODS[selected];
+	}
+
+	// Whether the measurements span enough buckets, without needing too much imputation
+	private static boolean isTestable(long[] times, int size, TimeBucketing bucketing, int minimumSampleSize) {
+		long first = bucketing.getBucket(times[0]);
+
+		// At most one bucket per measurement is filled, which rules out too fine rates without a pass
+		if (bucketing.getBucket(times[size - 1]) - first + 1 - size >= size)
+			return false;
+
+		long bucket = first;
+		long next = bucketing.getBucketStart(bucket + 1);
+		int filled = 1;
+		for (int m = 1; m < size; m++) {
+			if (times[m] >= next) {
+				bucket = bucketing.getBucket(times[m]);
+				next = bucketing.getBucketStart(bucket + 1);
+				filled++;
+			}
+		}
+		long length = bucket - first + 1;
+		return length >= minimumSampleSize && length - filled < size;
+	}
 
+	/**
+	 * Returns the bucketing of the configured bucket width or, without a
+	 * width, of the configured time period, in the configured time zone.
+	 */
+	public static EpochBucketing getBucketing(RootCauseAnalysisParameters parameters) {
+		if (parameters.getBucketWidth() > 0)
+			return EpochBucketing.ofWidth(parameters.getBucketWidth(), parameters.getTimeZone());
+		return EpochBucketing.of(parameters.getTimePeriod(), parameters.getTimeZone());
 	}
 
 	public static TimeSeriesCollection resampleTimeSeries(TimeSeriesCollection collection,
@@ -53,62 +142,231 @@ public class TimeSeriesUtils {
 	}
 
 	public static TimeSeries resampleTimeSeries(TimeSeries series, RegularTimePeriod periodClass) {
-		TimeSeries resampledSeries = new TimeSeries(series.getDescription() + " (resampled)");
-		resampledSeries.setDescription(series.getDescription() + " (resampled)");
-
-		// Keep track of measurements per period
-		UnifiedMap<RegularTimePeriod, Set<Number>> measurements = new UnifiedMap<RegularTimePeriod, Set<Number>>();
-
-		// Fill map of new periods
-		for (int m = 0; m < series.getItemCount(); m++) {
-			Date measurementDate = series.getDataItem(m).getPeriod().getStart();
-			Number value = series.getDataItem(m).getValue();
-
-			RegularTimePeriod period = null;
-
-			if (periodClass instanceof Second)
-				period = new Second(measurementDate);
-			if (periodClass instanceof Hour)
-				period = new Hour(measurementDate);
-			if (periodClass instanceof Day)
-				period = new Day(measurementDate);
-			if (periodClass instanceof Week)
-				period = new Week(measurementDate);
-			if (periodClass instanceof Month)
-				period = new Month(measurementDate);
-			if (periodClass instanceof Year)
-				period = new Year(measurementDate);
-
-			if (!measurements.containsKey(period))
-				measurements.put(period, new UnifiedSet<Number>());
-			measurements.get(period).add(value);
+		RegularTimeSeries resampledSeries = resample(series, EpochBucketing.of(periodClass, ZoneId.systemDefault()));
+		return resampledSeries == null ? null : resampledSeries.toTimeSeries();
+	}
+
+	/**
+	 * Resamples the series to the buckets of the specified bucketing, taking
+	 * the mean of buckets with multiple measurements.
+	 * 
+	 * @see #resample(TimeSeries, TimeBucketing, Aggregator)
+	 */
+	public static RegularTimeSeries resample(TimeSeries series, TimeBucketing bucketing) {
+		return resample(series, bucketing, AggregationFunction.MEAN.createAggregator());
+	}
+
+	/**
+	 * Resamples the series to the buckets of the specified bucketing, giving
+	 * buckets without measurements the last known value.
+	 * 
+	 * @see #resample(TimeSeries, TimeBucketing, Aggregator, ImputationStrategy)
+	 */
+	public static RegularTimeSeries resample(TimeSeries series, TimeBucketing bucketing, Aggregator aggregator) {
+		return resample(series, bucketing, aggregator, ImputationStrategy.LOCF);
+	}
+
+	/**
+	 * Resamples the series to the buckets of the specified bucketing in one
+	 * pass over its (time-ordered) items. Buckets with multiple measurements
+	 * get the aggregated value, buckets without measurements are imputed.
+	 * 
+	 * @param series
+	 *            The series to resample.
+	 * @param bucketing
+	 *            The bucketing (sampling rate) to resample to.
+	 * @param aggregator
+	 *            The aggregator for the measurements within a bucket.
+	 * @param imputation
+	 *            The imputation of buckets without measurements.
+	 * @return The resampled series, or null when more values would have to be
+	 *         imputed than there are measurements.
+	 */
+	public static RegularTimeSeries resample(TimeSeries series, TimeBucketing bucketing, Aggregator aggregator,
+			ImputationStrategy imputation) {
+		int size = series.getItemCount();
+		long[] times = new long[size];
+		double[] values = new double[size];
+		for (int m = 0; m < size; m++) {
+			times[m] = series.getTimePeriod(m).getFirstMillisecond();
+			values[m] = series.getValue(m).doubleValue();
 		}
+		return resample(getDescription(series), times, values, size, bucketing, aggregator, imputation);
+	}
+
+	/**
+	 * Resamples time-ordered measurements to the buckets of the specified
+	 * bucketing in a single pass. Only the current bucket is aggregated at any
+	 * time, so the state is constant and nothing is allocated per measurement.
+	 * The measured buckets are recorded in a bitmap, and the other buckets are
+	 * imputed afterwards in one pass over the gaps.
+	 * 
+	 * @param description
+	 *            The description of the measured series.
+	 * @param times
+	 *            The measurement times (epoch milliseconds), in ascending
+	 *            order.
+	 * @param values
+	 *            The measured values.
+	 * @param size
+	 *            The number of measurements in the arrays.
+	 * @param bucketing
+	 *            The bucketing (sampling rate) to resample to.
+	 * @param aggregator
+	 *            The aggregator for the measurements within a bucket.
+	 * @param imputation
+	 *            The imputation of buckets without measurements.
+	 * @return The resampled series, or null when more values would have to be
+	 *         imputed than there are measurements.
+	 */
+	public static RegularTimeSeries resample(String description, long[] times, double[] values, int size,
+			TimeBucketing bucketing, Aggregator aggregator, ImputationStrategy imputation) {
+		if (size == 0)
+			return null;
+
+		long first = bucketing.getBucket(times[0]);
+		long last = bucketing.getBucket(times[size - 1]);
 
-		// Take average values for periods with multiple measurements
-		for (RegularTimePeriod period : measurements.keySet()) {
-			long sum = 0l;
-			for (Number measurement : measurements.get(period))
-				sum += measurement.longValue();
-			resampledSeries.add(period, sum / measurements.get(period).size());
+		// At most one bucket per measurement is filled, so this many buckets always need too much imputation
+		if (last - first + 1 - size >= size)
+			return null;
+
+		double[] resampled = new double[(int) (last - first + 1)];
+		BitSet validity = new BitSet(resampled.length);
+		int filled = aggregate(times, values, 0, size, bucketing, aggregator, resampled, first, validity);
+
+		if (resampled.length - filled >= size)
+			return null;
+
+		return new RegularTimeSeries(description + " (resampled)", bucketing, first, resampled,
+				imputation.impute(resampled, validity));
+	}
+
+	/**
+	 * Extends a resampled series after measurements were added to its
+	 * (measurement) series. Only the buckets from the first changed bucket
+	 * onwards are resampled; the values before it are copied. The result
+	 * equals resampling the whole series, which is done instead when there is
+	 * no resampled series yet, when the change precedes it, or when the
+	 * imputation of the values before the change may depend on later values
+	 * (linear interpolation) or is not known (missing values).
+	 * 
+	 * @param resampled
+	 *            The series resampled before the measurements were added, or
+	 *            null.
+	 * @param series
+	 *            The measurement series, including the added measurements.
+	 * @param fromBucket
+	 *            The bucket of the first added measurement.
+	 * @param bucketing
+	 *            The bucketing (sampling rate) to resample to.
+	 * @param aggregator
+	 *            The aggregator for the measurements within a bucket.
+	 * @param imputation
+	 *            The imputation of buckets without measurements.
+	 * @return The resampled series, or null when more values would have to be
+	 *         imputed than there are measurements.
+	 */
+	public static RegularTimeSeries extend(RegularTimeSeries resampled, TimeSeries series, long fromBucket,
+			TimeBucketing bucketing, Aggregator aggregator, ImputationStrategy imputation) {
+		if (resampled == null || fromBucket <= resampled.getStart() || imputation == ImputationStrategy.LINEAR
+				|| imputation == ImputationStrategy.NONE)
+			return resample(series, bucketing, aggregator, imputation);
+
+		int size = series.getItemCount();
+		long start = resampled.getStart();
+		long last = bucketing.getBucket(series.getTimePeriod(size - 1).getFirstMillisecond());
+
+		// First measurement in the first changed bucket, by binary search
+		long fromMillis = bucketing.getBucketStart(fromBucket);
+		int from = 0;
+		int to = size;
+		while (from < to) {
+			int middle = (from + to) >>> 1;
+			if (series.getTimePeriod(middle).getFirstMillisecond() < fromMillis)
+				from = middle + 1;
+			else
+				to = middle;
 		}
 
-		// Impute missing values by copying last known values for unknown values
-		int imputedValues = 0;
-		RegularTimePeriod nextPeriod = resampledSeries.getTimePeriod(0);
-		while (startsBefore(nextPeriod, resampledSeries.getTimePeriod(resampledSeries.getItemCount() - 1))
-				&& imputedValues < series.getItemCount()) {
-			if (resampledSeries.getDataItem(nextPeriod) == null) {
-				resampledSeries.add(nextPeriod, resampledSeries.getValue(nextPeriod.previous()));
-				imputedValues++;
+		int tailSize = size - from;
+		long[] times = new long[tailSize];
+		double[] values = new double[tailSize];
+		for (int m = 0; m < tailSize; m++) {
+			times[m] = series.getTimePeriod(from + m).getFirstMillisecond();
+			values[m] = series.getValue(from + m).doubleValue();
+		}
+
+		// Copy the unchanged values, which are final; buckets between the old end and the change are imputed
+		double[] extended = new double[(int) (last - start + 1)];
+		BitSet validity = new BitSet(extended.length);
+		int prefix = (int) (fromBucket - start);
+		int copied = Math.min(prefix, resampled.size());
+		System.arraycopy(resampled.getBackingArray(), resampled.getOffset(), extended, 0, copied);
+		validity.set(0, copied);
+
+		int filled = aggregate(times, values, 0, tailSize, bucketing, aggregator, extended, start, validity);
+
+		// Each measurement before the change fills at most one bucket; only count them when that bound is too weak
+		int missing = (int) (last - fromBucket + 1) - filled;
+		if (prefix - 1 + missing >= size) {
+			long previousBucket = Long.MIN_VALUE;
+			int filledPrefix = 0;
+			for (int m = 0; m < from; m++) {
+				long bucket = bucketing.getBucket(series.getTimePeriod(m).getFirstMillisecond());
+				if (bucket != previousBucket)
+					filledPrefix++;
+				previousBucket = bucket;
 			}
-			nextPeriod = nextPeriod.next();
+			if (prefix - filledPrefix + missing >= size)
+				return null;
 		}
 
-		if (imputedValues == series.getItemCount()) {
-			System.out.println("Cannot resample " + series.getDescription());
-			return null;
-		} else
-			return resampledSeries;
+		return new RegularTimeSeries(getDescription(series) + " (resampled)", bucketing, start, extended,
+				imputation.impute(extended, validity));
+	}
+
+	/**
+	 * Aggregates the time-ordered measurements [from, to) into the target
+	 * array, where index 0 corresponds to bucket targetStart, and marks the
+	 * measured buckets in the validity bitmap. Buckets between measured
+	 * buckets are left for imputation. Returns the number of buckets that got
+	 * measurements.
+	 */
+	private static int aggregate(long[] times, double[] values, int from, int to, TimeBucketing bucketing,
+			Aggregator aggregator, double[] target, long targetStart, BitSet validity) {
+		int filled = 0;
+		int index = -1;
+
+		aggregator.reset();
+		for (int m = from; m < to; m++) {
+			int bucketIndex = (int) (bucketing.getBucket(times[m]) - targetStart);
+			if (bucketIndex != index) {
+				if (index >= 0) {
+					target[index] = aggregator.getValue();
+					validity.set(index);
+					filled++;
+					aggregator.reset();
+				}
+				index = bucketIndex;
+			}
+			aggregator.add(values[m]);
+		}
+		if (index >= 0) {
+			target[index] = aggregator.getValue();
+			validity.set(index);
+			filled++;
+		}
+
+		return filled;
+	}
+
+	/**
+	 * Returns the description of the series, or its key when it has no
+	 * description (decomposed series only have a lazily built key).
+	 */
+	public static String getDescription(TimeSeries series) {
+		return series.getDescription() != null ? series.getDescription() : String.valueOf(series.getKey());
 	}
 
 	public static boolean startsBefore(RegularTimePeriod x, RegularTimePeriod y) {
@@ -0,0 +1,95 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.Graph;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.timeseries.EpochBucketing;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.models.timeseries.TimeBucketing;
+
+/**
+ * Checks that the candidate pair queue emits every candidate pair once, in the
+ * order of a sort of all candidate pairs by priority.
+ */
+public class CandidatePairQueueTest extends TestCase {
+
+	private static final int PARENTS = 6;
+	private static final int CHILDREN = 12;
+	private static final int LENGTH = 200;
+
+	@Test
+	public void testOrderEqualsSort() {
+		Random random = new Random(42);
+		for (int run = 0; run < 20; run++) {
+			InclusionGraph inclusionGraph = new InclusionGraph(createGraph(random));
+			CandidatePairQueue queue = new CandidatePairQueue(inclusionGraph);
+
+			List<Double> sorted = new ArrayList<Double>();
+			for (int source = 0; source < inclusionGraph.size(); source++)
+				for (int target = 0; target < inclusionGraph.size(); target++)
+					if (inclusionGraph.isCandidate(source, target))
+						sorted.add(queue.getPriority(source, target));
+			Collections.sort(sorted, Collections.reverseOrder());
+
+			// Pairs of equal priority may come in any order, so only the priorities are compared
+			boolean[][] emitted = new boolean[inclusionGraph.size()][inclusionGraph.size()];
+			List<Double> priorities = new ArrayList<Double>();
+			// Checking for a next pair does not consume it
+			while (queue.hasNext() && queue.hasNext()) {
+				long pair = queue.next();
+				int source = (int) (pair >>> 32);
+				int target = (int) pair;
+				assertTrue(inclusionGraph.isCandidate(source, target));
+				assertFalse(emitted[source][target]);
+				emitted[source][target] = true;
+				priorities.add(queue.getPriority(source, target));
+			}
+			assertEquals(-1, queue.next());
+			assertEquals(sorted, priorities);
+		}
+	}
+
+	/*
+	 * Creates a decomposition graph of parents with children, whose series
+	 * have random starts, lengths and variations. Some series are constant,
+	 * some nodes have no series.
+	 */
+	private static Graph createGraph(Random random) {
+		TimeBucketing bucketing = EpochBucketing.ofWidth(1000, ZoneOffset.UTC);
+		Graph graph = new Graph();
+		for (int p = 0; p < PARENTS; p++) {
+			Node parent = graph.addNode(createNode("p" + p, bucketing, random));
+			for (int c = 0; c < CHILDREN; c++) {
+				Node child = graph.addNode(createNode("p" + p + "c" + c, bucketing, random));
+				graph.addEdge(new Edge(parent, child));
+			}
+		}
+		return graph;
+	}
+
+	private static Node createNode(String label, TimeBucketing bucketing, Random random) {
+		Node node = new Node(label);
+		if (random.nextInt(10) == 0)
+			return node;
+		int start = random.nextInt(LENGTH);
+		double[] values = new double[1 + random.nextInt(LENGTH)];
+		boolean constant = random.nextInt(10) == 0;
+		double mean = random.nextDouble() * 10;
+		for (int i = 0; i < values.length; i++)
+			values[i] = constant ? mean : mean + random.nextGaussian() * random.nextDouble();
+		node.setProperty(Properties.KEY_REGULARTIMESERIES, new RegularTimeSeries(label, bucketing, start, values));
+		return node;
+	}
+
+}
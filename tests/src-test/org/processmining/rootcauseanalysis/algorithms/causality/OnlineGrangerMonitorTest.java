@@ -0,0 +1,94 @@
+package org.processmining.rootcauseanalysis.algorithms.causality;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.rootcauseanalysis.models.GrangerTestResult;
+
+/**
+ * Checks that the results of the online monitor equal those of the batch
+ * Granger test on the last values of the series, while the window fills, after
+ * it slides and across the periodic re-centering of the statistics.
+ */
+public class OnlineGrangerMonitorTest extends TestCase {
+
+	private static final int SERIES = 3;
+	private static final int WINDOW = 40;
+	private static final int LAG = 2;
+	// Several windows, so the statistics are updated and rebuilt many times
+	private static final int BUCKETS = 10 * WINDOW;
+	private static final double TOLERANCE = 1e-8;
+
+	@Test
+	public void testResultEqualsBatch() {
+		Random random = new Random(42);
+		double[][] series = createSeries(random);
+		OnlineGrangerMonitor monitor = new OnlineGrangerMonitor(SERIES, WINDOW, LAG);
+		monitor.monitor(0, 1);
+		monitor.monitor(2, 1);
+		monitor.monitor(1, 2);
+
+		int compared = 0;
+		double[] bucketValues = new double[SERIES];
+		for (int b = 0; b < BUCKETS; b++) {
+			for (int s = 0; s < SERIES; s++)
+				bucketValues[s] = series[s][b];
+			monitor.add(bucketValues);
+
+			// A pair that is added later is built from the buffered values
+			if (b == WINDOW + 7)
+				monitor.monitor(0, 2);
+			// The statistics of a target are kept while another pair with that target is monitored
+			if (b == 3 * WINDOW)
+				monitor.unmonitor(2, 1);
+
+			int length = Math.min(b + 1, WINDOW);
+			assertEquals(Math.max(0, length - LAG), monitor.getObservations());
+			compared += assertResult(monitor, series, 0, 1, b, length);
+			compared += assertResult(monitor, series, 1, 2, b, length);
+			if (b > WINDOW + 7)
+				compared += assertResult(monitor, series, 0, 2, b, length);
+			if (b < 3 * WINDOW)
+				compared += assertResult(monitor, series, 2, 1, b, length);
+			else
+				assertNull(monitor.getResult(2, 1));
+		}
+		assertTrue(compared > 3 * (BUCKETS - WINDOW));
+	}
+
+	// Compares the result of the monitor with the batch test on the values up to the bucket, returns 1 if compared
+	private static int assertResult(OnlineGrangerMonitor monitor, double[][] series, int source, int target, int bucket,
+			int length) {
+		GrangerTestResult online = monitor.getResult(source, target);
+		if (length - LAG - 2 * LAG - 1 < 1) {
+			assertNull(online);
+			return 0;
+		}
+		int offset = bucket + 1 - length;
+		GrangerTestResult batch = GrangerTest.granger(series[target], offset, series[source], offset, length, LAG);
+		assertNotNull(online);
+		assertEquals(batch.getFStat(), online.getFStat(), TOLERANCE * Math.max(1, Math.abs(batch.getFStat())));
+		assertEquals(batch.getR2(), online.getR2(), TOLERANCE);
+		assertEquals(batch.getPValue(), online.getPValue(), TOLERANCE);
+		return 1;
+	}
+
+	/*
+	 * Creates series with a large, drifting level, so the update of the
+	 * statistics needs the re-centering. The first series drives the second,
+	 * the third is independent.
+	 */
+	private static double[][] createSeries(Random random) {
+		double[][] series = new double[SERIES][BUCKETS];
+		for (int b = 0; b < BUCKETS; b++) {
+			double level = 1e5 + 10 * b;
+			series[0][b] = level + random.nextGaussian();
+			series[1][b] = level + (b >= 1 ? 0.8 * (series[0][b - 1] - level + 10) : 0) + random.nextGaussian();
+			series[2][b] = 2 * level + 5 * random.nextGaussian();
+		}
+		return series;
+	}
+
+}
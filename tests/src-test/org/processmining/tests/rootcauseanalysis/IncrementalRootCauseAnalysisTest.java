@@ -0,0 +1,186 @@
+package org.processmining.tests.rootcauseanalysis;
+
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.deckfour.xes.extension.std.XConceptExtension;
+import org.deckfour.xes.extension.std.XLifecycleExtension;
+import org.deckfour.xes.extension.std.XOrganizationalExtension;
+import org.deckfour.xes.extension.std.XTimeExtension;
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.jfree.data.time.TimeSeries;
+import org.junit.Test;
+import org.processmining.rootcauseanalysis.algorithms.causality.CausalityMethod;
+import org.processmining.rootcauseanalysis.models.RootCauseAnalysisOutput;
+import org.processmining.rootcauseanalysis.models.graph.Edge;
+import org.processmining.rootcauseanalysis.models.graph.InclusionGraph;
+import org.processmining.rootcauseanalysis.models.graph.Node;
+import org.processmining.rootcauseanalysis.models.graph.Properties;
+import org.processmining.rootcauseanalysis.models.timeseries.RegularTimeSeries;
+import org.processmining.rootcauseanalysis.parameters.RootCauseAnalysisParameters;
+import org.processmining.rootcauseanalysis.plugins.RootCauseAnalysisPlugin;
+
+/**
+ * Checks that updating the output of a log with a log of new cases gives the
+ * output of an analysis of the whole log.
+ */
+public class IncrementalRootCauseAnalysisTest extends TestCase {
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+	private static final int DAYS = 500;
+	private static final int SPLIT = 400;
+	private static final int CASES_PER_DAY = 3;
+
+	@Test
+	public void testPairwise() throws Throwable {
+		assertIncrementalEqualsFull(CausalityMethod.PAIRWISE);
+	}
+
+	@Test
+	public void testHierarchical() throws Throwable {
+		assertIncrementalEqualsFull(CausalityMethod.HIERARCHICAL);
+	}
+
+	@Test
+	public void testAnytime() throws Throwable {
+		assertIncrementalEqualsFull(CausalityMethod.ANYTIME);
+	}
+
+	@Test
+	public void testGroupLasso() throws Throwable {
+		assertIncrementalEqualsFull(CausalityMethod.GROUP_LASSO);
+	}
+
+	private static void assertIncrementalEqualsFull(CausalityMethod method) throws Throwable {
+		XLog fullLog = createLog(0, DAYS);
+		XLog previousLog = createLog(0, SPLIT);
+		XLog newLog = createLog(SPLIT, DAYS);
+
+		RootCauseAnalysisParameters parameters = new RootCauseAnalysisParameters();
+		parameters.setTryConnections(false);
+		parameters.setBucketWidth(DAY);
+		parameters.setTimeZone(ZoneOffset.UTC);
+		parameters.setCausalityMethod(method);
+
+		RootCauseAnalysisPlugin plugin = new RootCauseAnalysisPlugin();
+		RootCauseAnalysisOutput full = plugin.run(null, fullLog, parameters);
+		RootCauseAnalysisOutput previous = plugin.run(null, previousLog, parameters);
+		RootCauseAnalysisOutput incremental = plugin.runIncremental(null, newLog, parameters, previous);
+
+		assertEquals(getLabels(full), getLabels(incremental));
+		assertEquals(getSeries(full), getSeries(incremental));
+		assertEquals(getResampledSeries(full), getResampledSeries(incremental));
+		assertEquals(getCausalPairs(full), getCausalPairs(incremental));
+	}
+
+	/*
+	 * Creates the cases of the days [fromDay, toDay), with two activities that
+	 * are executed by alternating resources. The duration of B depends on the
+	 * duration of A of the day before.
+	 */
+	private static XLog createLog(int fromDay, int toDay) {
+		XFactory factory = XFactoryRegistry.instance().currentDefault();
+		XLog log = factory.createLog();
+		Random random = new Random(42);
+		double previousA = 1;
+		for (int day = 0; day < toDay; day++) {
+			double a = 1 + random.nextDouble();
+			for (int c = 0; c < CASES_PER_DAY; c++) {
+				double b = 0.5 + previousA + 0.2 * random.nextDouble();
+				long start = day * DAY + c * DAY / CASES_PER_DAY;
+				// The cases of all days are generated, so the same days get the same cases
+				if (day < fromDay)
+					continue;
+				XTrace trace = factory.createTrace();
+				XConceptExtension.instance().assignName(trace, "case " + day + "." + c);
+				long end = addActivity(factory, trace, "A", "r" + (c % 2), start, a);
+				addActivity(factory, trace, "B", "r" + ((c + day) % 3), end, b);
+				log.add(trace);
+			}
+			previousA = a;
+		}
+		return log;
+	}
+
+	// Adds the start and complete events of an activity of the specified duration (in hours), returns its end
+	private static long addActivity(XFactory factory, XTrace trace, String activity, String resource, long start,
+			double hours) {
+		long end = start + (long) (hours * 60 * 60 * 1000);
+		trace.add(createEvent(factory, activity, resource, start, XLifecycleExtension.StandardModel.START));
+		trace.add(createEvent(factory, activity, resource, end, XLifecycleExtension.StandardModel.COMPLETE));
+		return end;
+	}
+
+	private static XEvent createEvent(XFactory factory, String activity, String resource, long time,
+			XLifecycleExtension.StandardModel transition) {
+		XEvent event = factory.createEvent();
+		XConceptExtension.instance().assignName(event, activity);
+		XOrganizationalExtension.instance().assignResource(event, resource);
+		XLifecycleExtension.instance().assignStandardTransition(event, transition);
+		XTimeExtension.instance().assignTimestamp(event, time);
+		return event;
+	}
+
+	private static Set<String> getLabels(RootCauseAnalysisOutput output) {
+		Set<String> labels = new TreeSet<String>();
+		for (Node node : output.getDecompositionGraph().getNodes())
+			labels.add(node.getLabel());
+		return labels;
+	}
+
+	// The measurements per series key
+	private static Map<String, String> getSeries(RootCauseAnalysisOutput output) {
+		Map<String, String> series = new TreeMap<String, String>();
+		for (Node node : output.getDecompositionGraph().getNodes()) {
+			TimeSeries measurements = (TimeSeries) node.getProperty(Properties.KEY_TIMESERIES);
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < measurements.getItemCount(); i++)
+				text.append(measurements.getTimePeriod(i).getFirstMillisecond()).append('=')
+						.append(measurements.getValue(i)).append(' ');
+			series.put(getKey(node), text.toString());
+		}
+		return series;
+	}
+
+	// The resampled series per series key
+	private static Map<String, String> getResampledSeries(RootCauseAnalysisOutput output) {
+		Map<String, String> series = new TreeMap<String, String>();
+		InclusionGraph inclusionGraph = output.getImplicitInclusionGraph();
+		for (int i = 0; i < inclusionGraph.size(); i++) {
+			RegularTimeSeries resampled = (RegularTimeSeries) inclusionGraph.getNode(i)
+					.getProperty(Properties.KEY_REGULARTIMESERIES);
+			StringBuilder text = new StringBuilder();
+			if (resampled != null) {
+				text.append(resampled.getStart()).append(':');
+				for (int b = 0; b < resampled.size(); b++)
+					text.append(' ').append(resampled.getValue(b));
+			}
+			series.put(getKey(inclusionGraph.getNode(i)), text.toString());
+		}
+		return series;
+	}
+
+	// The causal pairs as pairs of series keys
+	private static Set<String> getCausalPairs(RootCauseAnalysisOutput output) {
+		Set<String> pairs = new TreeSet<String>();
+		for (Edge edge : output.getCausalityGraph().getEdges())
+			pairs.add(getKey(edge.getSource()) + " -> " + getKey(edge.getTarget()));
+		return pairs;
+	}
+
+	// The nodes of the inclusion graph are clones, which keep the series key
+	private static String getKey(Node node) {
+		return (String) node.getProperty(Properties.KEY_SERIESKEY);
+	}
+
+}